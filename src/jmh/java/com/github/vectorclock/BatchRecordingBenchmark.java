@@ -0,0 +1,82 @@
+package com.github.vectorclock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Per-event cost of recording a burst of events one at a time via recordEvent versus as a batch
+ * via recordEvents. Bursts are mostly LOCAL events with a RECEIVE every 100 events.
+ *
+ * @author gaurav
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchRecordingBenchmark {
+  private static final int BURST = 1_000;
+
+  @Param({"3", "100", "1000"})
+  public int width;
+
+  @Param({"map", "array"})
+  public String impl;
+
+  private IVectorClock clock;
+  private List<Event> burst;
+
+  @Setup
+  public void setup() {
+    clock = "array".equals(impl) ? new ArrayVectorClock(new NodeRegistry()) : new VectorClock();
+    final Node[] nodes = new Node[width];
+    for (int iter = 0; iter < width; iter++) {
+      nodes[iter] = new Node(String.valueOf(iter));
+      clock.initNode(nodes[iter]);
+    }
+    // the sender never gets ahead of the receiver, so receives are merged and never conflict
+    final IVectorClock senderClock = clock.deepCopy();
+    burst = new ArrayList<>(BURST);
+    for (int iter = 0; iter < BURST; iter++) {
+      if (iter % 100 == 99) {
+        burst.add(new Event(EventType.RECEIVE, nodes[0], Optional.of(senderClock)));
+      } else {
+        burst.add(new Event(EventType.LOCAL, nodes[0], Optional.empty()));
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BURST)
+  public void recordEvent(final Blackhole blackhole) {
+    for (final Event event : burst) {
+      blackhole.consume(clock.recordEvent(event));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BURST)
+  public BatchTransition recordEvents() {
+    return clock.recordEvents(burst);
+  }
+
+}
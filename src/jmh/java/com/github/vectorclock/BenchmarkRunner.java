@@ -0,0 +1,42 @@
+package com.github.vectorclock;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching an include regex (all by default) with the gc profiler, once per
+ * thread count from 1 up to the number of available processors, doubling each time. Results of
+ * every run are written as json to target/jmh-threads-N.json so runs can be diffed for regressions.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.github.vectorclock.BenchmarkRunner [includeRegex]
+ * </pre>
+ *
+ * @author gaurav
+ */
+public final class BenchmarkRunner {
+
+  public static void main(final String[] args) throws Exception {
+    final String include = args.length > 0 ? args[0] : ".*Benchmark.*";
+    final int maxThreads = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads, maxThreads)) {
+      final Options options = new OptionsBuilder().include(include).threads(threads)
+          .addProfiler(GCProfiler.class).resultFormat(ResultFormatType.JSON)
+          .result("target/jmh-threads-" + threads + ".json").build();
+      new Runner(options).run();
+    }
+  }
+
+  private static int nextThreadCount(final int threads, final int maxThreads) {
+    if (threads == maxThreads) {
+      return maxThreads + 1;
+    }
+    return Math.min(threads * 2, maxThreads);
+  }
+
+  private BenchmarkRunner() {}
+
+}
@@ -0,0 +1,145 @@
+package com.github.vectorclock;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Compares {@link VectorClock#compareClocks(IVectorClock, IVectorClock)} against the original
+ * snapshot based comparison, which is reproduced here as the baseline. Run with -prof gc to see the
+ * allocation difference.
+ *
+ * The ordering param picks the shape of the compared clocks: identical clocks and clocks ordered
+ * on their last node force a full walk while concurrent clocks differ on their first two nodes and
+ * can exit early. Late concurrent clocks differ on their last two nodes, which a walk only finds at
+ * its end. Concurrent clocks are told apart by the summaries of ArrayVectorClocks without a walk,
+ * since each holds a node past 0 that the other one does not, and so are identical clocks, which
+ * are all 0 here, while ordered and late concurrent ones still take a walk.
+ *
+ * @author gaurav
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClockComparisonBenchmark {
+
+  @Param({"3", "100", "1000", "10000"})
+  public int width;
+
+  @Param({"identical", "ordered", "concurrent", "lateConcurrent"})
+  public String ordering;
+
+  private VectorClock clockOne;
+  private VectorClock clockTwo;
+
+  private ArrayVectorClock arrayClockOne;
+  private ArrayVectorClock arrayClockTwo;
+
+  @Setup
+  public void setup() {
+    final Node[] nodes = new Node[width];
+    clockOne = new VectorClock();
+    arrayClockOne = new ArrayVectorClock(new NodeRegistry());
+    for (int iter = 0; iter < width; iter++) {
+      nodes[iter] = new Node(String.valueOf(iter));
+      clockOne.initNode(nodes[iter]);
+      arrayClockOne.initNode(nodes[iter]);
+    }
+    clockTwo = clockOne.deepCopy();
+    arrayClockTwo = arrayClockOne.deepCopy();
+    switch (ordering) {
+      case "ordered":
+        tick(clockTwo, arrayClockTwo, nodes[width - 1]);
+        break;
+      case "concurrent":
+        tick(clockOne, arrayClockOne, nodes[0]);
+        tick(clockTwo, arrayClockTwo, nodes[1 % width]);
+        break;
+      case "lateConcurrent":
+        tick(clockOne, arrayClockOne, nodes[Math.max(width - 2, 0)]);
+        tick(clockTwo, arrayClockTwo, nodes[width - 1]);
+        break;
+      default:
+        break;
+    }
+  }
+
+  private static void tick(final IVectorClock clock, final IVectorClock arrayClock,
+      final Node node) {
+    clock.recordEvent(new Event(EventType.LOCAL, node, Optional.empty()));
+    arrayClock.recordEvent(new Event(EventType.LOCAL, node, Optional.empty()));
+  }
+
+  @Benchmark
+  public EventOrdering compareClocks() {
+    return VectorClock.compareClocks(clockOne, clockTwo);
+  }
+
+  @Benchmark
+  public EventOrdering arrayCompareClocks() {
+    return VectorClock.compareClocks(arrayClockOne, arrayClockTwo);
+  }
+
+  @Benchmark
+  public EventOrdering snapshotCompareClocks() {
+    return snapshotCompare(clockOne, clockTwo);
+  }
+
+  // the original snapshot based comparison, minus the logging of its result
+  private static EventOrdering snapshotCompare(final IVectorClock clockOne,
+      final IVectorClock clockTwo) {
+    final Map<Node, LogicalTstamp> clockOneSnapshot = clockOne.snapshot();
+    final Map<Node, LogicalTstamp> clockTwoSnapshot = clockTwo.snapshot();
+    final Set<Node> clockOneNodes = clockOneSnapshot.keySet();
+    final Set<Node> clockTwoNodes = clockTwoSnapshot.keySet();
+    if (clockOneNodes.size() != clockTwoNodes.size()) {
+      return EventOrdering.NOT_COMPARABLE;
+    }
+    clockOneNodes.retainAll(clockTwoNodes);
+    if (clockOneNodes.size() != clockTwoNodes.size()) {
+      return EventOrdering.NOT_COMPARABLE;
+    }
+    boolean oneAfterTwo = false;
+    boolean twoAfterOne = false;
+    for (Iterator<LogicalTstamp> iterOne = clockOneSnapshot.values().iterator(), iterTwo =
+        clockTwoSnapshot.values().iterator(); iterOne.hasNext() && iterTwo.hasNext();) {
+      final LogicalTstamp tstampOne = iterOne.next();
+      final LogicalTstamp tstampTwo = iterTwo.next();
+      if (tstampOne.after(tstampTwo)) {
+        oneAfterTwo = true;
+      }
+      if (tstampTwo.after(tstampOne)) {
+        twoAfterOne = true;
+      }
+      if (oneAfterTwo && twoAfterOne) {
+        return EventOrdering.CONCURRENT;
+      }
+    }
+    if (oneAfterTwo) {
+      return EventOrdering.HAPPENS_AFTER;
+    } else if (twoAfterOne) {
+      return EventOrdering.HAPPENS_BEFORE;
+    }
+    return EventOrdering.IDENTICAL;
+  }
+
+}
@@ -0,0 +1,69 @@
+package com.github.vectorclock;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the scalar, blocked and vector {@link ClockKernel}s by clock width. Compared clocks
+ * are identical, so comparisons walk the whole width, and merges raise every other slot. The vector
+ * kernel needs Java 16 or later, run with -p kernel=scalar,blocked on older JVMs.
+ *
+ * @author gaurav
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class ClockKernelBenchmark {
+
+  @Param({"16", "256", "4096", "65536"})
+  public int width;
+
+  @Param({"scalar", "blocked", "vector"})
+  public String kernel;
+
+  private ClockKernel clockKernel;
+  private long[] clockOne;
+  private long[] clockTwo;
+  private long[] received;
+
+  @Setup
+  public void setup() {
+    clockKernel = ClockKernel.of(kernel);
+    final Random random = new Random(width);
+    clockOne = new long[width];
+    received = new long[width];
+    for (int slot = 0; slot < width; slot++) {
+      clockOne[slot] = random.nextInt(1 << 20);
+      received[slot] = slot % 2 == 0 ? clockOne[slot] + 1 : clockOne[slot] - 1;
+    }
+    clockTwo = clockOne.clone();
+  }
+
+  @Benchmark
+  public int compare() {
+    return clockKernel.compare(clockOne, 0, clockTwo, 0, width, 0);
+  }
+
+  @Benchmark
+  public long[] merge() {
+    // merging into the same array over and over leaves it as it was after the first merge
+    clockKernel.merge(clockTwo, 0, received, 0, width);
+    return clockTwo;
+  }
+
+}
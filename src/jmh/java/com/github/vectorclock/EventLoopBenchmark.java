@@ -0,0 +1,83 @@
+package com.github.vectorclock;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Throughput of many threads recording LOCAL events on one shared clock, either directly under the
+ * clock's fair write lock or through a ClockEventLoop. Submitters either wait for every event or
+ * submit a window of events before waiting for the last of them.
+ *
+ * @author gaurav
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class EventLoopBenchmark {
+  private static final int WINDOW = 64;
+
+  @Param({"map", "array"})
+  public String impl;
+
+  private IVectorClock clock;
+  private ClockEventLoop loop;
+  private Event event;
+
+  @Setup
+  public void setup() {
+    clock = "array".equals(impl) ? new ArrayVectorClock(new NodeRegistry()) : new VectorClock();
+    final Node node = new Node("0");
+    clock.initNode(node);
+    event = new Event(EventType.LOCAL, node, Optional.empty());
+    loop = new ClockEventLoop(clock);
+  }
+
+  @TearDown
+  public void tearDown() {
+    loop.close();
+  }
+
+  @Benchmark
+  public VectorClockTransition lockedRecordEvent() {
+    return clock.recordEvent(event);
+  }
+
+  @Benchmark
+  public VectorClockTransition eventLoopSubmit() {
+    return loop.submit(event).join();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(WINDOW)
+  public VectorClockTransition eventLoopSubmitWindow() {
+    CompletableFuture<VectorClockTransition> last = null;
+    for (int iter = 0; iter < WINDOW; iter++) {
+      last = loop.submit(event);
+    }
+    // the writer records in submission order, so the last one completes after the others
+    return last.join();
+  }
+
+}
@@ -0,0 +1,118 @@
+package com.github.vectorclock;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Microbenchmarks for the hot paths of {@link IVectorClock} implementations: map for
+ * {@link VectorClock} and array for {@link ArrayVectorClock}. All threads of a run share the same
+ * clocks, so running with -t N measures N contending threads.
+ *
+ * Run with the gc profiler to get allocation rates alongside throughput and latency percentiles:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar VectorClockBenchmark -prof gc -t 4
+ * </pre>
+ *
+ * @author gaurav
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VectorClockBenchmark {
+
+  @Param({"3", "100", "1000", "10000"})
+  public int width;
+
+  @Param({"map", "array"})
+  public String impl;
+
+  @Param({"blocking", "lockFree", "tryLock"})
+  public String policy;
+
+  private Node localNode;
+  private IVectorClock clock;
+  private IVectorClock orderedClock;
+  private Event localEvent;
+  private Event sendEvent;
+  private Event receiveEvent;
+
+  @Setup
+  public void setup() {
+    final Node[] nodes = new Node[width];
+    for (int iter = 0; iter < width; iter++) {
+      nodes[iter] = new Node(String.valueOf(iter));
+    }
+    localNode = nodes[0];
+    final Node remoteNode = nodes[width - 1];
+
+    final RecordingPolicy recordingPolicy = "lockFree".equals(policy) ? RecordingPolicy.lockFree()
+        : "tryLock".equals(policy) ? RecordingPolicy.tryLock() : RecordingPolicy.blocking();
+    clock = "array".equals(impl) ? new ArrayVectorClock(new NodeRegistry(), recordingPolicy)
+        : new VectorClock(recordingPolicy);
+    for (final Node node : nodes) {
+      clock.initNode(node);
+    }
+
+    // a clock that is strictly ahead of clock, forcing compareClocks to walk the full vector
+    orderedClock = clock.deepCopy();
+    orderedClock.recordEvent(new Event(EventType.LOCAL, remoteNode, Optional.empty()));
+
+    // sender is only ever ahead on its own entry, so receives are merged and never conflict
+    final IVectorClock senderClock = clock.deepCopy();
+    senderClock.recordEvent(new Event(EventType.SEND, remoteNode, Optional.empty()));
+
+    localEvent = new Event(EventType.LOCAL, localNode, Optional.empty());
+    sendEvent = new Event(EventType.SEND, localNode, Optional.empty());
+    receiveEvent = new Event(EventType.RECEIVE, localNode, Optional.of(senderClock));
+  }
+
+  @Benchmark
+  public VectorClockTransition recordLocalEvent() {
+    return clock.recordEvent(localEvent);
+  }
+
+  @Benchmark
+  public VectorClockTransition recordSendEvent() {
+    return clock.recordEvent(sendEvent);
+  }
+
+  @Benchmark
+  public VectorClockTransition recordReceiveEvent() {
+    return clock.recordEvent(receiveEvent);
+  }
+
+  @Benchmark
+  public EventOrdering compareClocks() {
+    return VectorClock.compareClocks(clock, orderedClock);
+  }
+
+  @Benchmark
+  public Map<Node, LogicalTstamp> snapshot() {
+    return clock.snapshot();
+  }
+
+  @Benchmark
+  public IVectorClock deepCopy() {
+    return clock.deepCopy();
+  }
+
+}
@@ -0,0 +1,681 @@
+package com.github.vectorclock;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Models a vector clock as a primitive array of logical timestamps indexed by the slot that a
+ * shared {@link NodeRegistry} assigns to every Node.
+ *
+ * Ticks and merges are in-place writes to a long[] so recording events does not allocate, and
+ * comparing two clocks that share a registry is a loop over two arrays. The price is that every
+ * clock reserves 8 bytes for every slot up to the highest slot it holds, so clocks are most
+ * compact when the registry is shared by clocks over the same set of nodes.
+ *
+ * Just like {@link VectorClock}, only {@link #recordEvent(Event)} uses pessimistic locking to
+ * ensure correctness, subject to the clock's {@link RecordingPolicy}, and reports what it observes
+ * to the clock's {@link ClockMetrics}. Ticks and merges update slots with compare-and-set so
+ * lock-free ticks can race with receives without losing updates.
+ *
+ * Every clock also keeps a summary of its tstamps, updated along with them: their sum, their
+ * maximum and a signature with a bit per slot modulo 64 set once that slot is past 0. A clock with
+ * a greater sum or maximum, or a signature bit the other clock lacks, cannot happen before it, so
+ * comparing two clocks starts from what their summaries prove and its scan stops as soon as the
+ * other direction is proven too, without any scan at all for clocks whose summaries prove both.
+ * Summaries only grow, a tstamp that goes down, when a node is removed, leaves the clock comparing
+ * by scan alone. The clock also keeps a checksum of its entries, the sum of a hash of every slot
+ * past 0 with its tstamp, so that {@link VectorClockCodec} can tell a delta's base without hashing
+ * the clock again.
+ *
+ * @author gaurav
+ */
+public final class ArrayVectorClock implements IVectorClock {
+  private static final VarHandle TSTAMP = MethodHandles.arrayElementVarHandle(long[].class);
+  private static final VarHandle SUM;
+  private static final VarHandle MAX;
+  private static final VarHandle SIGNATURE;
+  private static final VarHandle CHECKSUM;
+  static {
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      SUM = lookup.findVarHandle(ArrayVectorClock.class, "sum", long.class);
+      MAX = lookup.findVarHandle(ArrayVectorClock.class, "max", long.class);
+      SIGNATURE = lookup.findVarHandle(ArrayVectorClock.class, "signature", long.class);
+      CHECKSUM = lookup.findVarHandle(ArrayVectorClock.class, "checksum", long.class);
+    } catch (ReflectiveOperationException problem) {
+      throw new ExceptionInInitializerError(problem);
+    }
+  }
+
+  // set on every slot of a tstamps array that has been replaced by a bigger one, lock-free ticks
+  // that see it retry against the new array
+  private static final long FORWARDED = Long.MIN_VALUE;
+
+  private final ReentrantReadWriteLock superLock = new ReentrantReadWriteLock(true);
+  private final WriteLock writeLock = superLock.writeLock();
+
+  private final NodeRegistry registry;
+
+  // slot:logicalTstamp for the node at that slot, 0 for nodes not part of this clock
+  private volatile long[] tstamps;
+
+  // bitset of slots of nodes that are part of this clock
+  private volatile long[] members;
+
+  private volatile int width;
+
+  // summary of the tstamps: their sum, their max and a bit per slot modulo 64 for slots past 0
+  private volatile long sum;
+  private volatile long max;
+  private volatile long signature;
+  // cleared once a tstamp went down or the sum overflowed, the summary proves nothing after that
+  private volatile boolean summarized = true;
+  // sum of entryHash(slot, tstamp) over every slot, kept whether or not the summary is
+  private volatile long checksum;
+
+  private final RecordingPolicy recordingPolicy;
+
+  private final ClockMetrics metrics;
+
+  public ArrayVectorClock(final NodeRegistry registry) {
+    this(registry, RecordingPolicy.blocking());
+  }
+
+  public ArrayVectorClock(final NodeRegistry registry, final RecordingPolicy recordingPolicy) {
+    this(registry, recordingPolicy, ClockMetrics.NOOP);
+  }
+
+  public ArrayVectorClock(final NodeRegistry registry, final RecordingPolicy recordingPolicy,
+      final ClockMetrics metrics) {
+    if (registry == null || recordingPolicy == null || metrics == null) {
+      throw new IllegalArgumentException("registry, recordingPolicy and metrics cannot be null");
+    }
+    this.registry = registry;
+    this.recordingPolicy = recordingPolicy;
+    this.metrics = metrics;
+    // sized to the slots of the clock's nodes as they are added rather than to the whole registry
+    this.tstamps = new long[1];
+    this.members = new long[1];
+  }
+
+  private ArrayVectorClock(final NodeRegistry registry, final RecordingPolicy recordingPolicy,
+      final ClockMetrics metrics, final long[] tstamps, final long[] members, final int width) {
+    this.registry = registry;
+    this.recordingPolicy = recordingPolicy;
+    this.metrics = metrics;
+    this.tstamps = tstamps;
+    this.members = members;
+    this.width = width;
+    for (int slot = 0; slot < tstamps.length; slot++) {
+      summarize(slot, 0L, tstamps[slot]);
+    }
+  }
+
+  public NodeRegistry getRegistry() {
+    return registry;
+  }
+
+  public RecordingPolicy getRecordingPolicy() {
+    return recordingPolicy;
+  }
+
+  public ClockMetrics getMetrics() {
+    return metrics;
+  }
+
+  // count of nodes that are part of this clock
+  public int width() {
+    return width;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#initNode(com.github.vectorclock.Node)
+   */
+  @Override
+  public void initNode(final Node node) {
+    if (node == null) {
+      throw new IllegalArgumentException("node cannot be null");
+    }
+    final int slot = registry.slot(node);
+    writeLock.lock();
+    try {
+      ensureCapacity(slot);
+      if (!isMember(members, slot)) {
+        // a lock-free tick racing with an earlier removal may have left a stale tstamp behind
+        reset(tstamps, slot);
+        members[slot >>> 6] |= 1L << slot;
+        width++;
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#removeNode(com.github.vectorclock.Node)
+   */
+  @Override
+  public boolean removeNode(final Node node) {
+    final int slot = registry.slotIfPresent(node);
+    if (slot < 0) {
+      return false;
+    }
+    writeLock.lock();
+    try {
+      if (!isMember(members, slot)) {
+        return false;
+      }
+      members[slot >>> 6] &= ~(1L << slot);
+      reset(tstamps, slot);
+      width--;
+      return true;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  // Not a perfect snapshot and there isn't a need for one either
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#snapshot()
+   */
+  @Override
+  public Map<Node, LogicalTstamp> snapshot() {
+    final Map<Node, LogicalTstamp> snapshot = new TreeMap<>(registry.bySlot());
+    final long[] currentMembers = members;
+    final long[] currentTstamps = tstamps;
+    for (int slot = 0; slot < currentTstamps.length; slot++) {
+      if (isMember(currentMembers, slot)) {
+        snapshot.put(registry.node(slot),
+            LogicalTstamp.curate(currentTstamps[slot] & Long.MAX_VALUE));
+      }
+    }
+    return snapshot;
+  }
+
+  @Override
+  public ArrayVectorClock deepCopy() {
+    writeLock.lock();
+    try {
+      return new ArrayVectorClock(registry, recordingPolicy, metrics, tstamps.clone(),
+          members.clone(), width);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#recordEvent(com.github.vectorclock.Event)
+   */
+  @Override
+  public VectorClockTransition recordEvent(final Event event) {
+    if (event.getEventType() != EventType.RECEIVE && recordingPolicy.ticksLockFree()) {
+      final int slot = memberSlot(event.getImpactedNode());
+      tick(slot);
+      if (!isMember(members, slot)) {
+        // lost a race with removeNode, do not leave a tstamp behind in a vacated slot
+        reset(tstamps, slot);
+        throw new IllegalArgumentException(
+            event.getImpactedNode() + " was removed from this clock");
+      }
+      metrics.eventRecorded(event.getEventType());
+      return new VectorClockTransition(event, null, false);
+    }
+    VectorClockTransition transition = null;
+    if (acquireWriteLock()) {
+      try {
+        final int slot = memberSlot(event.getImpactedNode());
+        switch (event.getEventType()) {
+          case LOCAL:
+          case SEND:
+            tick(slot);
+            transition = new VectorClockTransition(event, null, false);
+            break;
+          case RECEIVE:
+            final IVectorClock receivedClock = event.getSenderClock();
+            final EventOrdering eventOrdering = compareReceived(receivedClock);
+            if (eventOrdering == EventOrdering.CONCURRENT) {
+              // do not accept events that result in conflicting version updates
+              metrics.conflictDetected();
+              transition = new VectorClockTransition(event, this, true);
+            } else {
+              tick(slot);
+              metrics.clockMerged(mergeClock(receivedClock));
+              transition = new VectorClockTransition(event, this, false);
+            }
+            break;
+        }
+        if (!transition.isConcurrentEventConflictDetected()) {
+          metrics.eventRecorded(event.getEventType());
+        }
+      } finally {
+        writeLock.unlock();
+      }
+    }
+    return transition;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#recordEvents(java.util.List)
+   */
+  @Override
+  public BatchTransition recordEvents(final List<Event> events) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null");
+    }
+    final BitSet conflicts = new BitSet();
+    if (!acquireWriteLock()) {
+      return null;
+    }
+    try {
+      // pending run of LOCAL and SEND ticks on the same slot
+      int tickedSlot = -1;
+      long pendingTicks = 0L;
+      for (int index = 0; index < events.size(); index++) {
+        final Event event = events.get(index);
+        final int slot;
+        try {
+          slot = memberSlot(event.getImpactedNode());
+        } catch (IllegalArgumentException problem) {
+          // the events before it stay recorded
+          if (pendingTicks > 0L) {
+            tick(tickedSlot, pendingTicks);
+          }
+          throw problem;
+        }
+        if (event.getEventType() != EventType.RECEIVE) {
+          if (slot != tickedSlot) {
+            if (pendingTicks > 0L) {
+              tick(tickedSlot, pendingTicks);
+            }
+            tickedSlot = slot;
+            pendingTicks = 0L;
+          }
+          pendingTicks++;
+          metrics.eventRecorded(event.getEventType());
+          continue;
+        }
+        if (pendingTicks > 0L) {
+          tick(tickedSlot, pendingTicks);
+          tickedSlot = -1;
+          pendingTicks = 0L;
+        }
+        final IVectorClock receivedClock = event.getSenderClock();
+        if (compareReceived(receivedClock) == EventOrdering.CONCURRENT) {
+          metrics.conflictDetected();
+          conflicts.set(index);
+        } else {
+          tick(slot);
+          metrics.clockMerged(mergeClock(receivedClock));
+          metrics.eventRecorded(EventType.RECEIVE);
+        }
+      }
+      if (pendingTicks > 0L) {
+        tick(tickedSlot, pendingTicks);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+    return new BatchTransition(events.size(), conflicts, this);
+  }
+
+  /**
+   * Compare two clocks sharing the same registry with the same semantics as
+   * {@link VectorClock#compareClocks(IVectorClock, IVectorClock)}.
+   */
+  static EventOrdering compareClocks(final ArrayVectorClock clockOne,
+      final ArrayVectorClock clockTwo) {
+    // slots of nodes that are not part of a clock hold 0, so node sets need not be checked
+    final long[] one = clockOne.tstamps;
+    final long[] two = clockTwo.tstamps;
+    int seen = 0;
+    if (clockOne.summarized && clockTwo.summarized) {
+      seen |= clockOne.provenAfter(clockTwo) ? ClockKernel.ONE_AFTER_TWO : 0;
+      seen |= clockTwo.provenAfter(clockOne) ? ClockKernel.TWO_AFTER_ONE : 0;
+      if (seen == ClockKernel.BOTH) {
+        return EventOrdering.CONCURRENT;
+      }
+      if (clockOne.sum == 0L && clockTwo.sum == 0L) {
+        return EventOrdering.IDENTICAL;
+      }
+    }
+    // tstamps are masked in case one of the arrays was replaced by a bigger one while we read it,
+    // slots past the shorter array are implicitly 0 in that clock
+    return ClockKernel.get().compare(one, 0, one.length, two, 0, two.length, seen);
+  }
+
+  /**
+   * Compare this clock with an encoded one over the same registry, walking the encoded entries in
+   * place with the same semantics as {@link VectorClock#compareClocks(IVectorClock, IVectorClock)}.
+   * Both are in ascending slot order, so clocks of any widths are merge-joined in a single pass.
+   */
+  static EventOrdering compareClocks(final ArrayVectorClock clockOne,
+      final EncodedVectorClock clockTwo) {
+    final long[] one = clockOne.tstamps;
+    boolean oneAfterTwo = false;
+    boolean twoAfterOne = false;
+    int slot = 0;
+    final EncodedVectorClock.Cursor cursor = clockTwo.cursor();
+    while (cursor.next() && !(oneAfterTwo && twoAfterOne)) {
+      // slots skipped by the encoded clock are 0 in it
+      for (final int encodedSlot = cursor.slot(); slot < encodedSlot && slot < one.length;
+          slot++) {
+        if ((one[slot] & Long.MAX_VALUE) > 0L) {
+          oneAfterTwo = true;
+        }
+      }
+      final long tstampOne = cursor.slot() < one.length ? one[cursor.slot()] & Long.MAX_VALUE : 0L;
+      if (tstampOne > cursor.tstamp()) {
+        oneAfterTwo = true;
+      } else if (tstampOne < cursor.tstamp()) {
+        twoAfterOne = true;
+      }
+      slot = cursor.slot() + 1;
+    }
+    for (; slot < one.length && !oneAfterTwo; slot++) {
+      if ((one[slot] & Long.MAX_VALUE) > 0L) {
+        oneAfterTwo = true;
+      }
+    }
+    if (oneAfterTwo && twoAfterOne) {
+      return EventOrdering.CONCURRENT;
+    } else if (oneAfterTwo) {
+      return EventOrdering.HAPPENS_AFTER;
+    } else if (twoAfterOne) {
+      return EventOrdering.HAPPENS_BEFORE;
+    }
+    return EventOrdering.IDENTICAL;
+  }
+
+  // Overwrite the tstamps of the given entries, adding any nodes this clock does not hold yet
+  void overlay(final EncodedVectorClock entries) {
+    writeLock.lock();
+    try {
+      final EncodedVectorClock.Cursor cursor = entries.cursor();
+      while (cursor.next()) {
+        final int slot = cursor.slot();
+        ensureCapacity(slot);
+        summarize(slot, (long) TSTAMP.getAndSet(tstamps, slot, cursor.tstamp()), cursor.tstamp());
+        if (!isMember(members, slot)) {
+          members[slot >>> 6] |= 1L << slot;
+          width++;
+        }
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  // slot,tstamp pairs of the nodes in this clock in ascending slot order
+  long[] entries() {
+    final long[] currentMembers = members.clone();
+    final long[] currentTstamps = tstamps;
+    int count = 0;
+    for (final long word : currentMembers) {
+      count += Long.bitCount(word);
+    }
+    final long[] entries = new long[count << 1];
+    int iter = 0;
+    for (int slot = 0; slot < currentTstamps.length && iter < entries.length; slot++) {
+      if (isMember(currentMembers, slot)) {
+        entries[iter++] = slot;
+        entries[iter++] = currentTstamps[slot] & Long.MAX_VALUE;
+      }
+    }
+    // a node initialized while we were reading may not have made it into currentTstamps
+    return iter == entries.length ? entries : Arrays.copyOf(entries, iter);
+  }
+
+  // build a clock out of slot,tstamp pairs in ascending slot order
+  static ArrayVectorClock fromEntries(final NodeRegistry registry, final long[] entries) {
+    final int length = entries.length == 0 ? 1 : (int) entries[entries.length - 2] + 1;
+    final long[] tstamps = new long[length];
+    final long[] members = new long[wordCount(length)];
+    for (int iter = 0; iter < entries.length; iter += 2) {
+      final int slot = (int) entries[iter];
+      tstamps[slot] = entries[iter + 1];
+      members[slot >>> 6] |= 1L << slot;
+    }
+    return new ArrayVectorClock(registry, RecordingPolicy.blocking(), ClockMetrics.NOOP,
+        tstamps, members, entries.length >>> 1);
+  }
+
+  // Merge the passed clock into this clock, adding the nodes it has seen events of that this clock
+  // does not hold yet and returning the count of entries the passed clock held, the caller holds
+  // the write lock
+  private int mergeClock(final IVectorClock clock) {
+    if (clock instanceof ArrayVectorClock && ((ArrayVectorClock) clock).registry == registry) {
+      final long[] received = ((ArrayVectorClock) clock).tstamps;
+      for (int slot = 0; slot < received.length; slot++) {
+        final long receivedTstamp = received[slot] & Long.MAX_VALUE;
+        if (receivedTstamp > 0L) {
+          mergeSlot(slot, receivedTstamp);
+        }
+      }
+      return ((ArrayVectorClock) clock).width;
+    } else if (clock instanceof EncodedVectorClock
+        && ((EncodedVectorClock) clock).getDictionary() == registry) {
+      final EncodedVectorClock.Cursor cursor = ((EncodedVectorClock) clock).cursor();
+      while (cursor.next()) {
+        if (cursor.tstamp() > 0L) {
+          mergeSlot(cursor.slot(), cursor.tstamp());
+        }
+      }
+      return ((EncodedVectorClock) clock).width();
+    } else {
+      final Map<Node, LogicalTstamp> snapshot = clock.snapshot();
+      for (final Map.Entry<Node, LogicalTstamp> entry : snapshot.entrySet()) {
+        final long receivedTstamp = entry.getValue().currentValue();
+        if (receivedTstamp > 0L) {
+          mergeSlot(registry.slot(entry.getKey()), receivedTstamp);
+        }
+      }
+      return snapshot.size();
+    }
+  }
+
+  // Move the slot's tstamp up to the received one, making its node part of this clock if it was
+  // not, the caller holds the write lock
+  private void mergeSlot(final int slot, final long receivedTstamp) {
+    ensureCapacity(slot);
+    final long[] current = tstamps;
+    if (!isMember(members, slot)) {
+      // a lock-free tick racing with an earlier removal may have left a stale tstamp behind
+      reset(current, slot);
+      members[slot >>> 6] |= 1L << slot;
+      width++;
+    }
+    if (current[slot] < receivedTstamp) {
+      advanceTo(current, slot, receivedTstamp);
+    }
+  }
+
+  // Move the slot's tstamp up to the received one unless it is already there, the caller holds
+  // the write lock so the array cannot be forwarded from under us
+  private void advanceTo(final long[] current, final int slot, final long received) {
+    while (true) {
+      final long tstamp = (long) TSTAMP.getVolatile(current, slot);
+      if (tstamp >= received) {
+        return;
+      }
+      if (TSTAMP.compareAndSet(current, slot, tstamp, received)) {
+        summarize(slot, tstamp, received);
+        return;
+      }
+    }
+  }
+
+  // Zero the slot's tstamp, the caller holds the write lock
+  private void reset(final long[] current, final int slot) {
+    summarize(slot, (long) TSTAMP.getAndSet(current, slot, 0L) & Long.MAX_VALUE, 0L);
+  }
+
+  // Fold the change of the slot's tstamp into the summary, the updates commute with each other so
+  // lock-free ticks can race with locked writers
+  private void summarize(final int slot, final long previous, final long tstamp) {
+    if (tstamp == previous) {
+      return;
+    }
+    CHECKSUM.getAndAdd(this, entryHash(slot, tstamp) - entryHash(slot, previous));
+    if (tstamp < previous
+        || (long) SUM.getAndAdd(this, tstamp - previous) + tstamp - previous < 0L) {
+      summarized = false;
+      return;
+    }
+    SIGNATURE.getAndBitwiseOr(this, 1L << slot);
+    while (true) {
+      final long currentMax = max;
+      if (currentMax >= tstamp || MAX.compareAndSet(this, currentMax, tstamp)) {
+        return;
+      }
+    }
+  }
+
+  // whether the summaries alone prove that this clock is past the other one on some node
+  private boolean provenAfter(final ArrayVectorClock other) {
+    return sum > other.sum || max > other.max || (signature & ~other.signature) != 0L;
+  }
+
+  // checksum of the entries, as summarized
+  long checksum() {
+    return checksum;
+  }
+
+  // a hash of the slot and its tstamp, 0 for a tstamp of 0 so that members at 0 add nothing
+  static long entryHash(final int slot, final long tstamp) {
+    if (tstamp == 0L) {
+      return 0L;
+    }
+    long hash = tstamp * 0x9E3779B97F4A7C15L + slot;
+    hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+    return hash ^ (hash >>> 31);
+  }
+
+  // count of slots the tstamps array reserves room for
+  int capacity() {
+    return tstamps.length;
+  }
+
+  // sum of the tstamps, as summarized
+  long sum() {
+    return sum;
+  }
+
+  // Acquire the write lock as per the RecordingPolicy, telling the metrics if it was contended or
+  // if the policy gave up on it
+  private boolean acquireWriteLock() {
+    if (metrics.isEnabled() && superLock.isWriteLocked()) {
+      metrics.lockContended();
+    }
+    boolean acquired = false;
+    try {
+      acquired = recordingPolicy.acquire(writeLock);
+    } finally {
+      if (!acquired) {
+        metrics.eventDropped();
+      }
+    }
+    return acquired;
+  }
+
+  // Compare this clock with a received one, timing it if the metrics are interested
+  private EventOrdering compareReceived(final IVectorClock receivedClock) {
+    if (!metrics.isEnabled()) {
+      return VectorClock.compareClocks(this, receivedClock);
+    }
+    final long start = System.nanoTime();
+    final EventOrdering ordering = VectorClock.compareClocks(this, receivedClock);
+    metrics.clocksCompared(System.nanoTime() - start);
+    return ordering;
+  }
+
+  private void tick(final int slot) {
+    tick(slot, 1L);
+  }
+
+  private void tick(final int slot, final long ticks) {
+    while (true) {
+      final long[] current = tstamps;
+      final long tstamp = (long) TSTAMP.getVolatile(current, slot);
+      if (tstamp < 0L) {
+        // the array is being replaced by a bigger one, wait for it to be published
+        Thread.onSpinWait();
+        continue;
+      }
+      final long advanced = LogicalTstamp.advance(tstamp, ticks);
+      if (TSTAMP.compareAndSet(current, slot, tstamp, advanced)) {
+        summarize(slot, tstamp, advanced);
+        return;
+      }
+    }
+  }
+
+  private int memberSlot(final Node node) {
+    final int slot = registry.slotIfPresent(node);
+    if (slot < 0 || slot >= tstamps.length || !isMember(members, slot)) {
+      throw new IllegalArgumentException(node + " is not initialized in this clock");
+    }
+    return slot;
+  }
+
+  // grow both arrays to hold the given slot, caller holds the write lock
+  private void ensureCapacity(final int slot) {
+    if (slot < tstamps.length) {
+      return;
+    }
+    final long[] current = tstamps;
+    final int length = Math.max(slot + 1, current.length << 1);
+    final long[] grownTstamps = new long[length];
+    // forward every slot so that no lock-free tick can land in the old array after it was copied
+    for (int iter = 0; iter < current.length; iter++) {
+      while (true) {
+        final long tstamp = (long) TSTAMP.getVolatile(current, iter);
+        if (TSTAMP.compareAndSet(current, iter, tstamp, tstamp | FORWARDED)) {
+          grownTstamps[iter] = tstamp;
+          break;
+        }
+      }
+    }
+    members = Arrays.copyOf(members, wordCount(length));
+    tstamps = grownTstamps;
+  }
+
+  private static boolean isMember(final long[] members, final int slot) {
+    final int word = slot >>> 6;
+    return word < members.length && (members[word] & (1L << slot)) != 0L;
+  }
+
+  private static int wordCount(final int slots) {
+    return (slots + 63) >>> 6;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#toString()
+   */
+  @Override
+  public String toString() {
+    return "ArrayVectorClock:[" + snapshot().toString() + "]";
+  }
+
+}
@@ -0,0 +1,60 @@
+package com.github.vectorclock;
+
+import java.util.BitSet;
+
+/**
+ * This immutable object reflects the outcome of recording a batch of node Events on a VectorClock
+ * via {@link IVectorClock#recordEvents(java.util.List)}. Rather than one
+ * {@link VectorClockTransition} per event, it only remembers the positions within the batch of the
+ * RECEIVE events that were rejected as concurrent.
+ *
+ * @author gaurav
+ */
+public final class BatchTransition {
+  private final int eventCount;
+  private final BitSet conflicts;
+  private final IVectorClock receiverVectorClock;
+
+  BatchTransition(final int eventCount, final BitSet conflicts,
+      final IVectorClock receiverVectorClock) {
+    this.eventCount = eventCount;
+    this.conflicts = conflicts;
+    this.receiverVectorClock = receiverVectorClock;
+  }
+
+  public int getEventCount() {
+    return eventCount;
+  }
+
+  public IVectorClock getReceiverVectorClock() {
+    return receiverVectorClock;
+  }
+
+  // count of RECEIVE events in the batch that were rejected as concurrent
+  public int getConflictCount() {
+    return conflicts.cardinality();
+  }
+
+  // whether the event at the given position in the batch was a RECEIVE rejected as concurrent
+  public boolean isConcurrentEventConflictDetected(final int eventIndex) {
+    if (eventIndex < 0 || eventIndex >= eventCount) {
+      throw new IllegalArgumentException(
+          "eventIndex " + eventIndex + " is outside the batch of " + eventCount + " events");
+    }
+    return conflicts.get(eventIndex);
+  }
+
+  // positions in the batch of all the RECEIVE events that were rejected as concurrent
+  public int[] getConflictedEventIndexes() {
+    return conflicts.stream().toArray();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("BatchTransition [events:").append(eventCount).append(", conflicts:")
+        .append(conflicts).append("]");
+    return builder.toString();
+  }
+
+}
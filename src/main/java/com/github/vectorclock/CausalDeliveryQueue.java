@@ -0,0 +1,408 @@
+package com.github.vectorclock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds broadcast messages received by a node until all of their causal predecessors have been
+ * delivered and hands them out in causal order. Every message carries its sender's clock at the
+ * time it was sent, in which:<br/>
+ *
+ * 1. the sender's own entry counts the messages it has broadcast, this one included<br/>
+ * 2. every other node's entry counts the messages from that node the sender had delivered<br/>
+ *
+ * Clocks of this shape are handed out for the local node's own broadcasts by
+ * {@link #stampBroadcast(Node)}. A message is deliverable once it is the next one from its sender
+ * and this node has delivered everything its sender had. Rather than checking every buffered
+ * message on every arrival, a message that is not deliverable is parked on the first dependency it
+ * misses, a node and the count of delivered messages from that node it waits for, and is only
+ * looked at again once that count is reached.
+ *
+ * Any number of threads may offer received messages and take delivered ones. The queue holds at
+ * most capacity messages between them, pending or delivered, and producers block or time out
+ * while it is full. So that a full queue of pending messages cannot wait forever on a message it
+ * has no room for, a message that is deliverable right away is still let in while no delivered
+ * message is waiting to be taken.
+ *
+ * @author gaurav
+ */
+public final class CausalDeliveryQueue<M> {
+  // what missingSlot() returns for messages that are not missing any dependency
+  private static final int DELIVERABLE = -1;
+  private static final int DUPLICATE = -2;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notFull = lock.newCondition();
+  private final Condition notEmpty = lock.newCondition();
+
+  private final NodeRegistry registry;
+  private final int capacity;
+
+  // slot:count of messages delivered from the node at that slot
+  private long[] delivered = new long[1];
+
+  // slot:(count of delivered messages:messages waiting for the node at that slot to reach it)
+  private final List<Map<Long, List<Pending<M>>>> waiting = new ArrayList<>();
+  private int pendingCount;
+
+  // delivered messages in causal order, waiting to be taken
+  private final ArrayDeque<M> ready = new ArrayDeque<>();
+
+  private long duplicates;
+
+  public CausalDeliveryQueue(final NodeRegistry registry, final int capacity) {
+    if (registry == null || capacity < 1) {
+      throw new IllegalArgumentException("registry cannot be null and capacity must be positive");
+    }
+    this.registry = registry;
+    this.capacity = capacity;
+  }
+
+  public NodeRegistry getRegistry() {
+    return registry;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Count a broadcast by the local node as delivered and return the clock to send along with it.
+   */
+  public ArrayVectorClock stampBroadcast(final Node localNode) {
+    if (localNode == null) {
+      throw new IllegalArgumentException("localNode cannot be null");
+    }
+    final int slot = registry.slot(localNode);
+    lock.lock();
+    try {
+      ensureCapacity(slot);
+      delivered[slot]++;
+      final ArrayVectorClock clock = deliveredClock();
+      release(slot);
+      return clock;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Offer a received message without waiting, returning false if the queue is full. Messages that
+   * were delivered before are discarded.
+   */
+  public boolean offer(final Node sender, final IVectorClock senderClock, final M message) {
+    final Pending<M> pending = pending(sender, senderClock, message);
+    lock.lock();
+    try {
+      return admit(pending);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Offer a received message, waiting up to the timeout for the queue to have room for it
+  public boolean offer(final Node sender, final IVectorClock senderClock, final M message,
+      final long timeout, final TimeUnit unit) throws InterruptedException {
+    final Pending<M> pending = pending(sender, senderClock, message);
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (!admit(pending)) {
+        if (nanos <= 0L) {
+          return false;
+        }
+        nanos = notFull.awaitNanos(nanos);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Offer a received message, waiting for as long as it takes for the queue to have room for it
+  public void put(final Node sender, final IVectorClock senderClock, final M message)
+      throws InterruptedException {
+    final Pending<M> pending = pending(sender, senderClock, message);
+    lock.lockInterruptibly();
+    try {
+      while (!admit(pending)) {
+        notFull.await();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // the next delivered message, null if there is none
+  public M poll() {
+    lock.lock();
+    try {
+      return ready.isEmpty() ? null : dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public M poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (ready.isEmpty()) {
+        if (nanos <= 0L) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public M take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (ready.isEmpty()) {
+        notEmpty.await();
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // move all delivered messages to the given collection in causal order, returning their count
+  public int drainTo(final Collection<? super M> collection) {
+    if (collection == null) {
+      throw new IllegalArgumentException("collection cannot be null");
+    }
+    lock.lock();
+    try {
+      final int count = ready.size();
+      collection.addAll(ready);
+      ready.clear();
+      if (count > 0) {
+        notFull.signalAll();
+      }
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // count of messages held, pending or delivered and waiting to be taken
+  public int size() {
+    lock.lock();
+    try {
+      return pendingCount + ready.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // count of messages held back until their causal predecessors are delivered
+  public int pendingCount() {
+    lock.lock();
+    try {
+      return pendingCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // count of delivered messages waiting to be taken
+  public int readyCount() {
+    lock.lock();
+    try {
+      return ready.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // count of received messages that had already been delivered and were discarded
+  public long getDuplicates() {
+    lock.lock();
+    try {
+      return duplicates;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // counts of messages delivered from every node, the local node's broadcasts included
+  public ArrayVectorClock delivered() {
+    lock.lock();
+    try {
+      return deliveredClock();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Lay out the message's clock outside of the lock
+  private Pending<M> pending(final Node sender, final IVectorClock senderClock, final M message) {
+    if (sender == null || senderClock == null || message == null) {
+      throw new IllegalArgumentException("sender, senderClock and message cannot be null");
+    }
+    final int senderSlot = registry.slot(sender);
+    final long[] clock = registry.dense(senderClock);
+    if (senderSlot >= clock.length || clock[senderSlot] <= 0L) {
+      throw new IllegalArgumentException(
+          "senderClock must count the message in the entry of " + sender);
+    }
+    return new Pending<>(message, senderSlot, clock);
+  }
+
+  // Park or deliver the message if there is room for it, the lock must be held
+  private boolean admit(final Pending<M> pending) {
+    final int missing = missingSlot(pending);
+    if (missing == DUPLICATE) {
+      duplicates++;
+      return true;
+    }
+    if (pendingCount + ready.size() >= capacity && (missing != DELIVERABLE || !ready.isEmpty())) {
+      return false;
+    }
+    if (missing == DELIVERABLE) {
+      deliver(pending);
+    } else {
+      park(pending, missing);
+    }
+    return true;
+  }
+
+  // Hand out the message and everything that was waiting on it, the lock must be held
+  private void deliver(final Pending<M> pending) {
+    ready.addLast(pending.message);
+    delivered[pending.senderSlot] = pending.clock[pending.senderSlot];
+    release(pending.senderSlot);
+    notEmpty.signalAll();
+  }
+
+  // Look at the messages that waited for the count of the node at the slot to reach its current
+  // value, and at those waiting on any message they deliver in turn, the lock must be held
+  private void release(final int slot) {
+    final ArrayDeque<Integer> advanced = new ArrayDeque<>();
+    advanced.add(slot);
+    while (!advanced.isEmpty()) {
+      final int advancedSlot = advanced.poll();
+      if (advancedSlot >= waiting.size()) {
+        continue;
+      }
+      final List<Pending<M>> released =
+          waiting.get(advancedSlot).remove(delivered[advancedSlot]);
+      if (released == null) {
+        continue;
+      }
+      pendingCount -= released.size();
+      for (final Pending<M> pending : released) {
+        final int missing = missingSlot(pending);
+        if (missing == DELIVERABLE) {
+          ready.addLast(pending.message);
+          delivered[pending.senderSlot] = pending.clock[pending.senderSlot];
+          advanced.add(pending.senderSlot);
+        } else if (missing == DUPLICATE) {
+          duplicates++;
+        } else {
+          park(pending, missing);
+        }
+      }
+    }
+    notFull.signalAll();
+    notEmpty.signalAll();
+  }
+
+  // Park the message until the node at the slot reaches the count it waits for
+  private void park(final Pending<M> pending, final int slot) {
+    while (waiting.size() <= slot) {
+      waiting.add(new HashMap<>());
+    }
+    final long awaited =
+        slot == pending.senderSlot ? pending.clock[slot] - 1L : pending.clock[slot];
+    waiting.get(slot).computeIfAbsent(awaited, count -> new ArrayList<>()).add(pending);
+    pendingCount++;
+  }
+
+  /**
+   * The slot of the first node whose delivered count the message waits for, DELIVERABLE if it
+   * waits for none and DUPLICATE if it was delivered before. The lock must be held.
+   */
+  private int missingSlot(final Pending<M> pending) {
+    final long[] clock = pending.clock;
+    ensureCapacity(clock.length - 1);
+    final int senderSlot = pending.senderSlot;
+    if (clock[senderSlot] <= delivered[senderSlot]) {
+      return DUPLICATE;
+    }
+    if (clock[senderSlot] > delivered[senderSlot] + 1L) {
+      return senderSlot;
+    }
+    for (int slot = 0; slot < clock.length; slot++) {
+      if (slot != senderSlot && clock[slot] > delivered[slot]) {
+        return slot;
+      }
+    }
+    return DELIVERABLE;
+  }
+
+  private M dequeue() {
+    final M message = ready.poll();
+    notFull.signalAll();
+    return message;
+  }
+
+  private ArrayVectorClock deliveredClock() {
+    int count = 0;
+    for (final long tstamp : delivered) {
+      if (tstamp > 0L) {
+        count++;
+      }
+    }
+    final long[] entries = new long[count << 1];
+    for (int slot = 0, iter = 0; slot < delivered.length; slot++) {
+      if (delivered[slot] > 0L) {
+        entries[iter++] = slot;
+        entries[iter++] = delivered[slot];
+      }
+    }
+    return ArrayVectorClock.fromEntries(registry, entries);
+  }
+
+  private void ensureCapacity(final int slot) {
+    if (slot >= delivered.length) {
+      delivered = Arrays.copyOf(delivered, Math.max(slot + 1, delivered.length << 1));
+    }
+  }
+
+  private static final class Pending<M> {
+    private final M message;
+    private final int senderSlot;
+    // the sender's clock laid out by slot
+    private final long[] clock;
+
+    private Pending(final M message, final int senderSlot, final long[] clock) {
+      this.message = message;
+      this.senderSlot = senderSlot;
+      this.clock = clock;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("CausalDeliveryQueue [capacity:").append(capacity).append(", pending:")
+        .append(pendingCount()).append(", ready:").append(readyCount()).append(", delivered:")
+        .append(delivered()).append("]");
+    return builder.toString();
+  }
+
+}
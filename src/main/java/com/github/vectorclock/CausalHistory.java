@@ -0,0 +1,392 @@
+package com.github.vectorclock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An optional append-only log of the events recorded on a set of clocks, indexed to answer
+ * ordering queries about them without comparing clocks pairwise. Events get ids in the order they
+ * are appended and their clocks are stored in columns, one array of tstamps per node, laid out by
+ * the slots of the log's {@link NodeRegistry}.
+ *
+ * Every event ticks the tstamp of the node that recorded it, so the events of a node form a chain
+ * of strictly increasing tstamps in the node's own column, and:<br/>
+ *
+ * 1. event x of node p happened before event y exactly when y's tstamp for p is at least x's, a
+ * single lookup<br/>
+ * 2. the events of any one node that x happened before are a suffix of the node's chain, and those
+ * that happened before x a prefix, so the events concurrent with x are found with two binary
+ * searches per node<br/>
+ * 3. the latest common ancestors of two events are the maximal events among the last ones of every
+ * node that both of them have seen, found with one binary search per node<br/>
+ *
+ * Events are either recorded through {@link #record(IVectorClock, Event)}, which records them on
+ * the clock and logs the clock under one lock so that no other event recorded through the log can
+ * slip in between, or appended with the clock of the node right after the event. The index relies
+ * on the clocks of a node never going back, so they should not be pruned while they are logged.
+ *
+ * @author gaurav
+ */
+public final class CausalHistory {
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final NodeRegistry registry;
+
+  // eventId:slot of the node that recorded the event
+  private int[] eventSlots = new int[16];
+  private int size;
+
+  // slot:(eventId:tstamp of the node at that slot in the event's clock), null for slots no event
+  // has seen yet
+  private long[][] columns = new long[1][];
+
+  // slot:ids of the events recorded by the node at that slot, in order
+  private final List<int[]> chains = new ArrayList<>();
+  private int[] chainLengths = new int[1];
+
+  public CausalHistory() {
+    this(new NodeRegistry());
+  }
+
+  public CausalHistory(final NodeRegistry registry) {
+    if (registry == null) {
+      throw new IllegalArgumentException("registry cannot be null");
+    }
+    this.registry = registry;
+  }
+
+  public NodeRegistry getRegistry() {
+    return registry;
+  }
+
+  // count of events in the log
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Record the event on the clock and log it, returning its id or -1 if the clock did not record
+   * it, either because a RECEIVE was concurrent or because its RecordingPolicy gave up.
+   */
+  public int record(final IVectorClock clock, final Event event) {
+    if (clock == null || event == null) {
+      throw new IllegalArgumentException("clock and event cannot be null");
+    }
+    lock.writeLock().lock();
+    try {
+      final VectorClockTransition transition = clock.recordEvent(event);
+      if (transition == null || transition.isConcurrentEventConflictDetected()) {
+        return -1;
+      }
+      return append(event.getImpactedNode(), clock);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Log an event recorded by the node, given the node's clock right after the event, and return
+   * its id. The clock must be ahead of the node's previous event in the node's own tstamp.
+   */
+  public int append(final Node node, final IVectorClock clockAfterEvent) {
+    if (node == null) {
+      throw new IllegalArgumentException("node cannot be null");
+    }
+    final int nodeSlot = registry.slot(node);
+    final long[] clock = registry.dense(clockAfterEvent);
+    lock.writeLock().lock();
+    try {
+      final long ownTstamp = nodeSlot < clock.length ? clock[nodeSlot] : 0L;
+      final int chainLength = chainLength(nodeSlot);
+      final long previousTstamp =
+          chainLength == 0 ? 0L : tstamp(nodeSlot, chain(nodeSlot)[chainLength - 1]);
+      if (ownTstamp <= previousTstamp) {
+        throw new IllegalArgumentException(
+            "Clock of " + node + " must be ahead of its previous event, found " + ownTstamp);
+      }
+      final int eventId = size;
+      if (eventId == eventSlots.length) {
+        eventSlots = Arrays.copyOf(eventSlots, eventId << 1);
+        for (int slot = 0; slot < columns.length; slot++) {
+          if (columns[slot] != null) {
+            columns[slot] = Arrays.copyOf(columns[slot], eventId << 1);
+          }
+        }
+      }
+      eventSlots[eventId] = nodeSlot;
+      for (int slot = 0; slot < clock.length; slot++) {
+        if (clock[slot] != 0L) {
+          ensureColumn(slot)[eventId] = clock[slot];
+        }
+      }
+      appendToChain(nodeSlot, eventId);
+      size++;
+      return eventId;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public Node getNode(final int eventId) {
+    lock.readLock().lock();
+    try {
+      return registry.node(eventSlots[checkEvent(eventId)]);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // the clock of the node that recorded the event, right after the event
+  public ArrayVectorClock getClock(final int eventId) {
+    lock.readLock().lock();
+    try {
+      checkEvent(eventId);
+      final long[] entries = new long[columns.length << 1];
+      int iter = 0;
+      for (int slot = 0; slot < columns.length; slot++) {
+        final long tstamp = tstamp(slot, eventId);
+        if (tstamp != 0L) {
+          entries[iter++] = slot;
+          entries[iter++] = tstamp;
+        }
+      }
+      return ArrayVectorClock.fromEntries(registry, Arrays.copyOf(entries, iter));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // whether event x happened before event y, false for the same event
+  public boolean happenedBefore(final int x, final int y) {
+    lock.readLock().lock();
+    try {
+      checkEvent(x);
+      checkEvent(y);
+      return x != y && before(x, y);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // the ordering of two events, IDENTICAL only for the same event
+  public EventOrdering compare(final int x, final int y) {
+    lock.readLock().lock();
+    try {
+      checkEvent(x);
+      checkEvent(y);
+      if (x == y) {
+        return EventOrdering.IDENTICAL;
+      } else if (before(x, y)) {
+        return EventOrdering.HAPPENS_BEFORE;
+      } else if (before(y, x)) {
+        return EventOrdering.HAPPENS_AFTER;
+      }
+      return EventOrdering.CONCURRENT;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // ids of the events concurrent with the given one, in ascending order
+  public int[] concurrentWith(final int eventId) {
+    lock.readLock().lock();
+    try {
+      final int eventSlot = eventSlots[checkEvent(eventId)];
+      int[] concurrent = new int[16];
+      int count = 0;
+      for (int slot = 0; slot < chains.size(); slot++) {
+        if (slot == eventSlot) {
+          // a node's own events are totally ordered
+          continue;
+        }
+        final int from = concurrentFrom(slot, eventId);
+        final int to = concurrentTo(slot, eventSlot, eventId);
+        if (count + to - from > concurrent.length) {
+          concurrent =
+              Arrays.copyOf(concurrent, Math.max(concurrent.length << 1, count + to - from));
+        }
+        System.arraycopy(chain(slot), from, concurrent, count, to - from);
+        count += to - from;
+      }
+      final int[] sorted = Arrays.copyOf(concurrent, count);
+      Arrays.sort(sorted);
+      return sorted;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // count of the events concurrent with the given one, without listing them
+  public int countConcurrentWith(final int eventId) {
+    lock.readLock().lock();
+    try {
+      final int eventSlot = eventSlots[checkEvent(eventId)];
+      int count = 0;
+      for (int slot = 0; slot < chains.size(); slot++) {
+        if (slot != eventSlot) {
+          count += concurrentTo(slot, eventSlot, eventId) - concurrentFrom(slot, eventId);
+        }
+      }
+      return count;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * The latest events that both given events have seen, that is the maximal events among those
+   * that happened before or are either of them, in ascending order. Empty if the two have no
+   * common past.
+   */
+  public int[] latestCommonAncestors(final int x, final int y) {
+    lock.readLock().lock();
+    try {
+      checkEvent(x);
+      checkEvent(y);
+      final int[] candidates = new int[chains.size()];
+      int count = 0;
+      for (int slot = 0; slot < chains.size(); slot++) {
+        final long seen = Math.min(tstamp(slot, x), tstamp(slot, y));
+        // the last event of the node that both have seen
+        final int seenCount = seen == 0L ? 0 : upperBound(slot, slot, seen);
+        if (seenCount > 0) {
+          candidates[count++] = chain(slot)[seenCount - 1];
+        }
+      }
+      int maximal = 0;
+      for (int iter = 0; iter < count; iter++) {
+        boolean dominated = false;
+        for (int other = 0; other < count && !dominated; other++) {
+          dominated = other != iter && before(candidates[iter], candidates[other]);
+        }
+        if (!dominated) {
+          candidates[maximal++] = candidates[iter];
+        }
+      }
+      final int[] ancestors = Arrays.copyOf(candidates, maximal);
+      Arrays.sort(ancestors);
+      return ancestors;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // whether x happened before or is y, the read lock must be held
+  private boolean before(final int x, final int y) {
+    final int slot = eventSlots[x];
+    return tstamp(slot, x) <= tstamp(slot, y);
+  }
+
+  // position in the chain of the node at the slot of its first event that did not happen before
+  // the given event
+  private int concurrentFrom(final int slot, final int eventId) {
+    final long seen = tstamp(slot, eventId);
+    return seen == 0L ? 0 : upperBound(slot, slot, seen);
+  }
+
+  // position in the chain of the node at the slot of its first event that the given event of the
+  // node at eventSlot happened before, never ahead of concurrentFrom()
+  private int concurrentTo(final int slot, final int eventSlot, final int eventId) {
+    return Math.max(concurrentFrom(slot, eventId),
+        lowerBound(slot, eventSlot, tstamp(eventSlot, eventId)));
+  }
+
+  // count of events in the chain of the node at chainSlot whose tstamp for the node at
+  // columnSlot is at most the given one, those tstamps never decrease along a chain
+  private int upperBound(final int chainSlot, final int columnSlot, final long tstamp) {
+    final int[] chain = chain(chainSlot);
+    int low = 0;
+    int high = chainLength(chainSlot);
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (tstamp(columnSlot, chain[mid]) <= tstamp) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  // count of events in the chain of the node at chainSlot whose tstamp for the node at
+  // columnSlot is below the given one
+  private int lowerBound(final int chainSlot, final int columnSlot, final long tstamp) {
+    final int[] chain = chain(chainSlot);
+    int low = 0;
+    int high = chainLength(chainSlot);
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (tstamp(columnSlot, chain[mid]) < tstamp) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private long tstamp(final int slot, final int eventId) {
+    final long[] column = column(slot);
+    return column == null ? 0L : column[eventId];
+  }
+
+  private long[] column(final int slot) {
+    return slot < columns.length ? columns[slot] : null;
+  }
+
+  private long[] ensureColumn(final int slot) {
+    if (slot >= columns.length) {
+      columns = Arrays.copyOf(columns, Math.max(slot + 1, columns.length << 1));
+    }
+    if (columns[slot] == null) {
+      columns[slot] = new long[eventSlots.length];
+    }
+    return columns[slot];
+  }
+
+  private int[] chain(final int slot) {
+    return slot < chains.size() ? chains.get(slot) : new int[0];
+  }
+
+  private int chainLength(final int slot) {
+    return slot < chainLengths.length ? chainLengths[slot] : 0;
+  }
+
+  private void appendToChain(final int slot, final int eventId) {
+    while (chains.size() <= slot) {
+      chains.add(new int[4]);
+    }
+    if (slot >= chainLengths.length) {
+      chainLengths = Arrays.copyOf(chainLengths, Math.max(slot + 1, chainLengths.length << 1));
+    }
+    int[] chain = chains.get(slot);
+    if (chainLengths[slot] == chain.length) {
+      chain = Arrays.copyOf(chain, chain.length << 1);
+      chains.set(slot, chain);
+    }
+    chain[chainLengths[slot]++] = eventId;
+  }
+
+  private int checkEvent(final int eventId) {
+    if (eventId < 0 || eventId >= size) {
+      throw new IllegalArgumentException(
+          "eventId " + eventId + " is outside the log of " + size + " events");
+    }
+    return eventId;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("CausalHistory [events:").append(size()).append("]");
+    return builder.toString();
+  }
+
+}
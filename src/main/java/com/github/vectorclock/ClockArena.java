@@ -0,0 +1,494 @@
+package com.github.vectorclock;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Keeps very large populations of vector clocks off the heap, in direct ByteBuffers that the
+ * garbage collector never scans or copies. The arena hands out fixed-width clock slots, each one
+ * holding a tstamp for every {@link NodeRegistry} slot below the arena's width, and every clock is
+ * used through an {@link ArenaClock}, a thin {@link IVectorClock} view that ticks, merges and
+ * compares the clock in place in off-heap memory.
+ *
+ * Clocks live until they are explicitly freed with {@link #free(ArenaClock)}, after which their
+ * slot is handed out again. Every slot carries a generation that is bumped when it is freed, so a
+ * view of a freed clock fails with an IllegalStateException rather than reading whichever clock
+ * reuses its slot.
+ *
+ * Slots are laid out back to back in chunks of a fixed count of clocks, chunks are allocated as
+ * the arena grows and never released. Clocks are guarded by a lock per stripe of slots, and
+ * recording never gives up on a lock and reports no metrics.
+ *
+ * @author gaurav
+ */
+public final class ClockArena {
+  private static final int STRIPES = 64;
+  private static final int DEFAULT_CHUNK_BYTES = 64 << 20;
+  // set in the header of a slot while its clock is allocated, the rest of it is the generation
+  private static final long ALLOCATED = 1L;
+
+  private final NodeRegistry registry;
+  private final int width;
+  // longs of a clock slot: a header, the bitset of member slots and width tstamps
+  private final int memberWords;
+  private final int strideLongs;
+  private final int clocksPerChunk;
+  private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+  private final Object allocationLock = new Object();
+  private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+  private int nextHandle;
+  private int[] freeHandles = new int[16];
+  private int freeCount;
+  private int allocated;
+
+  // an arena of clocks of the given width in chunks of 64MB
+  public ClockArena(final NodeRegistry registry, final int width) {
+    this(registry, width, Math.max(1, DEFAULT_CHUNK_BYTES / ((1 + wordCount(width) + width) << 3)));
+  }
+
+  public ClockArena(final NodeRegistry registry, final int width, final int clocksPerChunk) {
+    if (registry == null || width < 1 || clocksPerChunk < 1) {
+      throw new IllegalArgumentException(
+          "registry cannot be null, width and clocksPerChunk must be positive");
+    }
+    this.registry = registry;
+    this.width = width;
+    this.memberWords = wordCount(width);
+    this.strideLongs = 1 + memberWords + width;
+    if ((long) clocksPerChunk * strideLongs * Long.BYTES > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("A chunk of clocksPerChunk clocks exceeds 2GB");
+    }
+    this.clocksPerChunk = clocksPerChunk;
+    for (int iter = 0; iter < STRIPES; iter++) {
+      locks[iter] = new ReentrantLock();
+    }
+  }
+
+  public NodeRegistry getRegistry() {
+    return registry;
+  }
+
+  // count of registry slots every clock of the arena holds a tstamp for
+  public int getWidth() {
+    return width;
+  }
+
+  // Allocate a clock that holds no nodes yet
+  public ArenaClock allocate() {
+    final int handle;
+    synchronized (allocationLock) {
+      if (freeCount > 0) {
+        handle = freeHandles[--freeCount];
+      } else {
+        if (nextHandle == Integer.MAX_VALUE) {
+          throw new IllegalStateException("Arena is full");
+        }
+        handle = nextHandle++;
+        if (handle / clocksPerChunk == chunks.length) {
+          final ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+          grown[chunks.length] = ByteBuffer.allocateDirect(clocksPerChunk * strideLongs << 3)
+              .order(ByteOrder.nativeOrder());
+          chunks = grown;
+        }
+      }
+      allocated++;
+    }
+    final ReentrantLock lock = lock(handle);
+    lock.lock();
+    try {
+      final ByteBuffer chunk = chunk(handle);
+      final int base = base(handle);
+      for (int iter = 1; iter < strideLongs; iter++) {
+        chunk.putLong(base + (iter << 3), 0L);
+      }
+      final long generation = chunk.getLong(base) >>> 1;
+      chunk.putLong(base, generation << 1 | ALLOCATED);
+      return new ArenaClock(this, handle, generation);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Free the clock, its slot is handed out again by a later allocation. Views of the clock fail
+   * with an IllegalStateException from then on.
+   */
+  public void free(final ArenaClock clock) {
+    checkArena(clock);
+    final ReentrantLock lock = lock(clock.handle);
+    lock.lock();
+    try {
+      check(clock);
+      chunk(clock.handle).putLong(base(clock.handle), clock.generation + 1L << 1);
+    } finally {
+      lock.unlock();
+    }
+    synchronized (allocationLock) {
+      if (freeCount == freeHandles.length) {
+        freeHandles = Arrays.copyOf(freeHandles, freeCount << 1);
+      }
+      freeHandles[freeCount++] = clock.handle;
+      allocated--;
+    }
+  }
+
+  // count of clocks allocated and not freed
+  public int size() {
+    synchronized (allocationLock) {
+      return allocated;
+    }
+  }
+
+  // count of clocks the arena's chunks hold, allocated or not
+  public long capacity() {
+    return (long) chunks.length * clocksPerChunk;
+  }
+
+  /**
+   * Compare two clocks of the same arena in place with the same semantics as
+   * {@link VectorClock#compareClocks(IVectorClock, IVectorClock)}.
+   */
+  static EventOrdering compareClocks(final ArenaClock clockOne, final ArenaClock clockTwo) {
+    final ClockArena arena = clockOne.arena;
+    final ReentrantLock lockOne = arena.lock(clockOne.handle);
+    final ReentrantLock lockTwo = arena.lock(clockTwo.handle);
+    // stripes are always locked in the same order so that concurrent comparisons cannot deadlock
+    final ReentrantLock first =
+        stripe(clockOne.handle) <= stripe(clockTwo.handle) ? lockOne : lockTwo;
+    final ReentrantLock second = first == lockOne ? lockTwo : lockOne;
+    first.lock();
+    try {
+      if (second != first) {
+        second.lock();
+      }
+      try {
+        arena.check(clockOne);
+        arena.check(clockTwo);
+        final ByteBuffer chunkOne = arena.chunk(clockOne.handle);
+        final ByteBuffer chunkTwo = arena.chunk(clockTwo.handle);
+        final int tstampsOne = arena.tstamps(clockOne.handle);
+        final int tstampsTwo = arena.tstamps(clockTwo.handle);
+        boolean oneAfterTwo = false;
+        boolean twoAfterOne = false;
+        for (int slot = 0; slot < arena.width && !(oneAfterTwo && twoAfterOne); slot++) {
+          final long tstampOne = chunkOne.getLong(tstampsOne + (slot << 3));
+          final long tstampTwo = chunkTwo.getLong(tstampsTwo + (slot << 3));
+          oneAfterTwo |= tstampOne > tstampTwo;
+          twoAfterOne |= tstampOne < tstampTwo;
+        }
+        return ordering(oneAfterTwo, twoAfterOne);
+      } finally {
+        if (second != first) {
+          second.unlock();
+        }
+      }
+    } finally {
+      first.unlock();
+    }
+  }
+
+  private void initNode(final ArenaClock clock, final Node node) {
+    if (node == null) {
+      throw new IllegalArgumentException("node cannot be null");
+    }
+    final int slot = fit(registry.slot(node));
+    final ReentrantLock lock = lock(clock.handle);
+    lock.lock();
+    try {
+      check(clock);
+      final ByteBuffer chunk = chunk(clock.handle);
+      final int word = members(clock.handle) + (slot >>> 6 << 3);
+      chunk.putLong(word, chunk.getLong(word) | 1L << slot);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean removeNode(final ArenaClock clock, final Node node) {
+    final int slot = registry.slotIfPresent(node);
+    if (slot < 0 || slot >= width) {
+      return false;
+    }
+    final ReentrantLock lock = lock(clock.handle);
+    lock.lock();
+    try {
+      check(clock);
+      final ByteBuffer chunk = chunk(clock.handle);
+      if (!isMember(chunk, clock.handle, slot)) {
+        return false;
+      }
+      final int word = members(clock.handle) + (slot >>> 6 << 3);
+      chunk.putLong(word, chunk.getLong(word) & ~(1L << slot));
+      chunk.putLong(tstamps(clock.handle) + (slot << 3), 0L);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // slot,tstamp pairs of the nodes in the clock in ascending slot order
+  private long[] entries(final ArenaClock clock) {
+    final ReentrantLock lock = lock(clock.handle);
+    lock.lock();
+    try {
+      check(clock);
+      final ByteBuffer chunk = chunk(clock.handle);
+      final long[] entries = new long[width << 1];
+      int count = 0;
+      for (int slot = 0; slot < width; slot++) {
+        if (isMember(chunk, clock.handle, slot)) {
+          entries[count++] = slot;
+          entries[count++] = chunk.getLong(tstamps(clock.handle) + (slot << 3));
+        }
+      }
+      return Arrays.copyOf(entries, count);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private VectorClockTransition recordEvent(final ArenaClock clock, final Event event) {
+    final int slot = registry.slotIfPresent(event.getImpactedNode());
+    // the sender clock is laid out by slot before taking the lock
+    final long[] received =
+        event.getEventType() == EventType.RECEIVE ? received(event.getSenderClock()) : null;
+    final ReentrantLock lock = lock(clock.handle);
+    lock.lock();
+    try {
+      check(clock);
+      return record(clock, event, slot, received) ? new VectorClockTransition(event, clock, true)
+          : new VectorClockTransition(event, received != null ? clock : null, false);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private BatchTransition recordEvents(final ArenaClock clock, final List<Event> events) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null");
+    }
+    final int[] slots = new int[events.size()];
+    final long[][] received = new long[events.size()][];
+    for (int index = 0; index < events.size(); index++) {
+      final Event event = events.get(index);
+      slots[index] = registry.slotIfPresent(event.getImpactedNode());
+      if (event.getEventType() == EventType.RECEIVE) {
+        received[index] = received(event.getSenderClock());
+      }
+    }
+    final BitSet conflicts = new BitSet();
+    final ReentrantLock lock = lock(clock.handle);
+    lock.lock();
+    try {
+      check(clock);
+      for (int index = 0; index < events.size(); index++) {
+        if (record(clock, events.get(index), slots[index], received[index])) {
+          conflicts.set(index);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    return new BatchTransition(events.size(), conflicts, clock);
+  }
+
+  // Record the event in place, returning whether it was rejected as a conflict, lock is held
+  private boolean record(final ArenaClock clock, final Event event, final int slot,
+      final long[] received) {
+    final ByteBuffer chunk = chunk(clock.handle);
+    if (slot < 0 || slot >= width || !isMember(chunk, clock.handle, slot)) {
+      throw new IllegalArgumentException(
+          event.getImpactedNode() + " is not initialized in this clock");
+    }
+    final int tstamps = tstamps(clock.handle);
+    if (received != null) {
+      boolean oneAfterTwo = false;
+      boolean twoAfterOne = false;
+      for (int iter = 0; iter < received.length && !(oneAfterTwo && twoAfterOne); iter++) {
+        final long tstamp = chunk.getLong(tstamps + (iter << 3));
+        oneAfterTwo |= tstamp > received[iter];
+        twoAfterOne |= tstamp < received[iter];
+      }
+      if (oneAfterTwo && twoAfterOne) {
+        // do not accept events that result in conflicting version updates
+        return true;
+      }
+    }
+    final int ticked = tstamps + (slot << 3);
+    chunk.putLong(ticked, LogicalTstamp.advance(chunk.getLong(ticked), 1L));
+    if (received != null) {
+      for (int iter = 0; iter < received.length; iter++) {
+        if (received[iter] > chunk.getLong(tstamps + (iter << 3))) {
+          chunk.putLong(tstamps + (iter << 3), received[iter]);
+          final int word = members(clock.handle) + (iter >>> 6 << 3);
+          chunk.putLong(word, chunk.getLong(word) | 1L << iter);
+        }
+      }
+    }
+    return false;
+  }
+
+  // The received clock laid out by slot, as wide as this arena's clocks
+  private long[] received(final IVectorClock clock) {
+    final long[] dense;
+    if (clock instanceof ArenaClock && ((ArenaClock) clock).arena == this) {
+      dense = new long[width];
+      final long[] entries = entries((ArenaClock) clock);
+      for (int iter = 0; iter < entries.length; iter += 2) {
+        dense[(int) entries[iter]] = entries[iter + 1];
+      }
+      return dense;
+    }
+    dense = registry.dense(clock);
+    for (int slot = width; slot < dense.length; slot++) {
+      if (dense[slot] > 0L) {
+        fit(slot);
+      }
+    }
+    return Arrays.copyOf(dense, width);
+  }
+
+  private void check(final ArenaClock clock) {
+    if (chunk(clock.handle).getLong(base(clock.handle)) != (clock.generation << 1 | ALLOCATED)) {
+      throw new IllegalStateException("Clock was freed");
+    }
+  }
+
+  private void checkArena(final ArenaClock clock) {
+    if (clock == null || clock.arena != this) {
+      throw new IllegalArgumentException("clock was not allocated by this arena");
+    }
+  }
+
+  private int fit(final int slot) {
+    if (slot >= width) {
+      throw new IllegalArgumentException(
+          registry.node(slot) + " is at slot " + slot + " past the arena's width of " + width);
+    }
+    return slot;
+  }
+
+  private boolean isMember(final ByteBuffer chunk, final int handle, final int slot) {
+    return (chunk.getLong(members(handle) + (slot >>> 6 << 3)) & 1L << slot) != 0L;
+  }
+
+  private ByteBuffer chunk(final int handle) {
+    return chunks[handle / clocksPerChunk];
+  }
+
+  // byte offsets within the chunk of the slot's header, member bitset and tstamps
+  private int base(final int handle) {
+    return (handle % clocksPerChunk) * strideLongs << 3;
+  }
+
+  private int members(final int handle) {
+    return base(handle) + Long.BYTES;
+  }
+
+  private int tstamps(final int handle) {
+    return base(handle) + (1 + memberWords << 3);
+  }
+
+  private ReentrantLock lock(final int handle) {
+    return locks[stripe(handle)];
+  }
+
+  private static int stripe(final int handle) {
+    return handle & (STRIPES - 1);
+  }
+
+  private static int wordCount(final int slots) {
+    return (slots + 63) >>> 6;
+  }
+
+  private static EventOrdering ordering(final boolean oneAfterTwo, final boolean twoAfterOne) {
+    if (oneAfterTwo && twoAfterOne) {
+      return EventOrdering.CONCURRENT;
+    } else if (oneAfterTwo) {
+      return EventOrdering.HAPPENS_AFTER;
+    } else if (twoAfterOne) {
+      return EventOrdering.HAPPENS_BEFORE;
+    }
+    return EventOrdering.IDENTICAL;
+  }
+
+  /**
+   * A view of a clock in the arena. Every operation works on the off-heap clock in place, except
+   * {@link #deepCopy()} which copies it onto the heap as an ArrayVectorClock.
+   */
+  public static final class ArenaClock implements IVectorClock {
+    private final ClockArena arena;
+    private final int handle;
+    private final long generation;
+
+    private ArenaClock(final ClockArena arena, final int handle, final long generation) {
+      this.arena = arena;
+      this.handle = handle;
+      this.generation = generation;
+    }
+
+    public ClockArena getArena() {
+      return arena;
+    }
+
+    @Override
+    public void initNode(final Node node) {
+      arena.initNode(this, node);
+    }
+
+    @Override
+    public boolean removeNode(final Node node) {
+      return arena.removeNode(this, node);
+    }
+
+    @Override
+    public Map<Node, LogicalTstamp> snapshot() {
+      final Map<Node, LogicalTstamp> snapshot = new TreeMap<>(arena.registry.bySlot());
+      final long[] entries = arena.entries(this);
+      for (int iter = 0; iter < entries.length; iter += 2) {
+        snapshot.put(arena.registry.node((int) entries[iter]),
+            LogicalTstamp.curate(entries[iter + 1]));
+      }
+      return snapshot;
+    }
+
+    @Override
+    public VectorClockTransition recordEvent(final Event event) {
+      return arena.recordEvent(this, event);
+    }
+
+    @Override
+    public BatchTransition recordEvents(final List<Event> events) {
+      return arena.recordEvents(this, events);
+    }
+
+    // an on-heap copy of the clock
+    @Override
+    public ArrayVectorClock deepCopy() {
+      return ArrayVectorClock.fromEntries(arena.registry, arena.entries(this));
+    }
+
+    @Override
+    public String toString() {
+      return "ArenaClock:[" + snapshot().toString() + "]";
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("ClockArena [width:").append(width).append(", clocks:").append(size())
+        .append(", capacity:").append(capacity()).append("]");
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,193 @@
+package com.github.vectorclock;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records events on a clock from a single writer thread fed by a lock-free multi-producer queue, so
+ * that any number of threads can record events on the same clock without ever waiting for its
+ * write lock. {@link #submit(Event)} only links the event into the queue and returns a future of
+ * the transition, the writer thread then records the queued events one after the other on a lock
+ * that nobody else contends for.
+ *
+ * This suits massive fan-in from short-lived threads, many thousands of them submitting at once
+ * hand their events over in the time it takes to swap a pointer instead of queueing up in FIFO
+ * order on the clock's fair lock. Futures are completed on the writer thread, so callers that
+ * chain slow work onto them should use the async variants of CompletableFuture.
+ *
+ * Events can still be recorded on the clock directly, they then contend with the writer thread for
+ * the clock's lock as usual.
+ *
+ * @author gaurav
+ */
+public final class ClockEventLoop implements AutoCloseable {
+  private static final VarHandle NEXT;
+  static {
+    try {
+      NEXT = MethodHandles.lookup().findVarHandle(Task.class, "next", Task.class);
+    } catch (ReflectiveOperationException problem) {
+      throw new ExceptionInInitializerError(problem);
+    }
+  }
+
+  private final IVectorClock clock;
+  private final Thread writer;
+
+  // producers swap themselves in at the tail, the writer thread alone moves the head
+  private final AtomicReference<Task> tail;
+  private Task head;
+
+  // threads that are in the middle of submitting, close() waits for them before draining
+  private final AtomicInteger submitters = new AtomicInteger();
+  private volatile boolean closed;
+  private volatile boolean sleeping;
+
+  public ClockEventLoop(final IVectorClock clock) {
+    this(clock, runnable -> {
+      final Thread thread = new Thread(runnable, "clock-event-loop");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public ClockEventLoop(final IVectorClock clock, final ThreadFactory threadFactory) {
+    if (clock == null || threadFactory == null) {
+      throw new IllegalArgumentException("clock and threadFactory cannot be null");
+    }
+    this.clock = clock;
+    this.head = new Task(null, null);
+    this.tail = new AtomicReference<>(head);
+    this.writer = threadFactory.newThread(this::run);
+    writer.start();
+  }
+
+  public IVectorClock getClock() {
+    return clock;
+  }
+
+  /**
+   * Queue the event for the writer thread, returning a future of its transition. The future
+   * completes with what {@link IVectorClock#recordEvent(Event)} returned or threw, and fails with
+   * an IllegalStateException once the loop is closed.
+   */
+  public CompletableFuture<VectorClockTransition> submit(final Event event) {
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+    final CompletableFuture<VectorClockTransition> future = new CompletableFuture<>();
+    submitters.incrementAndGet();
+    try {
+      if (closed) {
+        future.completeExceptionally(new IllegalStateException("Event loop is closed"));
+        return future;
+      }
+      final Task task = new Task(event, future);
+      final Task previous = tail.getAndSet(task);
+      NEXT.setRelease(previous, task);
+    } finally {
+      submitters.decrementAndGet();
+    }
+    if (sleeping) {
+      LockSupport.unpark(writer);
+    }
+    return future;
+  }
+
+  /**
+   * Stop accepting events and wait for the writer thread to record the ones already queued. The
+   * wait is not cut short by an interrupt, the calling thread's interrupt status is restored once
+   * the writer thread is done.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(writer);
+    boolean interrupted = false;
+    while (true) {
+      try {
+        writer.join();
+        break;
+      } catch (InterruptedException problem) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run() {
+    while (true) {
+      final Task task = poll();
+      if (task != null) {
+        record(task);
+        continue;
+      }
+      if (tail.get() != head) {
+        // a producer has swapped in at the tail but not linked its task yet
+        Thread.onSpinWait();
+        continue;
+      }
+      if (closed) {
+        if (submitters.get() == 0 && tail.get() == head) {
+          return;
+        }
+        Thread.onSpinWait();
+        continue;
+      }
+      sleeping = true;
+      if (tail.get() == head && !closed) {
+        LockSupport.park(this);
+      }
+      sleeping = false;
+    }
+  }
+
+  private Task poll() {
+    final Task next = (Task) NEXT.getAcquire(head);
+    if (next == null) {
+      return null;
+    }
+    head = next;
+    return next;
+  }
+
+  private void record(final Task task) {
+    final Event event = task.event;
+    final CompletableFuture<VectorClockTransition> future = task.future;
+    // the task stays behind as the head, do not let it hold on to the event
+    task.event = null;
+    task.future = null;
+    try {
+      future.complete(clock.recordEvent(event));
+    } catch (RuntimeException problem) {
+      future.completeExceptionally(problem);
+    }
+  }
+
+  private static final class Task {
+    private Event event;
+    private CompletableFuture<VectorClockTransition> future;
+    @SuppressWarnings("unused")
+    private volatile Task next;
+
+    private Task(final Event event, final CompletableFuture<VectorClockTransition> future) {
+      this.event = event;
+      this.future = future;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("ClockEventLoop [clock:").append(clock).append(", closed:").append(closed)
+        .append("]");
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,208 @@
+package com.github.vectorclock;
+
+/**
+ * Data-parallel loops over clocks laid out as primitive long[] tstamps by slot, shared by the
+ * clocks, stores and matrices that use that layout. Three kernels are available:<br/>
+ *
+ * 1. vector walks the arrays in vectors of the incubating Vector API. It is built for Java 16 and
+ * later into the versioned part of the multi-release jar and selected at startup whenever the JVM
+ * resolved the jdk.incubator.vector module, for example with --add-modules
+ * jdk.incubator.vector<br/>
+ * 2. blocked, selected otherwise, walks the arrays in blocks without a branch per slot so that the
+ * JIT compiles each block into SIMD instructions, and only checks for an early exit between
+ * blocks<br/>
+ * 3. scalar walks the arrays one slot at a time with an early exit per slot, for platforms whose
+ * JIT does not vectorize the blocked loops<br/>
+ *
+ * The vectorclock.kernel system property overrides the selection with the name of a kernel.
+ *
+ * Tstamps are masked with Long.MAX_VALUE on read, so slots of arrays that ArrayVectorClock is
+ * forwarding to bigger ones read as their tstamp.
+ *
+ * @author gaurav
+ */
+abstract class ClockKernel {
+  // set in what compare() returns once a tstamp of the first array is seen past the second's
+  static final int ONE_AFTER_TWO = 1;
+  // set once a tstamp of the second array is seen past the first's
+  static final int TWO_AFTER_ONE = 2;
+  static final int BOTH = ONE_AFTER_TWO | TWO_AFTER_ONE;
+
+  private static final String VECTOR_MODULE = "jdk.incubator.vector";
+  private static final String VECTOR_KERNEL = "com.github.vectorclock.VectorKernel";
+
+  private static final ClockKernel SELECTED = select();
+
+  // the kernel selected at startup
+  static ClockKernel get() {
+    return SELECTED;
+  }
+
+  static ClockKernel of(final String name) {
+    switch (name) {
+      case "vector":
+        final ClockKernel vector = vector();
+        if (vector == null) {
+          throw new IllegalArgumentException("Clock kernel vector needs Java 16 or later with the "
+              + VECTOR_MODULE + " module");
+        }
+        return vector;
+      case "blocked":
+        return new Blocked();
+      case "scalar":
+        return new Scalar();
+      default:
+        throw new IllegalArgumentException("Unknown clock kernel " + name);
+    }
+  }
+
+  private static ClockKernel select() {
+    final String name = System.getProperty("vectorclock.kernel");
+    if (name != null) {
+      return of(name);
+    }
+    final ClockKernel vector = vector();
+    return vector != null ? vector : new Blocked();
+  }
+
+  // the vector kernel, or null unless the module is resolved and the kernel built for this JVM
+  static ClockKernel vector() {
+    if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+      return null;
+    }
+    try {
+      return (ClockKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError unavailable) {
+      return null;
+    }
+  }
+
+  /**
+   * Compare length tstamps of both arrays from their bases, returning seen with ONE_AFTER_TWO
+   * and TWO_AFTER_ONE set for what was seen. Stops as soon as both are set.
+   */
+  abstract int compare(long[] one, int oneBase, long[] two, int twoBase, int length, int seen);
+
+  // Raise length tstamps of into from its base to those of from from its base
+  abstract void merge(long[] into, int intoBase, long[] from, int fromBase, int length);
+
+  // whether any of length tstamps from the base is past 0
+  abstract boolean anyAfterZero(long[] tstamps, int base, int length);
+
+  /**
+   * Compare two clocks laid out by slot from their bases, slots past either width being 0, with
+   * the same semantics as {@link VectorClock#compareClocks(IVectorClock, IVectorClock)}.
+   */
+  final EventOrdering compare(final long[] one, final int oneBase, final int oneWidth,
+      final long[] two, final int twoBase, final int twoWidth, int seen) {
+    final int common = Math.min(oneWidth, twoWidth);
+    seen = compare(one, oneBase, two, twoBase, common, seen);
+    if ((seen & ONE_AFTER_TWO) == 0 && anyAfterZero(one, oneBase + common, oneWidth - common)) {
+      seen |= ONE_AFTER_TWO;
+    }
+    if ((seen & TWO_AFTER_ONE) == 0 && anyAfterZero(two, twoBase + common, twoWidth - common)) {
+      seen |= TWO_AFTER_ONE;
+    }
+    return ordering(seen);
+  }
+
+  static EventOrdering ordering(final int seen) {
+    switch (seen) {
+      case BOTH:
+        return EventOrdering.CONCURRENT;
+      case ONE_AFTER_TWO:
+        return EventOrdering.HAPPENS_AFTER;
+      case TWO_AFTER_ONE:
+        return EventOrdering.HAPPENS_BEFORE;
+      default:
+        return EventOrdering.IDENTICAL;
+    }
+  }
+
+  private static final class Scalar extends ClockKernel {
+    @Override
+    int compare(final long[] one, final int oneBase, final long[] two, final int twoBase,
+        final int length, int seen) {
+      for (int slot = 0; slot < length && seen != BOTH; slot++) {
+        final long tstampOne = one[oneBase + slot] & Long.MAX_VALUE;
+        final long tstampTwo = two[twoBase + slot] & Long.MAX_VALUE;
+        if (tstampOne > tstampTwo) {
+          seen |= ONE_AFTER_TWO;
+        } else if (tstampOne < tstampTwo) {
+          seen |= TWO_AFTER_ONE;
+        }
+      }
+      return seen;
+    }
+
+    @Override
+    void merge(final long[] into, final int intoBase, final long[] from, final int fromBase,
+        final int length) {
+      for (int slot = 0; slot < length; slot++) {
+        into[intoBase + slot] = Math.max(into[intoBase + slot], from[fromBase + slot]);
+      }
+    }
+
+    @Override
+    boolean anyAfterZero(final long[] tstamps, final int base, final int length) {
+      for (int slot = 0; slot < length; slot++) {
+        if ((tstamps[base + slot] & Long.MAX_VALUE) > 0L) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static final class Blocked extends ClockKernel {
+    // slots walked between checks for an early exit
+    private static final int BLOCK = 256;
+
+    @Override
+    int compare(final long[] one, final int oneBase, final long[] two, final int twoBase,
+        final int length, int seen) {
+      for (int from = 0; from < length && seen != BOTH; from += BLOCK) {
+        final int to = Math.min(from + BLOCK, length);
+        // masked tstamps are below 2^63, so a difference is negative exactly when the subtrahend
+        // is the greater one and the sign bits of the or-ed differences say what was seen
+        long oneAfterTwo = 0L;
+        long twoAfterOne = 0L;
+        for (int slot = from; slot < to; slot++) {
+          final long tstampOne = one[oneBase + slot] & Long.MAX_VALUE;
+          final long tstampTwo = two[twoBase + slot] & Long.MAX_VALUE;
+          oneAfterTwo |= tstampTwo - tstampOne;
+          twoAfterOne |= tstampOne - tstampTwo;
+        }
+        seen |= (int) (oneAfterTwo >>> 63) | (int) (twoAfterOne >>> 63) << 1;
+      }
+      return seen;
+    }
+
+    @Override
+    void merge(final long[] into, final int intoBase, final long[] from, final int fromBase,
+        final int length) {
+      for (int slot = 0; slot < length; slot++) {
+        final long tstamp = into[intoBase + slot];
+        final long received = from[fromBase + slot];
+        // branch-free max of two tstamps below 2^63
+        into[intoBase + slot] = tstamp + ((received - tstamp) & ~((received - tstamp) >> 63));
+      }
+    }
+
+    @Override
+    boolean anyAfterZero(final long[] tstamps, final int base, final int length) {
+      for (int from = 0; from < length; from += BLOCK) {
+        final int to = Math.min(from + BLOCK, length);
+        long any = 0L;
+        for (int slot = from; slot < to; slot++) {
+          any |= tstamps[base + slot] & Long.MAX_VALUE;
+        }
+        if (any != 0L) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,244 @@
+package com.github.vectorclock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+
+/**
+ * A read-only batch of clocks laid out as the rows of one primitive long[] by the slot a shared
+ * {@link NodeRegistry} assigns to every Node, for bulk work such as anti-entropy repairs that would
+ * otherwise compare thousands of clocks one pair at a time:<br/>
+ *
+ * 1. {@link #compareWith(IVectorClock)} compares every clock with one other clock<br/>
+ * 2. {@link #dominance()} compares every clock with every other clock<br/>
+ * 3. {@link #leastUpperBound()} merges all clocks into one<br/>
+ * 4. {@link #maximal()} finds the clocks no other clock happens after<br/>
+ *
+ * Each of them splits its rows into fork-join tasks on the given pool, sized so that every task
+ * walks a few thousand tstamps, and so scales with the pool's parallelism. Comparisons have the
+ * same semantics as {@link VectorClock#compareClocks(IVectorClock, IVectorClock)}, a node missing
+ * from a clock counting as 0 in it.
+ *
+ * The clocks are snapshotted once when the matrix is built, later events on them are not seen.
+ *
+ * @author gaurav
+ */
+public final class ClockMatrix {
+  // tstamps a single task walks before it is worth splitting further
+  private static final int TASK_TSTAMPS = 1 << 14;
+
+  private final NodeRegistry registry;
+  private final ForkJoinPool pool;
+  private final int clockCount;
+  private final int width;
+  // clock:row of width tstamps by slot
+  private final long[] tstamps;
+
+  // lay out the clocks over the registry, working on the common pool
+  public ClockMatrix(final NodeRegistry registry, final List<? extends IVectorClock> clocks) {
+    this(registry, clocks, ForkJoinPool.commonPool());
+  }
+
+  public ClockMatrix(final NodeRegistry registry, final List<? extends IVectorClock> clocks,
+      final ForkJoinPool pool) {
+    if (registry == null || clocks == null || pool == null) {
+      throw new IllegalArgumentException("registry, clocks and pool cannot be null");
+    }
+    this.registry = registry;
+    this.pool = pool;
+    this.clockCount = clocks.size();
+    final long[][] rows = new long[clockCount][];
+    forEachClock(1, clock -> rows[clock] = registry.dense(clocks.get(clock)));
+    int maxWidth = 0;
+    for (final long[] row : rows) {
+      maxWidth = Math.max(maxWidth, row.length);
+    }
+    this.width = maxWidth;
+    this.tstamps = new long[clockCount * width];
+    forEachClock(width, clock -> System.arraycopy(rows[clock], 0, tstamps, clock * width,
+        rows[clock].length));
+  }
+
+  public NodeRegistry getRegistry() {
+    return registry;
+  }
+
+  // count of clocks in the matrix
+  public int size() {
+    return clockCount;
+  }
+
+  /**
+   * Compare every clock in the matrix with the given one, the ordering at an index being that of
+   * the clock at the index with respect to the given clock.
+   */
+  public EventOrdering[] compareWith(final IVectorClock clock) {
+    final long[] other = registry.dense(clock);
+    final EventOrdering[] orderings = new EventOrdering[clockCount];
+    forEachClock(width, row -> orderings[row] = compare(row, other));
+    return orderings;
+  }
+
+  /**
+   * Compare every pair of clocks in the matrix, the ordering at [one][two] being that of clock one
+   * with respect to clock two. Every pair is compared once, half the matrix is filled in from the
+   * other half.
+   */
+  public EventOrdering[][] dominance() {
+    final EventOrdering[][] orderings = new EventOrdering[clockCount][clockCount];
+    forEachClock(width * clockCount / 2 + 1, one -> {
+      orderings[one][one] = EventOrdering.IDENTICAL;
+      for (int two = one + 1; two < clockCount; two++) {
+        orderings[one][two] = compare(one, two);
+      }
+    });
+    for (int one = 0; one < clockCount; one++) {
+      for (int two = 0; two < one; two++) {
+        orderings[one][two] = orderings[two][one].reverse();
+      }
+    }
+    return orderings;
+  }
+
+  /**
+   * Merge all clocks in the matrix into one that every one of them happens before or is identical
+   * to, holding the nodes that any of them has seen events of.
+   */
+  public ArrayVectorClock leastUpperBound() {
+    final long[] merged =
+        clockCount == 0 ? new long[0] : pool.invoke(new MergeTask(0, clockCount, grain(width)));
+    int count = 0;
+    for (final long tstamp : merged) {
+      if (tstamp > 0L) {
+        count++;
+      }
+    }
+    final long[] entries = new long[count << 1];
+    for (int slot = 0, iter = 0; slot < merged.length; slot++) {
+      if (merged[slot] > 0L) {
+        entries[iter++] = slot;
+        entries[iter++] = merged[slot];
+      }
+    }
+    return ArrayVectorClock.fromEntries(registry, entries);
+  }
+
+  /**
+   * Return the indexes, ascending, of the clocks that no other clock in the matrix happens after.
+   * Of clocks that are identical only the first is returned.
+   */
+  public int[] maximal() {
+    final boolean[] dominated = new boolean[clockCount];
+    forEachClock(width * clockCount + 1, one -> {
+      for (int two = 0; two < clockCount && !dominated[one]; two++) {
+        if (two != one) {
+          final EventOrdering ordering = compare(one, two);
+          dominated[one] = ordering == EventOrdering.HAPPENS_BEFORE
+              || ordering == EventOrdering.IDENTICAL && two < one;
+        }
+      }
+    });
+    int count = 0;
+    final int[] indexes = new int[clockCount];
+    for (int clock = 0; clock < clockCount; clock++) {
+      if (!dominated[clock]) {
+        indexes[count++] = clock;
+      }
+    }
+    return Arrays.copyOf(indexes, count);
+  }
+
+  // Compare the clock at the row with one laid out by slot, which may be narrower or wider
+  private EventOrdering compare(final int row, final long[] other) {
+    return ClockKernel.get().compare(tstamps, row * width, width, other, 0, other.length, 0);
+  }
+
+  private EventOrdering compare(final int rowOne, final int rowTwo) {
+    return ClockKernel.get().compare(tstamps, rowOne * width, width, tstamps, rowTwo * width,
+        width, 0);
+  }
+
+  // Run the action for every clock on the pool, rowCost being the tstamps it walks per clock
+  private void forEachClock(final int rowCost, final IntConsumer action) {
+    if (clockCount > 0) {
+      pool.invoke(new RowTask(0, clockCount, grain(rowCost), action));
+    }
+  }
+
+  // count of rows a single task handles
+  private static int grain(final int rowCost) {
+    return Math.max(1, TASK_TSTAMPS / Math.max(rowCost, 1));
+  }
+
+  private static final class RowTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final int grain;
+    private final IntConsumer action;
+
+    private RowTask(final int from, final int to, final int grain, final IntConsumer action) {
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+      this.action = action;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= grain) {
+        for (int row = from; row < to; row++) {
+          action.accept(row);
+        }
+        return;
+      }
+      final int middle = (from + to) >>> 1;
+      invokeAll(new RowTask(from, middle, grain, action), new RowTask(middle, to, grain, action));
+    }
+  }
+
+  // the slot by slot maximum of a range of rows
+  private final class MergeTask extends RecursiveTask<long[]> {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    private MergeTask(final int from, final int to, final int grain) {
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+    }
+
+    @Override
+    protected long[] compute() {
+      if (to - from <= grain) {
+        final long[] merged = new long[width];
+        for (int row = from; row < to; row++) {
+          ClockKernel.get().merge(merged, 0, tstamps, row * width, width);
+        }
+        return merged;
+      }
+      final int middle = (from + to) >>> 1;
+      final MergeTask right = new MergeTask(middle, to, grain);
+      right.fork();
+      final long[] merged = new MergeTask(from, middle, grain).compute();
+      ClockKernel.get().merge(merged, 0, right.join(), 0, width);
+      return merged;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("ClockMatrix [clocks:").append(clockCount).append(", width:").append(width)
+        .append("]");
+    return builder.toString();
+  }
+
+}
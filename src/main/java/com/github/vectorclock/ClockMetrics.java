@@ -0,0 +1,76 @@
+package com.github.vectorclock;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * A sink for what the clocks observe while recording events, so that contention, conflicts and
+ * comparison costs can be watched without logging on the hot path. Implementations are called on
+ * the recording thread, often with the clock's write lock held, so they must be cheap and
+ * thread-safe.
+ *
+ * {@link #NOOP} is the default for every clock. {@link InMemoryClockMetrics} keeps counters and a
+ * latency histogram in memory and is handy for tests or for periodic export to a real metrics
+ * system.
+ *
+ * @author gaurav
+ */
+public interface ClockMetrics {
+
+  // discards everything, clocks skip taking timings for it
+  ClockMetrics NOOP = new ClockMetrics() {
+    @Override
+    public boolean isEnabled() {
+      return false;
+    }
+
+    @Override
+    public void eventRecorded(final EventType eventType) {}
+
+    @Override
+    public void eventDropped() {}
+
+    @Override
+    public void lockContended() {}
+
+    @Override
+    public void conflictDetected() {}
+
+    @Override
+    public void clockMerged(final int width) {}
+
+    @Override
+    public void clocksCompared(final long nanos) {}
+
+    @Override
+    public String toString() {
+      return "ClockMetrics.NOOP";
+    }
+  };
+
+  // whether clocks should bother taking timings for this sink
+  default boolean isEnabled() {
+    return true;
+  }
+
+  // an event was applied to the clock
+  void eventRecorded(EventType eventType);
+
+  // an event was not recorded because the RecordingPolicy gave up on the write lock
+  void eventDropped();
+
+  // another thread held the write lock when this one came to record an event
+  void lockContended();
+
+  // a RECEIVE event was rejected because the sender's clock was concurrent
+  void conflictDetected();
+
+  // a received clock of the given width was merged into the clock
+  void clockMerged(int width);
+
+  // the clock was compared with a received clock in the given nanos
+  void clocksCompared(long nanos);
+
+  // the PruningPolicy dropped entries from the clock, possibly ones other clocks still carry
+  default void entriesPruned(int count, boolean falseConcurrencyPossible) {}
+
+}
@@ -0,0 +1,227 @@
+package com.github.vectorclock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * A {@link Flow.Processor} that records a stream of events on a clock and publishes the
+ * {@link VectorClockTransition} of every one of them, in order, to a single subscriber. RECEIVE
+ * transitions carry the clock as their receiver clock, as {@link IVectorClock#recordEvent(Event)}
+ * does.
+ *
+ * Up to window events are requested upstream ahead of the subscriber's demand and buffered, and
+ * whatever is buffered when the subscriber's demand allows is recorded with one
+ * {@link IVectorClock#recordEvents(List)} call, so that a busy stream takes the clock's lock once
+ * per batch rather than once per event. Events are recorded only as their transitions are
+ * published, the subscriber never gets more transitions than it requested and upstream never
+ * sends more events than the window.
+ *
+ * Completion is published once the buffered events are, while an upstream error, a failure to
+ * record a batch or a batch dropped by the clock's {@link RecordingPolicy} discards the buffered
+ * events and is published as an error right away. A second subscriber is rejected with an
+ * IllegalStateException.
+ *
+ * @author gaurav
+ */
+public final class ClockProcessor implements Flow.Processor<Event, VectorClockTransition> {
+  private static final int DEFAULT_WINDOW = 256;
+
+  private final IVectorClock clock;
+  private final int window;
+
+  private final Queue<Event> buffered = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+  private final AtomicReference<Flow.Subscriber<? super VectorClockTransition>> downstream =
+      new AtomicReference<>();
+  private final AtomicLong demand = new AtomicLong();
+  // count of drain() calls pending, only the one that brings it up from 0 drains
+  private final AtomicInteger drains = new AtomicInteger();
+  private volatile boolean done;
+  private volatile Throwable error;
+  private volatile boolean cancelled;
+
+  public ClockProcessor(final IVectorClock clock) {
+    this(clock, DEFAULT_WINDOW);
+  }
+
+  public ClockProcessor(final IVectorClock clock, final int window) {
+    if (clock == null || window < 1) {
+      throw new IllegalArgumentException("clock cannot be null and window must be positive");
+    }
+    this.clock = clock;
+    this.window = window;
+  }
+
+  public IVectorClock getClock() {
+    return clock;
+  }
+
+  @Override
+  public void subscribe(final Flow.Subscriber<? super VectorClockTransition> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("subscriber cannot be null");
+    }
+    if (!downstream.compareAndSet(null, subscriber)) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(final long count) {}
+
+        @Override
+        public void cancel() {}
+      });
+      subscriber.onError(new IllegalStateException("Processor already has a subscriber"));
+      return;
+    }
+    subscriber.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(final long count) {
+        if (count <= 0L) {
+          error = new IllegalArgumentException("count must be positive but was " + count);
+          cancelUpstream();
+        } else {
+          demand.accumulateAndGet(count, (current, added) -> current + added < 0L
+              ? Long.MAX_VALUE : current + added);
+        }
+        drain();
+      }
+
+      @Override
+      public void cancel() {
+        cancelled = true;
+        cancelUpstream();
+        drain();
+      }
+    });
+    drain();
+  }
+
+  @Override
+  public void onSubscribe(final Flow.Subscription subscription) {
+    if (!upstream.compareAndSet(null, subscription)) {
+      subscription.cancel();
+      return;
+    }
+    if (cancelled) {
+      subscription.cancel();
+      return;
+    }
+    subscription.request(window);
+  }
+
+  @Override
+  public void onNext(final Event event) {
+    if (event == null) {
+      throw new NullPointerException("event cannot be null");
+    }
+    buffered.offer(event);
+    drain();
+  }
+
+  @Override
+  public void onError(final Throwable throwable) {
+    error = throwable;
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    done = true;
+    drain();
+  }
+
+  // Publish what the subscriber's demand allows, serialized so that one thread at a time does
+  private void drain() {
+    if (drains.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      final Flow.Subscriber<? super VectorClockTransition> subscriber = downstream.get();
+      if (cancelled) {
+        buffered.clear();
+      } else if (subscriber != null) {
+        publish(subscriber);
+      }
+      missed = drains.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private void publish(final Flow.Subscriber<? super VectorClockTransition> subscriber) {
+    while (!cancelled) {
+      if (error != null) {
+        fail(subscriber, error);
+        return;
+      }
+      final List<Event> batch = new ArrayList<>();
+      final long allowed = Math.min(demand.get(), window);
+      Event event;
+      while (batch.size() < allowed && (event = buffered.poll()) != null) {
+        batch.add(event);
+      }
+      if (batch.isEmpty()) {
+        if (done && buffered.isEmpty()) {
+          cancelled = true;
+          subscriber.onComplete();
+        }
+        return;
+      }
+      final BatchTransition transition;
+      try {
+        transition = clock.recordEvents(batch);
+      } catch (RuntimeException problem) {
+        cancelUpstream();
+        fail(subscriber, problem);
+        return;
+      }
+      if (transition == null) {
+        cancelUpstream();
+        fail(subscriber, new IllegalStateException(
+            "Recording policy dropped a batch of " + batch.size() + " events"));
+        return;
+      }
+      demand.addAndGet(-batch.size());
+      for (int index = 0; index < batch.size() && !cancelled; index++) {
+        final Event recorded = batch.get(index);
+        subscriber.onNext(new VectorClockTransition(recorded,
+            recorded.getEventType() == EventType.RECEIVE ? clock : null,
+            transition.isConcurrentEventConflictDetected(index)));
+      }
+      final Flow.Subscription subscription = upstream.get();
+      if (subscription != null && !done) {
+        // the published events leave room in the window for as many more
+        subscription.request(batch.size());
+      }
+    }
+  }
+
+  private void fail(final Flow.Subscriber<? super VectorClockTransition> subscriber,
+      final Throwable problem) {
+    cancelled = true;
+    buffered.clear();
+    subscriber.onError(problem);
+  }
+
+  private void cancelUpstream() {
+    final Flow.Subscription subscription = upstream.get();
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("ClockProcessor [clock:").append(clock).append(", window:").append(window)
+        .append(", demand:").append(demand.get()).append("]");
+    return builder.toString();
+  }
+
+}
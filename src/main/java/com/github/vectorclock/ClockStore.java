@@ -0,0 +1,520 @@
+package com.github.vectorclock;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Keeps a vector clock per versioned entity, keyed by entity id, without paying for a lock and a
+ * map per clock. The store is split into stripes by key hash and every stripe keeps the clocks of
+ * its keys as fixed-width rows of one primitive long[] indexed by the slot a shared
+ * {@link NodeRegistry} assigns to every Node, all guarded by a single lock per stripe.
+ *
+ * Every entity clock spans all nodes of the registry, nodes it has not seen yet simply being at 0,
+ * so clocks in the store are always comparable with each other and an entity that was never
+ * written is the same as one whose clock is all zeros.
+ *
+ * Memory can be bounded with a maximum entry count, in which case every stripe holds up to its
+ * share of it and evicts its coldest entry with a second-chance clock sweep to make room for a new
+ * one. Evicted clocks are handed to an {@link EvictionListener} so that they can be persisted
+ * rather than lost.
+ *
+ * @author gaurav
+ */
+public final class ClockStore<K> {
+  private static final int DEFAULT_STRIPES = 64;
+
+  private final NodeRegistry registry;
+  private final Stripe[] stripes;
+  private final EvictionListener<K> evictionListener;
+
+  // an unbounded store with the default count of stripes
+  public ClockStore(final NodeRegistry registry) {
+    this(registry, DEFAULT_STRIPES, 0, null);
+  }
+
+  /**
+   * Create a store over the given registry split into stripeCount stripes, a power of 2. A
+   * maxEntries of 0 leaves the store unbounded, otherwise every stripe holds up to maxEntries /
+   * stripeCount entries rounded up. The evictionListener may be null.
+   */
+  public ClockStore(final NodeRegistry registry, final int stripeCount, final int maxEntries,
+      final EvictionListener<K> evictionListener) {
+    if (registry == null) {
+      throw new IllegalArgumentException("registry cannot be null");
+    }
+    if (stripeCount <= 0 || Integer.bitCount(stripeCount) != 1) {
+      throw new IllegalArgumentException("stripeCount must be a positive power of 2");
+    }
+    if (maxEntries < 0) {
+      throw new IllegalArgumentException("maxEntries cannot be negative");
+    }
+    this.registry = registry;
+    this.evictionListener = evictionListener;
+    final int maxRows =
+        maxEntries == 0 ? Integer.MAX_VALUE : (maxEntries + stripeCount - 1) / stripeCount;
+    this.stripes = new Stripe[stripeCount];
+    for (int iter = 0; iter < stripeCount; iter++) {
+      stripes[iter] = new Stripe(maxRows, Math.max(registry.size(), 1));
+    }
+  }
+
+  public NodeRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * Record an event on the clock of the given entity, creating the clock if the store does not hold
+   * one. Just like {@link IVectorClock#recordEvent(Event)}, a RECEIVE whose sender clock is
+   * concurrent with the entity clock is rejected. The returned transition does not carry the
+   * receiver clock, use {@link #get(Object)} to read it.
+   */
+  public VectorClockTransition recordEvent(final K key, final Event event) {
+    checkKey(key);
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+    final int slot = registry.slot(event.getImpactedNode());
+    // the sender clock is laid out by slot before taking the lock
+    final long[] received =
+        event.getEventType() == EventType.RECEIVE ? registry.dense(event.getSenderClock()) : null;
+    final int hash = hash(key);
+    final Stripe stripe = stripe(hash);
+    stripe.lock.lock();
+    try {
+      stripe.ensureStride(received != null ? Math.max(slot + 1, received.length) : slot + 1);
+      if (received != null) {
+        // a clock the store does not hold yet is all 0 and cannot be concurrent with the sender's,
+        // so a rejected RECEIVE never makes room for a new clock
+        final int existing = stripe.find(key, hash);
+        if (existing >= 0 && compare(stripe.tstamps, existing * stripe.stride, stripe.stride,
+            received, 0, received.length) == EventOrdering.CONCURRENT) {
+          // do not accept events that result in conflicting version updates
+          return new VectorClockTransition(event, null, true);
+        }
+      }
+      final int base = rowFor(stripe, key, hash) * stripe.stride;
+      final long[] tstamps = stripe.tstamps;
+      tstamps[base + slot] = LogicalTstamp.advance(tstamps[base + slot], 1L);
+      if (received != null) {
+        merge(tstamps, base, received);
+      }
+      return new VectorClockTransition(event, null, false);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  // Merge the given clock into the clock of the given entity without ticking it
+  public void merge(final K key, final IVectorClock clock) {
+    checkKey(key);
+    final long[] received = registry.dense(clock);
+    final int hash = hash(key);
+    final Stripe stripe = stripe(hash);
+    stripe.lock.lock();
+    try {
+      stripe.ensureStride(received.length);
+      merge(stripe.tstamps, rowFor(stripe, key, hash) * stripe.stride, received);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  // Merge the clock of the source entity into the clock of the target entity without ticking it
+  public void merge(final K targetKey, final K sourceKey) {
+    checkKey(targetKey);
+    final long[] source = row(sourceKey);
+    if (source != null) {
+      final int hash = hash(targetKey);
+      final Stripe stripe = stripe(hash);
+      stripe.lock.lock();
+      try {
+        stripe.ensureStride(source.length);
+        merge(stripe.tstamps, rowFor(stripe, targetKey, hash) * stripe.stride, source);
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Compare the clocks of two entities with the semantics of
+   * {@link VectorClock#compareClocks(IVectorClock, IVectorClock)}.
+   */
+  public EventOrdering compare(final K keyOne, final K keyTwo) {
+    checkKey(keyOne);
+    checkKey(keyTwo);
+    final int hashOne = hash(keyOne);
+    final int hashTwo = hash(keyTwo);
+    final Stripe stripeOne = stripe(hashOne);
+    final Stripe stripeTwo = stripe(hashTwo);
+    // stripes are always locked in the same order so that concurrent comparisons cannot deadlock
+    final Stripe first = stripeIndex(hashOne) <= stripeIndex(hashTwo) ? stripeOne : stripeTwo;
+    final Stripe second = first == stripeOne ? stripeTwo : stripeOne;
+    first.lock.lock();
+    try {
+      if (second != first) {
+        second.lock.lock();
+      }
+      try {
+        final int rowOne = stripeOne.find(keyOne, hashOne);
+        final int rowTwo = stripeTwo.find(keyTwo, hashTwo);
+        return compare(stripeOne.tstamps, rowOne * stripeOne.stride,
+            rowOne < 0 ? 0 : stripeOne.stride, stripeTwo.tstamps, rowTwo * stripeTwo.stride,
+            rowTwo < 0 ? 0 : stripeTwo.stride);
+      } finally {
+        if (second != first) {
+          second.lock.unlock();
+        }
+      }
+    } finally {
+      first.lock.unlock();
+    }
+  }
+
+  // Compare the clock of an entity with the given clock, nodes missing from it count as 0
+  public EventOrdering compare(final K key, final IVectorClock clock) {
+    checkKey(key);
+    final long[] other = registry.dense(clock);
+    final int hash = hash(key);
+    final Stripe stripe = stripe(hash);
+    stripe.lock.lock();
+    try {
+      final int row = stripe.find(key, hash);
+      return compare(stripe.tstamps, row * stripe.stride, row < 0 ? 0 : stripe.stride, other, 0,
+          other.length);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  // A copy of the clock of the given entity or null if the store does not hold one
+  public ArrayVectorClock get(final K key) {
+    checkKey(key);
+    final int hash = hash(key);
+    final Stripe stripe = stripe(hash);
+    stripe.lock.lock();
+    try {
+      final int row = stripe.find(key, hash);
+      return row < 0 ? null : clockOf(stripe, row);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  public boolean contains(final K key) {
+    checkKey(key);
+    final int hash = hash(key);
+    final Stripe stripe = stripe(hash);
+    stripe.lock.lock();
+    try {
+      return stripe.find(key, hash) >= 0;
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  // Drop the clock of the given entity without telling the EvictionListener
+  public boolean remove(final K key) {
+    checkKey(key);
+    final int hash = hash(key);
+    final Stripe stripe = stripe(hash);
+    stripe.lock.lock();
+    try {
+      final int row = stripe.find(key, hash);
+      if (row < 0) {
+        return false;
+      }
+      stripe.remove(row);
+      return true;
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  // count of entity clocks held across all stripes
+  public int size() {
+    int size = 0;
+    for (final Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        size += stripe.size;
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  // the row of the given key in the stripe, making room for it if it is new, stripe is locked
+  @SuppressWarnings("unchecked")
+  private int rowFor(final Stripe stripe, final K key, final int hash) {
+    final int row = stripe.find(key, hash);
+    if (row >= 0) {
+      return row;
+    }
+    if (stripe.size == stripe.maxRows) {
+      final int victim = stripe.victim();
+      final K evictedKey = (K) stripe.rowKeys[victim];
+      final ArrayVectorClock evictedClock =
+          evictionListener != null ? clockOf(stripe, victim) : null;
+      stripe.remove(victim);
+      if (evictionListener != null) {
+        evictionListener.evicted(evictedKey, evictedClock);
+      }
+    }
+    return stripe.insert(key, hash);
+  }
+
+  // a copy of the given key's row laid out by slot or null if the store does not hold the key
+  private long[] row(final K key) {
+    checkKey(key);
+    final int hash = hash(key);
+    final Stripe stripe = stripe(hash);
+    stripe.lock.lock();
+    try {
+      final int row = stripe.find(key, hash);
+      if (row < 0) {
+        return null;
+      }
+      final int base = row * stripe.stride;
+      return Arrays.copyOfRange(stripe.tstamps, base, base + stripe.stride);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  // an ArrayVectorClock over every node of the registry out of the given row, stripe is locked
+  private ArrayVectorClock clockOf(final Stripe stripe, final int row) {
+    final int width = registry.size();
+    final long[] entries = new long[width << 1];
+    final int base = row * stripe.stride;
+    for (int slot = 0; slot < width; slot++) {
+      entries[slot << 1] = slot;
+      entries[(slot << 1) + 1] = slot < stripe.stride ? stripe.tstamps[base + slot] : 0L;
+    }
+    return ArrayVectorClock.fromEntries(registry, entries);
+  }
+
+  // Compare two clocks laid out by slot, slots past either width are implicitly 0
+  private static EventOrdering compare(final long[] one, final int oneBase, final int oneWidth,
+      final long[] two, final int twoBase, final int twoWidth) {
+    return ClockKernel.get().compare(one, oneBase, oneWidth, two, twoBase, twoWidth, 0);
+  }
+
+  // Merge a clock laid out by slot into the row at base, the row is at least as wide as received
+  private static void merge(final long[] tstamps, final int base, final long[] received) {
+    ClockKernel.get().merge(tstamps, base, received, 0, received.length);
+  }
+
+  private Stripe stripe(final int hash) {
+    return stripes[stripeIndex(hash)];
+  }
+
+  private int stripeIndex(final int hash) {
+    return hash & (stripes.length - 1);
+  }
+
+  private static int hash(final Object key) {
+    final int hash = key.hashCode();
+    return hash ^ (hash >>> 16);
+  }
+
+  private static void checkKey(final Object key) {
+    if (key == null) {
+      throw new IllegalArgumentException("key cannot be null");
+    }
+  }
+
+  /**
+   * Told about every entity clock the store evicts to stay within its maximum entry count. It is
+   * called on the recording thread with the entity's stripe locked, so it should be quick.
+   */
+  public interface EvictionListener<K> {
+    void evicted(K key, ArrayVectorClock clock);
+  }
+
+  /**
+   * The clocks of one stripe of keys as rows of a single long[], with an open addressing index from
+   * key to row. Every method expects the caller to hold the stripe's lock.
+   */
+  private static final class Stripe {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int maxRows;
+
+    // row * stride + slot:logicalTstamp of the node at that slot in the clock of the row's key
+    private long[] tstamps;
+    private int stride;
+
+    // key and key hash per row, null keys for rows that are free
+    private Object[] rowKeys;
+    private int[] rowHashes;
+
+    // bitset of rows accessed since the eviction hand last swept past them
+    private long[] referenced;
+    private int hand;
+
+    private int[] freeRows;
+    private int freeCount;
+    // rows handed out so far, live or free
+    private int rowCount;
+    private int size;
+
+    // row by key hash with linear probing, -1 for empty positions
+    private int[] index;
+    private int indexShift;
+
+    private Stripe(final int maxRows, final int stride) {
+      this.maxRows = maxRows;
+      this.stride = stride;
+      final int rows = Math.min(maxRows, 8);
+      this.tstamps = new long[rows * stride];
+      this.rowKeys = new Object[rows];
+      this.rowHashes = new int[rows];
+      this.referenced = new long[(rows + 63) >>> 6];
+      this.freeRows = new int[rows];
+      this.index = new int[16];
+      this.indexShift = 32 - 4;
+      Arrays.fill(index, -1);
+    }
+
+    // the row of the given key or -1, marking the row as recently used
+    private int find(final Object key, final int hash) {
+      final int mask = index.length - 1;
+      for (int position = position(hash);; position = (position + 1) & mask) {
+        final int row = index[position];
+        if (row < 0) {
+          return -1;
+        }
+        if (rowHashes[row] == hash && rowKeys[row].equals(key)) {
+          referenced[row >>> 6] |= 1L << row;
+          return row;
+        }
+      }
+    }
+
+    // take a zeroed row for the given key, the caller made sure that the stripe is not full
+    private int insert(final Object key, final int hash) {
+      final int row;
+      if (freeCount > 0) {
+        row = freeRows[--freeCount];
+      } else {
+        if (rowCount == rowKeys.length) {
+          growRows();
+        }
+        row = rowCount++;
+      }
+      rowKeys[row] = key;
+      rowHashes[row] = hash;
+      referenced[row >>> 6] |= 1L << row;
+      size++;
+      if (size << 1 > index.length) {
+        growIndex();
+      } else {
+        place(row);
+      }
+      return row;
+    }
+
+    private void remove(final int row) {
+      final int mask = index.length - 1;
+      int hole = position(rowHashes[row]);
+      while (index[hole] != row) {
+        hole = (hole + 1) & mask;
+      }
+      // shift back the rows after the hole that would otherwise no longer be found
+      for (int next = (hole + 1) & mask; index[next] >= 0; next = (next + 1) & mask) {
+        final int home = position(rowHashes[index[next]]);
+        final boolean reachable =
+            hole <= next ? hole < home && home <= next : hole < home || home <= next;
+        if (!reachable) {
+          index[hole] = index[next];
+          hole = next;
+        }
+      }
+      index[hole] = -1;
+      rowKeys[row] = null;
+      referenced[row >>> 6] &= ~(1L << row);
+      Arrays.fill(tstamps, row * stride, (row + 1) * stride, 0L);
+      freeRows[freeCount++] = row;
+      size--;
+    }
+
+    // sweep the hand past recently used rows, clearing their mark, until it finds a cold one
+    private int victim() {
+      while (true) {
+        if (hand >= rowCount) {
+          hand = 0;
+        }
+        final int row = hand++;
+        if (rowKeys[row] == null) {
+          continue;
+        }
+        if ((referenced[row >>> 6] & (1L << row)) != 0L) {
+          referenced[row >>> 6] &= ~(1L << row);
+          continue;
+        }
+        return row;
+      }
+    }
+
+    // widen every row to hold at least the given count of slots
+    private void ensureStride(final int width) {
+      if (width <= stride) {
+        return;
+      }
+      final int grownStride = Math.max(width, stride << 1);
+      final long[] grown = new long[checkedLength(rowKeys.length, grownStride)];
+      for (int row = 0; row < rowCount; row++) {
+        System.arraycopy(tstamps, row * stride, grown, row * grownStride, stride);
+      }
+      tstamps = grown;
+      stride = grownStride;
+    }
+
+    private void growRows() {
+      final int rows = (int) Math.min(maxRows, (long) rowKeys.length << 1);
+      tstamps = Arrays.copyOf(tstamps, checkedLength(rows, stride));
+      rowKeys = Arrays.copyOf(rowKeys, rows);
+      rowHashes = Arrays.copyOf(rowHashes, rows);
+      referenced = Arrays.copyOf(referenced, (rows + 63) >>> 6);
+      freeRows = Arrays.copyOf(freeRows, rows);
+    }
+
+    private void growIndex() {
+      index = new int[index.length << 1];
+      indexShift--;
+      Arrays.fill(index, -1);
+      for (int row = 0; row < rowCount; row++) {
+        if (rowKeys[row] != null) {
+          place(row);
+        }
+      }
+    }
+
+    private void place(final int row) {
+      final int mask = index.length - 1;
+      int position = position(rowHashes[row]);
+      while (index[position] >= 0) {
+        position = (position + 1) & mask;
+      }
+      index[position] = row;
+    }
+
+    // fibonacci hashing on the high bits, the low bits of the hash already picked the stripe
+    private int position(final int hash) {
+      return (hash * 0x9E3779B9) >>> indexShift;
+    }
+
+    private static int checkedLength(final int rows, final int stride) {
+      final long length = (long) rows * stride;
+      if (length > Integer.MAX_VALUE - 8) {
+        throw new IllegalStateException(
+            "Stripe cannot hold " + rows + " clocks of " + stride + " nodes, use more stripes");
+      }
+      return (int) length;
+    }
+  }
+
+}
@@ -0,0 +1,359 @@
+package com.github.vectorclock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * A dotted version vector set tracks the causal history of the values of a single key in a
+ * replicated key-value store, along with the concurrent values (siblings) themselves.
+ *
+ * Every replica node has one entry holding a counter and the values that replica wrote for which
+ * no newer write is known, newest first: the value at position p of an entry with counter n was
+ * written by event n - p of that replica, its dot. Since every value carries its exact dot, a
+ * write whose context has seen some dot discards exactly the value written at that dot and no
+ * other, so unlike {@link VectorClock#recordEvent(Event)} concurrent writes do not have to be
+ * rejected and values are never falsely reported as conflicting. Entries are kept per replica and
+ * not per client, so the metadata is bounded by the replica count.
+ *
+ * A typical round trip:<br/>
+ * 1. a client reads the key from a replica, getting its {@link #values()} and {@link #join()} as
+ * the causal context<br/>
+ * 2. the client writes a new value with that context, {@link #of(Map, Object)}<br/>
+ * 3. the replica node applies the write to its own clock of the key with
+ * {@link #update(DottedVersionVectorSet, Node)}, discarding the siblings the client had seen<br/>
+ * 4. replicas exchange their clocks of the key and {@link #sync(DottedVersionVectorSet)} them<br/>
+ *
+ * Instances are immutable, every operation returns a new one.
+ *
+ * @author gaurav
+ */
+public final class DottedVersionVectorSet<V> {
+  private static final Comparator<Node> BY_ID = new Comparator<Node>() {
+    public int compare(Node nodeOne, Node nodeTwo) {
+      return nodeOne.getId().compareTo(nodeTwo.getId());
+    }
+  };
+
+  // sorted by node id
+  private final List<Entry<V>> entries;
+  // values not yet attributed to any replica, those of a write on its way to a replica
+  private final List<V> anonymous;
+
+  private DottedVersionVectorSet(final List<Entry<V>> entries, final List<V> anonymous) {
+    this.entries = Collections.unmodifiableList(entries);
+    this.anonymous = Collections.unmodifiableList(anonymous);
+  }
+
+  // a write of the given value without a causal context, it is concurrent with everything
+  public static <V> DottedVersionVectorSet<V> of(final V value) {
+    return of(Collections.<Node, LogicalTstamp>emptyMap(), value);
+  }
+
+  // a write of the given value by a client that has seen the given causal context
+  public static <V> DottedVersionVectorSet<V> of(final Map<Node, LogicalTstamp> context,
+      final V value) {
+    if (context == null) {
+      throw new IllegalArgumentException("context cannot be null");
+    }
+    final List<Entry<V>> entries = new ArrayList<>(context.size());
+    for (final Map.Entry<Node, LogicalTstamp> counter : context.entrySet()) {
+      final long count = counter.getValue().currentValue();
+      if (count > 0L) {
+        entries.add(new Entry<V>(counter.getKey(), count, Collections.<V>emptyList()));
+      }
+    }
+    entries.sort((one, two) -> BY_ID.compare(one.node, two.node));
+    final List<V> anonymous = new ArrayList<>(1);
+    anonymous.add(value);
+    return new DottedVersionVectorSet<>(entries, anonymous);
+  }
+
+  /**
+   * Merge this clock with another clock of the same key, keeping the values that neither clock's
+   * causal history has seen overwritten.
+   */
+  public DottedVersionVectorSet<V> sync(final DottedVersionVectorSet<V> other) {
+    if (other == null) {
+      throw new IllegalArgumentException("other cannot be null");
+    }
+    final List<V> anonymous;
+    switch (compare(this, other)) {
+      case HAPPENS_BEFORE:
+        anonymous = new ArrayList<>(other.anonymous);
+        break;
+      case HAPPENS_AFTER:
+        anonymous = new ArrayList<>(this.anonymous);
+        break;
+      default:
+        anonymous = new ArrayList<>(this.anonymous);
+        for (final V value : other.anonymous) {
+          if (!anonymous.contains(value)) {
+            anonymous.add(value);
+          }
+        }
+    }
+    final List<Entry<V>> merged = new ArrayList<>(entries.size() + other.entries.size());
+    int one = 0;
+    int two = 0;
+    while (one < entries.size() || two < other.entries.size()) {
+      final int order = one == entries.size() ? 1
+          : two == other.entries.size() ? -1
+              : BY_ID.compare(entries.get(one).node, other.entries.get(two).node);
+      if (order < 0) {
+        merged.add(entries.get(one++));
+      } else if (order > 0) {
+        merged.add(other.entries.get(two++));
+      } else {
+        merged.add(entries.get(one++).sync(other.entries.get(two++)));
+      }
+    }
+    return new DottedVersionVectorSet<>(merged, anonymous);
+  }
+
+  /**
+   * The causal context of this clock, the counter of every replica, to hand out to a client along
+   * with the values.
+   */
+  public Map<Node, LogicalTstamp> join() {
+    final Map<Node, LogicalTstamp> context = new TreeMap<>(BY_ID);
+    for (final Entry<V> entry : entries) {
+      context.put(entry.node, LogicalTstamp.curate(entry.counter));
+    }
+    return context;
+  }
+
+  /**
+   * Attribute the single anonymous value of a client's write to the next event of the given
+   * replica, without any other clock of the key to discard siblings from.
+   */
+  public DottedVersionVectorSet<V> update(final Node replica) {
+    return new DottedVersionVectorSet<>(event(entries, replica, singleAnonymousValue()),
+        new ArrayList<>());
+  }
+
+  /**
+   * Apply a client's write, this clock with a single anonymous value, to the replica's current
+   * clock of the key: siblings the client's context has seen are discarded and the new value is
+   * attributed to the next event of the given replica.
+   */
+  public DottedVersionVectorSet<V> update(final DottedVersionVectorSet<V> replicaClock,
+      final Node replica) {
+    if (replicaClock == null) {
+      throw new IllegalArgumentException("replicaClock cannot be null");
+    }
+    final V value = singleAnonymousValue();
+    final DottedVersionVectorSet<V> synced =
+        new DottedVersionVectorSet<>(entries, new ArrayList<>()).sync(replicaClock);
+    return new DottedVersionVectorSet<>(event(synced.entries, replica, value),
+        new ArrayList<>(synced.anonymous));
+  }
+
+  // Drop the values whose dots the given causal context has seen
+  public DottedVersionVectorSet<V> discard(final Map<Node, LogicalTstamp> context) {
+    if (context == null) {
+      throw new IllegalArgumentException("context cannot be null");
+    }
+    final List<Entry<V>> kept = new ArrayList<>(entries.size());
+    for (final Entry<V> entry : entries) {
+      final LogicalTstamp seen = context.get(entry.node);
+      kept.add(seen == null ? entry : entry.discard(seen.currentValue()));
+    }
+    return new DottedVersionVectorSet<>(kept, new ArrayList<>(anonymous));
+  }
+
+  // all the concurrent values of the key, newest first per replica
+  public List<V> values() {
+    final List<V> values = new ArrayList<>();
+    for (final Entry<V> entry : entries) {
+      values.addAll(entry.values);
+    }
+    values.addAll(anonymous);
+    return values;
+  }
+
+  // count of concurrent values of the key
+  public int size() {
+    int size = anonymous.size();
+    for (final Entry<V> entry : entries) {
+      size += entry.values.size();
+    }
+    return size;
+  }
+
+  // count of replicas in the causal history, the size of the metadata
+  public int width() {
+    return entries.size();
+  }
+
+  /**
+   * Compare the causal histories of two clocks of the same key, anonymous values are not part of
+   * them. Returns CONCURRENT, HAPPENS_BEFORE, HAPPENS_AFTER or IDENTICAL.
+   */
+  public static EventOrdering compare(final DottedVersionVectorSet<?> clockOne,
+      final DottedVersionVectorSet<?> clockTwo) {
+    if (clockOne == null || clockTwo == null) {
+      throw new IllegalArgumentException("Cannot compare null clocks");
+    }
+    boolean oneAfterTwo = false;
+    boolean twoAfterOne = false;
+    int one = 0;
+    int two = 0;
+    while ((one < clockOne.entries.size() || two < clockTwo.entries.size())
+        && !(oneAfterTwo && twoAfterOne)) {
+      final int order = one == clockOne.entries.size() ? 1
+          : two == clockTwo.entries.size() ? -1
+              : BY_ID.compare(clockOne.entries.get(one).node, clockTwo.entries.get(two).node);
+      if (order < 0) {
+        oneAfterTwo = true;
+        one++;
+      } else if (order > 0) {
+        twoAfterOne = true;
+        two++;
+      } else {
+        final long counterOne = clockOne.entries.get(one++).counter;
+        final long counterTwo = clockTwo.entries.get(two++).counter;
+        oneAfterTwo |= counterOne > counterTwo;
+        twoAfterOne |= counterTwo > counterOne;
+      }
+    }
+    if (oneAfterTwo && twoAfterOne) {
+      return EventOrdering.CONCURRENT;
+    } else if (oneAfterTwo) {
+      return EventOrdering.HAPPENS_AFTER;
+    } else if (twoAfterOne) {
+      return EventOrdering.HAPPENS_BEFORE;
+    }
+    return EventOrdering.IDENTICAL;
+  }
+
+  private V singleAnonymousValue() {
+    if (anonymous.size() != 1) {
+      throw new IllegalArgumentException(
+          "Only a client write holding a single anonymous value can be applied to a replica");
+    }
+    return anonymous.get(0);
+  }
+
+  // Record the value as the next event of the replica
+  private static <V> List<Entry<V>> event(final List<Entry<V>> entries, final Node replica,
+      final V value) {
+    if (replica == null) {
+      throw new IllegalArgumentException("replica cannot be null");
+    }
+    final List<Entry<V>> updated = new ArrayList<>(entries.size() + 1);
+    boolean found = false;
+    for (final Entry<V> entry : entries) {
+      final int order = found ? -1 : BY_ID.compare(entry.node, replica);
+      if (order == 0) {
+        final List<V> values = new ArrayList<>(entry.values.size() + 1);
+        values.add(value);
+        values.addAll(entry.values);
+        updated.add(new Entry<V>(replica, entry.counter + 1L, values));
+        found = true;
+        continue;
+      }
+      if (order > 0) {
+        updated.add(new Entry<V>(replica, 1L, Collections.singletonList(value)));
+        found = true;
+      }
+      updated.add(entry);
+    }
+    if (!found) {
+      updated.add(new Entry<V>(replica, 1L, Collections.singletonList(value)));
+    }
+    return updated;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(entries, anonymous);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof DottedVersionVectorSet)) {
+      return false;
+    }
+    final DottedVersionVectorSet<?> other = (DottedVersionVectorSet<?>) obj;
+    return entries.equals(other.entries) && anonymous.equals(other.anonymous);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("DottedVersionVectorSet[").append(entries).append(", anonymous:")
+        .append(anonymous).append("]");
+    return builder.toString();
+  }
+
+  /**
+   * A replica's counter along with the values it wrote that are still current, newest first.
+   */
+  private static final class Entry<V> {
+    private final Node node;
+    private final long counter;
+    private final List<V> values;
+
+    private Entry(final Node node, final long counter, final List<V> values) {
+      this.node = node;
+      this.counter = counter;
+      this.values = Collections.unmodifiableList(values);
+    }
+
+    // Keep the values written after both entries' histories stopped overlapping
+    private Entry<V> sync(final Entry<V> other) {
+      final Entry<V> newer = counter >= other.counter ? this : other;
+      final Entry<V> older = newer == this ? other : this;
+      // dots below this counter were seen overwritten by the newer entry
+      final long newerFirstDot = newer.counter - newer.values.size();
+      final long olderFirstDot = older.counter - older.values.size();
+      if (newerFirstDot >= olderFirstDot) {
+        return newer;
+      }
+      // the older entry has seen the newer one's values below its first dot overwritten
+      return new Entry<V>(node, newer.counter,
+          new ArrayList<>(newer.values.subList(0, (int) (newer.counter - olderFirstDot))));
+    }
+
+    // Drop the values at dots up to and including seen
+    private Entry<V> discard(final long seen) {
+      if (seen >= counter) {
+        return values.isEmpty() ? this : new Entry<V>(node, counter, Collections.<V>emptyList());
+      }
+      final long keep = counter - seen;
+      return keep >= values.size() ? this
+          : new Entry<V>(node, counter, new ArrayList<>(values.subList(0, (int) keep)));
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(node, counter, values);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Entry)) {
+        return false;
+      }
+      final Entry<?> other = (Entry<?>) obj;
+      return node.equals(other.node) && counter == other.counter && values.equals(other.values);
+    }
+
+    @Override
+    public String toString() {
+      return node.getId() + ":" + counter + values;
+    }
+  }
+
+}
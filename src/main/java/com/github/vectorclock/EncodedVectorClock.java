@@ -0,0 +1,133 @@
+package com.github.vectorclock;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A read-only view of a vector clock encoded by {@link VectorClockCodec}, read in place from the
+ * buffer it was wrapped from. It can be compared with other clocks and carried as the sender clock
+ * of a RECEIVE {@link Event}, in which case the receiving clock merges straight from the buffer.
+ *
+ * The view is only valid for as long as the encoded bytes of the buffer are left untouched, use
+ * {@link #deepCopy()} to hold on to the clock beyond that.
+ *
+ * @author gaurav
+ */
+public final class EncodedVectorClock implements IVectorClock {
+  private final NodeRegistry dictionary;
+  private final ByteBuffer buffer;
+  private final int entriesOffset;
+  private final int width;
+
+  EncodedVectorClock(final NodeRegistry dictionary, final ByteBuffer buffer,
+      final int entriesOffset, final int width) {
+    this.dictionary = dictionary;
+    this.buffer = buffer;
+    this.entriesOffset = entriesOffset;
+    this.width = width;
+  }
+
+  public NodeRegistry getDictionary() {
+    return dictionary;
+  }
+
+  // count of node entries in the encoded clock
+  public int width() {
+    return width;
+  }
+
+  @Override
+  public void initNode(final Node node) {
+    throw new UnsupportedOperationException("Encoded vector clocks are read-only");
+  }
+
+  @Override
+  public boolean removeNode(final Node node) {
+    throw new UnsupportedOperationException("Encoded vector clocks are read-only");
+  }
+
+  @Override
+  public VectorClockTransition recordEvent(final Event event) {
+    throw new UnsupportedOperationException("Encoded vector clocks are read-only");
+  }
+
+  @Override
+  public BatchTransition recordEvents(final List<Event> events) {
+    throw new UnsupportedOperationException("Encoded vector clocks are read-only");
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#snapshot()
+   */
+  @Override
+  public Map<Node, LogicalTstamp> snapshot() {
+    final Map<Node, LogicalTstamp> snapshot = new TreeMap<>(dictionary.bySlot());
+    final Cursor cursor = cursor();
+    while (cursor.next()) {
+      snapshot.put(dictionary.node(cursor.slot()), LogicalTstamp.curate(cursor.tstamp()));
+    }
+    return snapshot;
+  }
+
+  // decodes into a standalone ArrayVectorClock over the dictionary
+  @Override
+  public ArrayVectorClock deepCopy() {
+    return ArrayVectorClock.fromEntries(dictionary, entries());
+  }
+
+  // slot,tstamp pairs in ascending slot order
+  long[] entries() {
+    final long[] entries = new long[width << 1];
+    final Cursor cursor = cursor();
+    for (int iter = 0; cursor.next(); iter += 2) {
+      entries[iter] = cursor.slot();
+      entries[iter + 1] = cursor.tstamp();
+    }
+    return entries;
+  }
+
+  Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * Forward-only iterator over the encoded slot:tstamp entries in ascending slot order.
+   */
+  final class Cursor {
+    private int position = entriesOffset;
+    private int remaining = width;
+    private int slot;
+    private long tstamp;
+
+    boolean next() {
+      if (remaining == 0) {
+        return false;
+      }
+      final long slotDelta = VectorClockCodec.readVarLong(buffer, position);
+      position += VectorClockCodec.varLongSize(slotDelta);
+      tstamp = VectorClockCodec.readVarLong(buffer, position);
+      position += VectorClockCodec.varLongSize(tstamp);
+      slot += (int) slotDelta;
+      remaining--;
+      return true;
+    }
+
+    int slot() {
+      return slot;
+    }
+
+    long tstamp() {
+      return tstamp;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "EncodedVectorClock:[" + snapshot().toString() + "]";
+  }
+
+}
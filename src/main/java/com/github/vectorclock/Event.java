@@ -1,6 +1,7 @@
 package com.github.vectorclock;
 
 import java.util.Optional;
+import java.util.OptionalLong;
 
 /**
  * Model a simple event and the associated node that needs to record it.
@@ -14,16 +15,21 @@ import java.util.Optional;
  * top-level object. This does not preclude creation of child events like NodeSendMessage,
  * NodeReceiveMessage, NodeStateChange, etc.
  * 
+ * RECEIVE events carry either their sender's vector clock, for clocks that detect conflicts, or
+ * their sender's {@link HybridLogicalClock} tstamp, for the O(1) total order of hybrid clocks.
+ * 
  * @author gaurav
  */
 public class Event {
   private final Node impactedNode;
   private final EventType type;
   // only applicable for events of type RECEIVE
-  private final VectorClock senderClock;
+  private final IVectorClock senderClock;
+  // only applicable for events of type RECEIVE from nodes on hybrid logical clocks
+  private final OptionalLong senderHybridTstamp;
 
   public Event(final EventType type, final Node impactedNode,
-      final Optional<VectorClock> senderClock) {
+      final Optional<? extends IVectorClock> senderClock) {
     this.type = type;
     this.impactedNode = impactedNode;
     if (type == EventType.RECEIVE) {
@@ -35,6 +41,23 @@ public class Event {
     } else {
       this.senderClock = null;
     }
+    this.senderHybridTstamp = OptionalLong.empty();
+  }
+
+  public Event(final EventType type, final Node impactedNode,
+      final OptionalLong senderHybridTstamp) {
+    this.type = type;
+    this.impactedNode = impactedNode;
+    this.senderClock = null;
+    if (type == EventType.RECEIVE) {
+      if (!senderHybridTstamp.isPresent()) {
+        throw new IllegalArgumentException(
+            "RECEIVE events should be accompanied with their sender's hybrid tstamp");
+      }
+      this.senderHybridTstamp = senderHybridTstamp;
+    } else {
+      this.senderHybridTstamp = OptionalLong.empty();
+    }
   }
 
   public EventType getEventType() {
@@ -45,10 +68,14 @@ public class Event {
     return impactedNode;
   }
 
-  public VectorClock getSenderClock() {
+  public IVectorClock getSenderClock() {
     return senderClock;
   }
 
+  public OptionalLong getSenderHybridTstamp() {
+    return senderHybridTstamp;
+  }
+
   @Override
   public String toString() {
     StringBuilder builder = new StringBuilder();
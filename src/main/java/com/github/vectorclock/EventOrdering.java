@@ -3,8 +3,23 @@ package com.github.vectorclock;
 /**
  * Models the ordering of Events as represented by a pair of VectorClock snapshots.
  * 
+ * NOT_COMPARABLE is no longer returned when comparing clocks over differing node sets, missing
+ * nodes count as 0, and is kept for callers that still switch over it.
+ * 
  * @author gaurav
  */
 public enum EventOrdering {
   CONCURRENT, HAPPENS_BEFORE, HAPPENS_AFTER, IDENTICAL, NOT_COMPARABLE;
+
+  // the ordering of the same pair of clocks compared the other way around
+  EventOrdering reverse() {
+    switch (this) {
+      case HAPPENS_BEFORE:
+        return HAPPENS_AFTER;
+      case HAPPENS_AFTER:
+        return HAPPENS_BEFORE;
+      default:
+        return this;
+    }
+  }
 }
@@ -0,0 +1,157 @@
+package com.github.vectorclock;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * A hybrid logical clock, the physical time in millis of the latest event this node knows of
+ * together with a logical counter of events at that time, packed into a single long: the millis in
+ * the high 48 bits and the counter in the low 16 bits. Tstamps handed out by a hybrid clock:<br/>
+ *
+ * 1. totally order all events as plain longs, consistently with causality: an event that happens
+ * before another has the lower tstamp<br/>
+ * 2. stay within the maximum drift of the physical clock of the node that issued them<br/>
+ *
+ * Comparing two of them is O(1), which suits reads that only need an order roughly following
+ * physical time. The converse of 1 does not hold, a lower tstamp is no proof of causality, so
+ * conflicts still need vector clocks.
+ *
+ * {@link #now()} and {@link #update(long)} are lock-free, a single compare-and-set on the packed
+ * tstamp. Should more than 65535 events share a milli, the counter carries into the millis and the
+ * clock runs ahead of physical time by that milli until physical time catches up.
+ *
+ * @author gaurav
+ */
+public final class HybridLogicalClock {
+  private static final int LOGICAL_BITS = 16;
+  private static final long LOGICAL_MASK = (1L << LOGICAL_BITS) - 1L;
+
+  private final AtomicLong tstamp = new AtomicLong();
+  private final LongSupplier physicalClock;
+  private final long maxDriftMillis;
+
+  // a clock off the system's wall clock that accepts remote tstamps up to a minute ahead
+  public HybridLogicalClock() {
+    this(System::currentTimeMillis, 60_000L);
+  }
+
+  /**
+   * Create a clock reading physical millis off the given supplier and rejecting remote tstamps
+   * more than maxDriftMillis ahead of it.
+   */
+  public HybridLogicalClock(final LongSupplier physicalClock, final long maxDriftMillis) {
+    if (physicalClock == null || maxDriftMillis < 0L) {
+      throw new IllegalArgumentException(
+          "physicalClock cannot be null and maxDriftMillis cannot be negative");
+    }
+    this.physicalClock = physicalClock;
+    this.maxDriftMillis = maxDriftMillis;
+  }
+
+  public long getMaxDriftMillis() {
+    return maxDriftMillis;
+  }
+
+  // the tstamp of the latest local or SEND event
+  public long now() {
+    final long physical = physical();
+    while (true) {
+      final long current = tstamp.get();
+      final long next = Math.max(physical, current + 1L);
+      if (tstamp.compareAndSet(current, next)) {
+        return next;
+      }
+    }
+  }
+
+  /**
+   * The tstamp of the RECEIVE of a message stamped with the remote tstamp, after every tstamp
+   * this clock or the remote one handed out so far. Fails with an IllegalArgumentException,
+   * leaving the clock as it was, if the remote tstamp is more than the maximum drift ahead of this
+   * node's physical clock.
+   */
+  public long update(final long remote) {
+    final long physical = physical();
+    if (physicalMillis(remote) - physicalMillis(physical) > maxDriftMillis) {
+      throw new IllegalArgumentException("Remote tstamp " + toString(remote)
+          + " is more than " + maxDriftMillis + "ms ahead of the physical clock");
+    }
+    while (true) {
+      final long current = tstamp.get();
+      final long next = Math.max(physical, Math.max(current, remote) + 1L);
+      if (tstamp.compareAndSet(current, next)) {
+        return next;
+      }
+    }
+  }
+
+  /**
+   * Record a LOCAL, SEND or RECEIVE event, returning its tstamp. RECEIVE events must carry their
+   * sender's hybrid tstamp.
+   */
+  public long recordEvent(final Event event) {
+    if (event.getEventType() != EventType.RECEIVE) {
+      return now();
+    }
+    if (!event.getSenderHybridTstamp().isPresent()) {
+      throw new IllegalArgumentException(
+          "RECEIVE events should be accompanied with their sender's hybrid tstamp");
+    }
+    return update(event.getSenderHybridTstamp().getAsLong());
+  }
+
+  // the latest tstamp handed out, without advancing the clock
+  public long current() {
+    return tstamp.get();
+  }
+
+  public static long pack(final long physicalMillis, final int logical) {
+    if (physicalMillis < 0L || physicalMillis >>> (Long.SIZE - LOGICAL_BITS - 1) != 0L
+        || logical < 0 || logical > LOGICAL_MASK) {
+      throw new IllegalArgumentException(
+          "physicalMillis must fit in 47 bits and logical in 16 bits");
+    }
+    return physicalMillis << LOGICAL_BITS | logical;
+  }
+
+  public static long physicalMillis(final long tstamp) {
+    return tstamp >>> LOGICAL_BITS;
+  }
+
+  public static int logical(final long tstamp) {
+    return (int) (tstamp & LOGICAL_MASK);
+  }
+
+  /**
+   * Order two hybrid tstamps. HAPPENS_BEFORE and HAPPENS_AFTER only mean that one event may have
+   * happened before the other, hybrid tstamps cannot tell that they were concurrent.
+   */
+  public static EventOrdering compare(final long tstampOne, final long tstampTwo) {
+    if (tstampOne < tstampTwo) {
+      return EventOrdering.HAPPENS_BEFORE;
+    } else if (tstampOne > tstampTwo) {
+      return EventOrdering.HAPPENS_AFTER;
+    }
+    return EventOrdering.IDENTICAL;
+  }
+
+  public static String toString(final long tstamp) {
+    return "Hlc[millis:" + physicalMillis(tstamp) + ", logical:" + logical(tstamp) + "]";
+  }
+
+  // the physical clock as a tstamp with a logical counter of 0
+  private long physical() {
+    return physicalClock.getAsLong() << LOGICAL_BITS;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("HybridLogicalClock [").append(toString(current())).append(", maxDriftMillis:")
+        .append(maxDriftMillis).append("]");
+    return builder.toString();
+  }
+
+}
@@ -1,5 +1,6 @@
 package com.github.vectorclock;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -24,9 +25,23 @@ public interface IVectorClock {
    * simplicity and correctness. Since correctness is non-negotiable, instead of reducing the
    * critical section and other foo-bar, a more worthwhile goal is to speed up this thread's
    * execution.
+   * 
+   * Whether a contended recording waits, times out, skips the lock for LOCAL and SEND ticks or
+   * gives up and returns null is decided by the clock's {@link RecordingPolicy}.
    */
   VectorClockTransition recordEvent(Event event);
 
-  VectorClock deepCopy();
+  /**
+   * Record a burst of events in order under a single acquisition of the write lock, as per the
+   * clock's {@link RecordingPolicy}. Runs of LOCAL and SEND events on the same node are coalesced
+   * into a single tick of their count.
+   * 
+   * Returns null only under the TRY_LOCK policy if the lock could not be had, in which case none
+   * of the events were recorded. If an event names a node that is not part of this clock, the
+   * events before it stay recorded.
+   */
+  BatchTransition recordEvents(List<Event> events);
+
+  IVectorClock deepCopy();
 
 }
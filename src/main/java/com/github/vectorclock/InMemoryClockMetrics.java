@@ -0,0 +1,177 @@
+package com.github.vectorclock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Keeps {@link ClockMetrics} in memory with striped counters, so that many clocks recording on
+ * many threads can share one instance without contending on it. Comparison latencies go into a
+ * histogram of power of two buckets which is coarse but fixed in size and allocation free.
+ *
+ * @author gaurav
+ */
+public final class InMemoryClockMetrics implements ClockMetrics {
+  private final LongAdder[] recorded = new LongAdder[EventType.values().length];
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder contended = new LongAdder();
+  private final LongAdder conflicts = new LongAdder();
+
+  private final LongAdder merges = new LongAdder();
+  private final LongAdder mergedEntries = new LongAdder();
+  private final LongAccumulator maxMergeWidth = new LongAccumulator(Math::max, 0L);
+
+  private final LongAdder prunedEntries = new LongAdder();
+  private final LongAdder unsafePrunes = new LongAdder();
+
+  private final LongAdder comparisons = new LongAdder();
+  private final LongAdder compareNanos = new LongAdder();
+  // bucket n counts comparisons that took [2^n, 2^(n+1)) nanos, bucket 0 also takes 0 nanos
+  private final AtomicLongArray compareLatencies = new AtomicLongArray(Long.SIZE);
+
+  public InMemoryClockMetrics() {
+    for (int iter = 0; iter < recorded.length; iter++) {
+      recorded[iter] = new LongAdder();
+    }
+  }
+
+  @Override
+  public void eventRecorded(final EventType eventType) {
+    recorded[eventType.ordinal()].increment();
+  }
+
+  @Override
+  public void eventDropped() {
+    dropped.increment();
+  }
+
+  @Override
+  public void lockContended() {
+    contended.increment();
+  }
+
+  @Override
+  public void conflictDetected() {
+    conflicts.increment();
+  }
+
+  @Override
+  public void clockMerged(final int width) {
+    merges.increment();
+    mergedEntries.add(width);
+    maxMergeWidth.accumulate(width);
+  }
+
+  @Override
+  public void clocksCompared(final long nanos) {
+    comparisons.increment();
+    compareNanos.add(nanos);
+    compareLatencies.incrementAndGet(bucket(nanos));
+  }
+
+  @Override
+  public void entriesPruned(final int count, final boolean falseConcurrencyPossible) {
+    prunedEntries.add(count);
+    if (falseConcurrencyPossible) {
+      unsafePrunes.increment();
+    }
+  }
+
+  public long getEventsRecorded(final EventType eventType) {
+    return recorded[eventType.ordinal()].sum();
+  }
+
+  public long getEventsDropped() {
+    return dropped.sum();
+  }
+
+  public long getLockContentions() {
+    return contended.sum();
+  }
+
+  public long getConflicts() {
+    return conflicts.sum();
+  }
+
+  public long getMerges() {
+    return merges.sum();
+  }
+
+  public long getMergedEntries() {
+    return mergedEntries.sum();
+  }
+
+  public long getMaxMergeWidth() {
+    return maxMergeWidth.get();
+  }
+
+  public long getPrunedEntries() {
+    return prunedEntries.sum();
+  }
+
+  // count of prunings that dropped entries other clocks may still carry
+  public long getUnsafePrunes() {
+    return unsafePrunes.sum();
+  }
+
+  public long getComparisons() {
+    return comparisons.sum();
+  }
+
+  public long getCompareNanos() {
+    return compareNanos.sum();
+  }
+
+  /**
+   * An upper bound on the comparison latency in nanos below which the given fraction of all
+   * comparisons fell, off by at most a factor of 2 because of the bucketing. Returns 0 if there
+   * were no comparisons.
+   */
+  public long getCompareLatencyPercentile(final double fraction) {
+    if (fraction <= 0.0 || fraction > 1.0) {
+      throw new IllegalArgumentException("fraction must be in (0.0, 1.0]");
+    }
+    final long[] counts = new long[compareLatencies.length()];
+    long total = 0L;
+    for (int iter = 0; iter < counts.length; iter++) {
+      counts[iter] = compareLatencies.get(iter);
+      total += counts[iter];
+    }
+    if (total == 0L) {
+      return 0L;
+    }
+    final long rank = (long) Math.ceil(fraction * total);
+    long seen = 0L;
+    for (int iter = 0; iter < counts.length; iter++) {
+      seen += counts[iter];
+      if (seen >= rank) {
+        return iter == Long.SIZE - 1 ? Long.MAX_VALUE : (1L << (iter + 1)) - 1;
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  private static int bucket(final long nanos) {
+    return nanos <= 1L ? 0 : Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("InMemoryClockMetrics [recorded:[");
+    for (final EventType eventType : EventType.values()) {
+      builder.append(eventType).append(':').append(getEventsRecorded(eventType))
+          .append(eventType.ordinal() < recorded.length - 1 ? ", " : "");
+    }
+    builder.append("], dropped:").append(getEventsDropped()).append(", contended:")
+        .append(getLockContentions()).append(", conflicts:").append(getConflicts())
+        .append(", merges:").append(getMerges()).append(", maxMergeWidth:")
+        .append(getMaxMergeWidth()).append(", pruned:").append(getPrunedEntries())
+        .append(", unsafePrunes:").append(getUnsafePrunes()).append(", comparisons:")
+        .append(getComparisons()).append(", compareNanos:").append(getCompareNanos()).append("]");
+    return builder.toString();
+  }
+
+}
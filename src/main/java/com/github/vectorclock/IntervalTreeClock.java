@@ -0,0 +1,399 @@
+package com.github.vectorclock;
+
+import java.util.Objects;
+
+/**
+ * An Interval Tree Clock stamp, a causality tracking mechanism for a dynamic set of participants
+ * that needs no global node ids. Every participant owns a share of the interval [0, 1), its id
+ * tree, and counts events over the interval in its event tree:<br/>
+ *
+ * 1. the first participant starts from the {@link #seed()} owning the whole interval<br/>
+ * 2. a participant joining the system is handed one half of an existing participant's share by
+ * {@link #fork()}<br/>
+ * 3. {@link #event()} records an event by inflating the event tree over the participant's own
+ * share<br/>
+ * 4. {@link #join(IntervalTreeClock)} merges the causal history of another stamp, and the id too
+ * if it belongs to a participant that is retiring, so that its share is reclaimed<br/>
+ * 5. {@link #peek()} is an anonymous copy of a stamp that only carries causal history, to be sent
+ * along with messages<br/>
+ *
+ * Trees are kept normalized so that they grow and shrink with the live participants rather than
+ * with everyone who ever took part, unlike a {@link VectorClock} that keeps an entry per Node.
+ * Stamps are immutable, every operation returns new ones.
+ *
+ * @author gaurav
+ */
+public final class IntervalTreeClock {
+  private final Id id;
+  private final EventTree events;
+
+  private IntervalTreeClock(final Id id, final EventTree events) {
+    this.id = id;
+    this.events = events;
+  }
+
+  // the stamp of the first participant, owning the whole interval and having seen no events
+  public static IntervalTreeClock seed() {
+    return new IntervalTreeClock(Id.ONE, EventTree.ZERO);
+  }
+
+  /**
+   * Split this stamp's id in two, returning the stamps for this participant and for a new one.
+   * Both share this stamp's causal history.
+   */
+  public IntervalTreeClock[] fork() {
+    final Id[] halves = id.split();
+    return new IntervalTreeClock[] {new IntervalTreeClock(halves[0], events),
+        new IntervalTreeClock(halves[1], events)};
+  }
+
+  // an anonymous copy of this stamp's causal history that cannot record events
+  public IntervalTreeClock peek() {
+    return new IntervalTreeClock(Id.ZERO, events);
+  }
+
+  /**
+   * Record an event, preferring to fill in parts of the event tree that this participant owns over
+   * growing the tree.
+   */
+  public IntervalTreeClock event() {
+    if (id == Id.ZERO) {
+      throw new IllegalStateException("An anonymous stamp cannot record events");
+    }
+    final EventTree filled = EventTree.fill(id, events);
+    if (!filled.equals(events)) {
+      return new IntervalTreeClock(id, filled);
+    }
+    return new IntervalTreeClock(id, EventTree.grow(id, events).tree);
+  }
+
+  /**
+   * Merge another stamp into this one. The ids are summed, so joining the stamp of a retiring
+   * participant hands its share of the interval to this one; joining a {@link #peek()} only merges
+   * causal history.
+   */
+  public IntervalTreeClock join(final IntervalTreeClock other) {
+    if (other == null) {
+      throw new IllegalArgumentException("other cannot be null");
+    }
+    return new IntervalTreeClock(Id.sum(id, other.id), EventTree.join(events, other.events));
+  }
+
+  public boolean isAnonymous() {
+    return id == Id.ZERO;
+  }
+
+  /**
+   * Compare the causal histories of two stamps, with the semantics of
+   * {@link VectorClock#compareClocks(IVectorClock, IVectorClock)}.
+   */
+  public static EventOrdering compare(final IntervalTreeClock clockOne,
+      final IntervalTreeClock clockTwo) {
+    if (clockOne == null || clockTwo == null) {
+      throw new IllegalArgumentException("Cannot compare null clocks");
+    }
+    final boolean oneBeforeTwo = EventTree.leq(clockOne.events, clockTwo.events);
+    final boolean twoBeforeOne = EventTree.leq(clockTwo.events, clockOne.events);
+    if (oneBeforeTwo && twoBeforeOne) {
+      return EventOrdering.IDENTICAL;
+    } else if (oneBeforeTwo) {
+      return EventOrdering.HAPPENS_BEFORE;
+    } else if (twoBeforeOne) {
+      return EventOrdering.HAPPENS_AFTER;
+    }
+    return EventOrdering.CONCURRENT;
+  }
+
+  // count of nodes in the id and event trees, a measure of the stamp's size
+  public int size() {
+    return id.size() + events.size();
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, events);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof IntervalTreeClock)) {
+      return false;
+    }
+    final IntervalTreeClock other = (IntervalTreeClock) obj;
+    return id.equals(other.id) && events.equals(other.events);
+  }
+
+  // in the notation of the paper, for example (1, 0) and (1, 2, 0)
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("IntervalTreeClock[id:").append(id).append(", events:").append(events)
+        .append("]");
+    return builder.toString();
+  }
+
+  /**
+   * An id tree, either a leaf owning (1) or not owning (0) its whole interval or a node splitting
+   * its interval into two halves. Kept normalized, so a node never has two identical leaves.
+   */
+  private static final class Id {
+    private static final Id ZERO = new Id(null, null);
+    private static final Id ONE = new Id(null, null);
+
+    private final Id left;
+    private final Id right;
+
+    private Id(final Id left, final Id right) {
+      this.left = left;
+      this.right = right;
+    }
+
+    private static Id of(final Id left, final Id right) {
+      if (left == ZERO && right == ZERO) {
+        return ZERO;
+      }
+      if (left == ONE && right == ONE) {
+        return ONE;
+      }
+      return new Id(left, right);
+    }
+
+    private boolean isLeaf() {
+      return left == null;
+    }
+
+    private Id[] split() {
+      if (this == ZERO) {
+        return new Id[] {ZERO, ZERO};
+      }
+      if (this == ONE) {
+        return new Id[] {new Id(ONE, ZERO), new Id(ZERO, ONE)};
+      }
+      if (left == ZERO) {
+        final Id[] halves = right.split();
+        return new Id[] {new Id(ZERO, halves[0]), new Id(ZERO, halves[1])};
+      }
+      if (right == ZERO) {
+        final Id[] halves = left.split();
+        return new Id[] {new Id(halves[0], ZERO), new Id(halves[1], ZERO)};
+      }
+      return new Id[] {new Id(left, ZERO), new Id(ZERO, right)};
+    }
+
+    private static Id sum(final Id one, final Id two) {
+      if (one == ZERO) {
+        return two;
+      }
+      if (two == ZERO) {
+        return one;
+      }
+      if (one.isLeaf() || two.isLeaf()) {
+        throw new IllegalArgumentException("Cannot join stamps whose ids overlap");
+      }
+      return of(sum(one.left, two.left), sum(one.right, two.right));
+    }
+
+    private int size() {
+      return isLeaf() ? 1 : 1 + left.size() + right.size();
+    }
+
+    @Override
+    public int hashCode() {
+      return this == ONE ? 1 : isLeaf() ? 0 : Objects.hash(left, right);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Id) || isLeaf() || ((Id) obj).isLeaf()) {
+        return false;
+      }
+      final Id other = (Id) obj;
+      return left.equals(other.left) && right.equals(other.right);
+    }
+
+    @Override
+    public String toString() {
+      if (isLeaf()) {
+        return this == ONE ? "1" : "0";
+      }
+      return "(" + left + ", " + right + ")";
+    }
+  }
+
+  /**
+   * An event tree, either a leaf counting n events over its whole interval or a node counting n
+   * events over its interval plus those of the trees over its two halves. Kept normalized, so that
+   * one child of a node always has a minimum of 0 and a node never has two identical leaves.
+   */
+  private static final class EventTree {
+    private static final EventTree ZERO = new EventTree(0L, null, null);
+
+    private final long count;
+    private final EventTree left;
+    private final EventTree right;
+
+    private EventTree(final long count, final EventTree left, final EventTree right) {
+      this.count = count;
+      this.left = left;
+      this.right = right;
+    }
+
+    private static EventTree leaf(final long count) {
+      return count == 0L ? ZERO : new EventTree(count, null, null);
+    }
+
+    // build a normalized node, sinking the children's common minimum into it
+    private static EventTree of(final long count, final EventTree left, final EventTree right) {
+      if (left.isLeaf() && right.isLeaf() && left.count == right.count) {
+        return leaf(count + left.count);
+      }
+      final long min = Math.min(left.min(), right.min());
+      return new EventTree(count + min, left.sink(min), right.sink(min));
+    }
+
+    private boolean isLeaf() {
+      return left == null;
+    }
+
+    private long min() {
+      return isLeaf() ? count : count + Math.min(left.min(), right.min());
+    }
+
+    private long max() {
+      return isLeaf() ? count : count + Math.max(left.max(), right.max());
+    }
+
+    private EventTree lift(final long delta) {
+      return delta == 0L ? this
+          : isLeaf() ? leaf(count + delta) : new EventTree(count + delta, left, right);
+    }
+
+    private EventTree sink(final long delta) {
+      return lift(-delta);
+    }
+
+    private static boolean leq(final EventTree one, final EventTree two) {
+      if (one.isLeaf()) {
+        return one.count <= two.count;
+      }
+      if (one.count > two.count) {
+        return false;
+      }
+      if (two.isLeaf()) {
+        return leq(one.left.lift(one.count), two) && leq(one.right.lift(one.count), two);
+      }
+      return leq(one.left.lift(one.count), two.left.lift(two.count))
+          && leq(one.right.lift(one.count), two.right.lift(two.count));
+    }
+
+    private static EventTree join(final EventTree one, final EventTree two) {
+      if (one.isLeaf() && two.isLeaf()) {
+        return leaf(Math.max(one.count, two.count));
+      }
+      if (one.isLeaf()) {
+        return join(new EventTree(one.count, ZERO, ZERO), two);
+      }
+      if (two.isLeaf()) {
+        return join(one, new EventTree(two.count, ZERO, ZERO));
+      }
+      if (one.count > two.count) {
+        return join(two, one);
+      }
+      final long delta = two.count - one.count;
+      return of(one.count, join(one.left, two.left.lift(delta)),
+          join(one.right, two.right.lift(delta)));
+    }
+
+    // raise the parts of the tree owned by the id as far as possible without growing it
+    private static EventTree fill(final Id id, final EventTree events) {
+      if (id == Id.ZERO || events.isLeaf()) {
+        return events;
+      }
+      if (id == Id.ONE) {
+        return leaf(events.max());
+      }
+      if (id.left == Id.ONE) {
+        final EventTree right = fill(id.right, events.right);
+        return of(events.count, leaf(Math.max(events.left.max(), right.min())), right);
+      }
+      if (id.right == Id.ONE) {
+        final EventTree left = fill(id.left, events.left);
+        return of(events.count, left, leaf(Math.max(events.right.max(), left.min())));
+      }
+      return of(events.count, fill(id.left, events.left), fill(id.right, events.right));
+    }
+
+    // grow the tree as little as possible somewhere the id owns, with its cost
+    private static Grown grow(final Id id, final EventTree events) {
+      if (events.isLeaf()) {
+        if (id == Id.ONE) {
+          return new Grown(leaf(events.count + 1L), 0);
+        }
+        // expanding a leaf costs more than any growth within the existing tree
+        final Grown grown = grow(id, new EventTree(events.count, ZERO, ZERO));
+        return new Grown(grown.tree, grown.cost + 1_000);
+      }
+      if (id.left == Id.ZERO) {
+        final Grown right = grow(id.right, events.right);
+        return new Grown(of(events.count, events.left, right.tree), right.cost + 1);
+      }
+      if (id.right == Id.ZERO) {
+        final Grown left = grow(id.left, events.left);
+        return new Grown(of(events.count, left.tree, events.right), left.cost + 1);
+      }
+      final Grown left = grow(id.left, events.left);
+      final Grown right = grow(id.right, events.right);
+      if (left.cost < right.cost) {
+        return new Grown(of(events.count, left.tree, events.right), left.cost + 1);
+      }
+      return new Grown(of(events.count, events.left, right.tree), right.cost + 1);
+    }
+
+    private int size() {
+      return isLeaf() ? 1 : 1 + left.size() + right.size();
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(count, left, right);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof EventTree)) {
+        return false;
+      }
+      final EventTree other = (EventTree) obj;
+      return count == other.count && Objects.equals(left, other.left)
+          && Objects.equals(right, other.right);
+    }
+
+    @Override
+    public String toString() {
+      if (isLeaf()) {
+        return String.valueOf(count);
+      }
+      return "(" + count + ", " + left + ", " + right + ")";
+    }
+  }
+
+  private static final class Grown {
+    private final EventTree tree;
+    private final int cost;
+
+    private Grown(final EventTree tree, final int cost) {
+      this.tree = tree;
+      this.cost = cost;
+    }
+  }
+
+}
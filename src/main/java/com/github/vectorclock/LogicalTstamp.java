@@ -43,6 +43,18 @@ public final class LogicalTstamp implements Comparable<LogicalTstamp> {
     return new LogicalTstamp(nextTstamp);
   }
 
+  // equivalent to ticking the given number of times, wrapping around past Long.MAX_VALUE to 0
+  LogicalTstamp tick(final long ticks) {
+    return new LogicalTstamp(advance(timestamp, ticks));
+  }
+
+  static long advance(final long timestamp, final long ticks) {
+    if (ticks < 0) {
+      throw new IllegalArgumentException("Only positive tick counts are allowed");
+    }
+    return (timestamp + ticks) & Long.MAX_VALUE;
+  }
+
   boolean before(final LogicalTstamp other) {
     return this.compareTo(other) < 0;
   }
@@ -0,0 +1,756 @@
+package com.github.vectorclock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Keeps a vector clock per versioned entity on disk so that causality survives restarts. Entity
+ * ids are longs, for example a sequence number or hash of the entity key.
+ *
+ * A store lives in a directory of 3 files:<br/>
+ * 1. clocks.dat, a memory-mapped file of a header, an open-addressing index of entity ids and
+ * fixed-width slots, one per entity, each holding the entity id followed by one long tstamp per
+ * node<br/>
+ * 2. nodes.dat, the ids of all nodes in the order of their slot in the store's {@link NodeRegistry}
+ * <br/>
+ * 3. clocks.wal, an append-only write-ahead log of the slots handed out to entities and of the
+ * tstamps every recordEvent or merge changed since the last checkpoint<br/>
+ *
+ * Clocks and the index are read and written in place in the mapped file, so the working set is
+ * bounded by the page cache rather than by the heap. The index has a bucket per 2 entities at
+ * least, each holding the slot of an entity, whose id is then read from the slot itself. Every
+ * change is appended to the write-ahead log before it is applied, and a slot handed out to an
+ * entity is logged before the first change to it, so replay hands every entity the same slot
+ * whatever order the mapped pages reach the disk in. A {@link #checkpoint()} flushes the mapped
+ * file and empties the log. A store that was not closed cleanly rebuilds its index from the slots
+ * on open, in time proportional to its capacity, and every store replays whatever is left in the
+ * log. Replaying zeroes the slots handed out since the last checkpoint before replaying their
+ * changes, and keeps the larger of the logged and the mapped tstamp for every other entry, which
+ * makes it safe to replay a log over a mapped file that is ahead of it.
+ *
+ * Like {@link ClockStore}, every entity clock spans all nodes of the registry and recording is
+ * guarded by locks striped by entity id.
+ *
+ * @author gaurav
+ */
+public final class MappedClockStore implements Closeable {
+  static final String CLOCKS_FILE = "clocks.dat";
+  static final String NODES_FILE = "nodes.dat";
+  static final String WAL_FILE = "clocks.wal";
+
+  private static final long MAGIC = 0x56434C4F434B5331L;
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 64;
+  private static final int MAX_NODES_OFFSET = 12;
+  private static final int MAX_ENTITIES_OFFSET = 16;
+  private static final int ALLOCATED_OFFSET = 24;
+  private static final int ENTITIES_OFFSET = 32;
+  // 1 while the index and slot headers on disk are consistent, that is from close to the next open
+  private static final int CLEAN_OFFSET = 40;
+  private static final int MAX_SEGMENT_BYTES = 1 << 30;
+  private static final int STRIPES = 64;
+  private static final int BUCKETS_PER_SEGMENT = MAX_SEGMENT_BYTES / Integer.BYTES;
+  // the count of a log record that hands out a slot rather than changing tstamps
+  private static final int ALLOCATION = -1;
+
+  private final NodeRegistry registry = new NodeRegistry();
+  private final int maxNodes;
+  private final int maxEntities;
+  private final boolean syncWrites;
+
+  private final FileChannel clocksChannel;
+  private final FileChannel nodesChannel;
+  private final FileChannel walChannel;
+  private final MappedByteBuffer header;
+  // buckets of the entity index, each the slot of an entity plus 1 or 0 if the bucket is empty
+  private final MappedByteBuffer[] buckets;
+  private final long bucketMask;
+  private final MappedByteBuffer[] segments;
+  private final int slotBytes;
+  private final int slotsPerSegment;
+
+  // slots handed out and count of entities holding one, both guarded by the header's monitor
+  private int allocated;
+  private volatile int entities;
+  private volatile int persistedNodes;
+
+  // recording shares it, checkpoints take it exclusively so that no change slips between flushing
+  // the mapped file and emptying the log
+  private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+  private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+  private boolean closed;
+
+  private MappedClockStore(final Path directory, final int maxNodes, final int maxEntities,
+      final boolean syncWrites) throws IOException {
+    this.maxNodes = maxNodes;
+    this.maxEntities = maxEntities;
+    this.syncWrites = syncWrites;
+    this.slotBytes = Long.BYTES * (1 + maxNodes);
+    this.slotsPerSegment = Math.max(1, MAX_SEGMENT_BYTES / slotBytes);
+    for (int iter = 0; iter < STRIPES; iter++) {
+      stripes[iter] = new ReentrantLock();
+    }
+    Files.createDirectories(directory);
+    nodesChannel = FileChannel.open(directory.resolve(NODES_FILE), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    clocksChannel = FileChannel.open(directory.resolve(CLOCKS_FILE), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    walChannel = FileChannel.open(directory.resolve(WAL_FILE), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    final boolean created = clocksChannel.size() == 0L;
+    final long bucketCount = Long.highestOneBit(2L * maxEntities - 1L) << 1;
+    final long slotsStart = HEADER_BYTES + bucketCount * Integer.BYTES;
+    final long length = slotsStart + (long) maxEntities * slotBytes;
+    header = clocksChannel.map(MapMode.READ_WRITE, 0L, HEADER_BYTES);
+    if (created) {
+      header.putLong(0, MAGIC);
+      header.putInt(8, VERSION);
+      header.putInt(MAX_NODES_OFFSET, maxNodes);
+      header.putLong(MAX_ENTITIES_OFFSET, maxEntities);
+      header.putLong(ALLOCATED_OFFSET, 0L);
+      header.putLong(ENTITIES_OFFSET, 0L);
+      header.putInt(CLEAN_OFFSET, 1);
+      header.force();
+    } else if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION) {
+      throw new IOException(directory.resolve(CLOCKS_FILE) + " is not a clock store");
+    } else if (header.getInt(MAX_NODES_OFFSET) != maxNodes
+        || header.getLong(MAX_ENTITIES_OFFSET) != maxEntities) {
+      throw new IllegalArgumentException("Store at " + directory + " was created for "
+          + header.getInt(MAX_NODES_OFFSET) + " nodes and "
+          + header.getLong(MAX_ENTITIES_OFFSET) + " entities");
+    }
+    bucketMask = bucketCount - 1L;
+    buckets = new MappedByteBuffer[(int) ((bucketCount + BUCKETS_PER_SEGMENT - 1)
+        / BUCKETS_PER_SEGMENT)];
+    for (int segment = 0; segment < buckets.length; segment++) {
+      final long start = (long) segment * BUCKETS_PER_SEGMENT;
+      buckets[segment] = clocksChannel.map(MapMode.READ_WRITE,
+          HEADER_BYTES + start * Integer.BYTES,
+          Math.min(bucketCount - start, BUCKETS_PER_SEGMENT) * Integer.BYTES);
+    }
+    segments = new MappedByteBuffer[(maxEntities + slotsPerSegment - 1) / slotsPerSegment];
+    for (int segment = 0; segment < segments.length; segment++) {
+      final long start = slotsStart + (long) segment * slotsPerSegment * slotBytes;
+      segments[segment] =
+          clocksChannel.map(MapMode.READ_WRITE, start, Math.min(length - start,
+              (long) slotsPerSegment * slotBytes));
+    }
+    recover();
+  }
+
+  /**
+   * Open the store in the given directory, creating it if it does not exist, for clocks of up to
+   * maxNodes nodes and up to maxEntities entities. An existing store must have been created with
+   * the same limits. With syncWrites every change is forced to disk before it is applied, otherwise
+   * changes since the last checkpoint survive a crash of the process but not of the machine.
+   */
+  public static MappedClockStore open(final Path directory, final int maxNodes,
+      final int maxEntities, final boolean syncWrites) throws IOException {
+    if (directory == null) {
+      throw new IllegalArgumentException("directory cannot be null");
+    }
+    if (maxNodes <= 0 || maxNodes >= MAX_SEGMENT_BYTES / Long.BYTES || maxEntities <= 0) {
+      throw new IllegalArgumentException("maxNodes and maxEntities must be positive and bounded");
+    }
+    return new MappedClockStore(directory, maxNodes, maxEntities, syncWrites);
+  }
+
+  // the registry of nodes whose slots lay out the stored clocks, restored on open
+  public NodeRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * Record an event on the clock of the given entity with the semantics of
+   * {@link ClockStore#recordEvent(Object, Event)}, logging the changed tstamps before applying
+   * them.
+   */
+  public VectorClockTransition recordEvent(final long entityId, final Event event) {
+    checkEntityId(entityId);
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+    final int slot = registry.slot(event.getImpactedNode());
+    final long[] received = event.getEventType() == EventType.RECEIVE
+        ? registry.dense(event.getSenderClock()) : new long[0];
+    checkpointLock.readLock().lock();
+    try {
+      checkOpen();
+      persistNodes(Math.max(slot + 1, received.length));
+      final ReentrantLock lock = stripe(entityId);
+      lock.lock();
+      try {
+        final int existing = find(entityId);
+        // an entity without a slot is all zeros and cannot be concurrent with any clock
+        if (event.getEventType() == EventType.RECEIVE && existing >= 0
+            && compare(existing, received) == EventOrdering.CONCURRENT) {
+          // do not accept events that result in conflicting version updates
+          return new VectorClockTransition(event, null, true);
+        }
+        final int row = existing >= 0 ? existing : allocate(entityId);
+        final long[] changes = new long[(received.length + 1) << 1];
+        changes[0] = slot;
+        // tick, then merge in the received tstamp of the same node
+        changes[1] = Math.max(LogicalTstamp.advance(read(row, slot), 1L),
+            slot < received.length ? received[slot] : 0L);
+        int count = 1;
+        for (int iter = 0; iter < received.length; iter++) {
+          if (iter != slot && received[iter] > read(row, iter)) {
+            changes[count << 1] = iter;
+            changes[(count << 1) + 1] = received[iter];
+            count++;
+          }
+        }
+        apply(entityId, row, changes, count);
+        return new VectorClockTransition(event, null, false);
+      } finally {
+        lock.unlock();
+      }
+    } finally {
+      checkpointLock.readLock().unlock();
+    }
+  }
+
+  // Merge the given clock into the clock of the given entity without ticking it
+  public void merge(final long entityId, final IVectorClock clock) {
+    checkEntityId(entityId);
+    final long[] received = registry.dense(clock);
+    checkpointLock.readLock().lock();
+    try {
+      checkOpen();
+      persistNodes(received.length);
+      final ReentrantLock lock = stripe(entityId);
+      lock.lock();
+      try {
+        final int row = rowFor(entityId);
+        final long[] changes = new long[received.length << 1];
+        int count = 0;
+        for (int iter = 0; iter < received.length; iter++) {
+          if (received[iter] > read(row, iter)) {
+            changes[count << 1] = iter;
+            changes[(count << 1) + 1] = received[iter];
+            count++;
+          }
+        }
+        if (count > 0) {
+          apply(entityId, row, changes, count);
+        }
+      } finally {
+        lock.unlock();
+      }
+    } finally {
+      checkpointLock.readLock().unlock();
+    }
+  }
+
+  // Compare the clocks of two entities, an entity that was never written is all zeros
+  public EventOrdering compare(final long entityIdOne, final long entityIdTwo) {
+    final long[] one = row(entityIdOne);
+    final long[] two = row(entityIdTwo);
+    return compare(one, two);
+  }
+
+  // Compare the clock of an entity with the given clock, nodes missing from it count as 0
+  public EventOrdering compare(final long entityId, final IVectorClock clock) {
+    return compare(row(entityId), registry.dense(clock));
+  }
+
+  // A copy of the clock of the given entity or null if the store does not hold one
+  public ArrayVectorClock get(final long entityId) {
+    checkEntityId(entityId);
+    if (!contains(entityId)) {
+      return null;
+    }
+    final long[] row = row(entityId);
+    final long[] entries = new long[row.length << 1];
+    for (int slot = 0; slot < row.length; slot++) {
+      entries[slot << 1] = slot;
+      entries[(slot << 1) + 1] = row[slot];
+    }
+    return ArrayVectorClock.fromEntries(registry, entries);
+  }
+
+  public boolean contains(final long entityId) {
+    checkEntityId(entityId);
+    final ReentrantLock lock = stripe(entityId);
+    lock.lock();
+    try {
+      return find(entityId) >= 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // count of entity clocks held
+  public int size() {
+    return entities;
+  }
+
+  /**
+   * Flush the mapped clocks to disk and empty the write-ahead log. Recording waits for the
+   * checkpoint to finish.
+   */
+  public void checkpoint() {
+    checkpointLock.writeLock().lock();
+    try {
+      checkOpen();
+      header.force();
+      for (final MappedByteBuffer bucketSegment : buckets) {
+        bucketSegment.force();
+      }
+      for (final MappedByteBuffer segment : segments) {
+        segment.force();
+      }
+      walChannel.truncate(0L);
+      walChannel.force(true);
+    } catch (IOException problem) {
+      throw new UncheckedIOException(problem);
+    } finally {
+      checkpointLock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    checkpointLock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      checkpoint();
+      header.putInt(CLEAN_OFFSET, 1);
+      header.force();
+      closed = true;
+      walChannel.close();
+      nodesChannel.close();
+      clocksChannel.close();
+    } finally {
+      checkpointLock.writeLock().unlock();
+    }
+  }
+
+  // Log the changed slot,tstamp pairs and then apply them, the entity's stripe is locked
+  private void apply(final long entityId, final int row, final long[] changes, final int count) {
+    final ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + recordBodySize(count));
+    record.putInt(recordBodySize(count));
+    record.putLong(entityId);
+    record.putInt(count);
+    for (int iter = 0; iter < count; iter++) {
+      record.putInt((int) changes[iter << 1]);
+      record.putLong(changes[(iter << 1) + 1]);
+    }
+    log(record);
+    for (int iter = 0; iter < count; iter++) {
+      write(row, (int) changes[iter << 1], changes[(iter << 1) + 1]);
+    }
+  }
+
+  /**
+   * Hand the entity a new slot, logging it before the slot is touched so that replay hands the
+   * entity the same slot whatever order the header, the slot and the index reach the disk in. The
+   * slot is zeroed in case an earlier owner, lost to a crash before its slot was logged, left its
+   * tstamps behind. The entity's stripe is locked.
+   */
+  private int allocate(final long entityId) {
+    final int row;
+    synchronized (header) {
+      if (allocated == maxEntities) {
+        throw new IllegalStateException(
+            "Store was created for at most " + maxEntities + " entities");
+      }
+      row = allocated++;
+    }
+    final ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + ALLOCATION_BODY_BYTES);
+    record.putInt(ALLOCATION_BODY_BYTES);
+    record.putLong(entityId);
+    record.putInt(ALLOCATION);
+    record.putInt(row);
+    log(record);
+    assign(row, entityId);
+    synchronized (header) {
+      insert(entityId, row);
+      entities++;
+      header.putLong(ALLOCATED_OFFSET, allocated);
+      header.putLong(ENTITIES_OFFSET, entities);
+    }
+    return row;
+  }
+
+  // Zero the row's tstamps and mark it as the given entity's
+  private void assign(final int row, final long entityId) {
+    for (int slot = 0; slot < maxNodes; slot++) {
+      write(row, slot, 0L);
+    }
+    segment(row).putLong(position(row), entityId + 1L);
+  }
+
+  // Append the record, laid out up to its checksum, to the log
+  private void log(final ByteBuffer record) {
+    final CRC32 crc = new CRC32();
+    crc.update(record.array(), Integer.BYTES, record.position() - Integer.BYTES);
+    record.putInt((int) crc.getValue());
+    record.flip();
+    synchronized (walChannel) {
+      try {
+        while (record.hasRemaining()) {
+          walChannel.write(record);
+        }
+        if (syncWrites) {
+          walChannel.force(false);
+        }
+      } catch (IOException problem) {
+        throw new UncheckedIOException(problem);
+      }
+    }
+  }
+
+  /**
+   * Replay the intact prefix of the log in two passes, first handing out the logged slots, then,
+   * with the index rebuilt from the slot headers if the store was not closed cleanly, the changes.
+   */
+  private void recover() throws IOException {
+    restoreNodes();
+    allocated = (int) header.getLong(ALLOCATED_OFFSET);
+    entities = (int) header.getLong(ENTITIES_OFFSET);
+    final boolean clean = header.getInt(CLEAN_OFFSET) == 1 && walChannel.size() == 0L;
+    final long end = replay(true);
+    if (!clean) {
+      rebuildIndex();
+    }
+    replay(false);
+    // drop a torn tail left behind by a crash in the middle of an append
+    walChannel.truncate(end);
+    walChannel.position(end);
+    checkpoint();
+    header.putInt(CLEAN_OFFSET, 0);
+    header.force();
+  }
+
+  // Replay either the slot allocations or the changes of the log, returning where its intact
+  // prefix ends
+  private long replay(final boolean allocations) throws IOException {
+    long position = 0L;
+    final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+    while (true) {
+      length.clear();
+      if (readFully(walChannel, length, position) < Integer.BYTES) {
+        break;
+      }
+      final int bodySize = length.getInt(0);
+      if (bodySize < recordBodySize(0) || bodySize > recordBodySize(maxNodes)) {
+        break;
+      }
+      final ByteBuffer record = ByteBuffer.allocate(bodySize + Integer.BYTES);
+      if (readFully(walChannel, record, position + Integer.BYTES) < record.capacity()) {
+        break;
+      }
+      final CRC32 crc = new CRC32();
+      crc.update(record.array(), 0, bodySize);
+      if ((int) crc.getValue() != record.getInt(bodySize)) {
+        break;
+      }
+      final long entityId = record.getLong(0);
+      final int count = record.getInt(Long.BYTES);
+      if (entityId < 0L || entityId == Long.MAX_VALUE) {
+        break;
+      }
+      if (count == ALLOCATION) {
+        if (bodySize != ALLOCATION_BODY_BYTES) {
+          break;
+        }
+        final int row = record.getInt(recordBodySize(0));
+        if (row < 0 || row >= maxEntities) {
+          throw new IOException("Write-ahead log hands out unknown entity slot " + row);
+        }
+        if (allocations) {
+          // the slot is rebuilt from the changes logged after it was handed out
+          assign(row, entityId);
+          allocated = Math.max(allocated, row + 1);
+        }
+      } else if (count < 0 || recordBodySize(count) != bodySize) {
+        break;
+      } else if (!allocations) {
+        final int row = find(entityId);
+        if (row < 0) {
+          throw new IOException("Write-ahead log changes entity " + entityId
+              + " which was never handed a slot");
+        }
+        for (int iter = 0; iter < count; iter++) {
+          final int offset = recordBodySize(iter);
+          final int slot = record.getInt(offset);
+          final long tstamp = record.getLong(offset + Integer.BYTES);
+          if (slot < 0 || slot >= persistedNodes) {
+            throw new IOException("Write-ahead log refers to unknown node slot " + slot);
+          }
+          if (tstamp > read(row, slot)) {
+            write(row, slot, tstamp);
+          }
+        }
+      }
+      position += Integer.BYTES + record.capacity();
+    }
+    if (allocations) {
+      header.putLong(ALLOCATED_OFFSET, allocated);
+    }
+    return position;
+  }
+
+  // Rebuild the index and the entity count from the ids in the headers of the handed out slots
+  private void rebuildIndex() throws IOException {
+    for (long bucket = 0L; bucket <= bucketMask; bucket++) {
+      putBucket(bucket, 0);
+    }
+    entities = 0;
+    for (int row = 0; row < allocated; row++) {
+      final long key = segment(row).getLong(position(row));
+      // 0 is a slot that was handed out but never assigned
+      if (key == 0L) {
+        continue;
+      }
+      if (find(key - 1L) >= 0) {
+        throw new IOException(CLOCKS_FILE + " holds entity " + (key - 1L) + " twice");
+      }
+      insert(key - 1L, row);
+      entities++;
+    }
+    header.putLong(ENTITIES_OFFSET, entities);
+  }
+
+  private void restoreNodes() throws IOException {
+    long position = 0L;
+    final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+    while (true) {
+      length.clear();
+      if (readFully(nodesChannel, length, position) < Integer.BYTES) {
+        break;
+      }
+      final int idLength = length.getInt(0);
+      if (idLength < 0 || idLength > nodesChannel.size()) {
+        break;
+      }
+      final ByteBuffer id = ByteBuffer.allocate(idLength);
+      if (readFully(nodesChannel, id, position + Integer.BYTES) < idLength) {
+        break;
+      }
+      final Node node = new Node(new String(id.array(), StandardCharsets.UTF_8));
+      if (registry.slot(node) != persistedNodes) {
+        throw new IOException(NODES_FILE + " lists " + node + " twice");
+      }
+      persistedNodes++;
+      position += Integer.BYTES + idLength;
+    }
+    nodesChannel.truncate(position);
+    nodesChannel.position(position);
+  }
+
+  // Append every node registered since the last call to nodes.dat before a change refers to it,
+  // the checkpoint lock is read-locked so that the store cannot be closed meanwhile
+  private void persistNodes(final int width) {
+    if (width <= persistedNodes) {
+      return;
+    }
+    if (width > maxNodes) {
+      throw new IllegalStateException("Store was created for at most " + maxNodes + " nodes");
+    }
+    synchronized (nodesChannel) {
+      final int size = Math.min(registry.size(), maxNodes);
+      if (size <= persistedNodes) {
+        return;
+      }
+      final byte[][] ids = new byte[size - persistedNodes][];
+      int bytes = 0;
+      for (int slot = persistedNodes; slot < size; slot++) {
+        final String id = registry.node(slot).getId();
+        if (id == null) {
+          throw new IllegalArgumentException("Nodes without an id cannot be persisted");
+        }
+        ids[slot - persistedNodes] = id.getBytes(StandardCharsets.UTF_8);
+        bytes += Integer.BYTES + ids[slot - persistedNodes].length;
+      }
+      final ByteBuffer buffer = ByteBuffer.allocate(bytes);
+      for (final byte[] id : ids) {
+        buffer.putInt(id.length).put(id);
+      }
+      buffer.flip();
+      try {
+        while (buffer.hasRemaining()) {
+          nodesChannel.write(buffer);
+        }
+        nodesChannel.force(false);
+      } catch (IOException problem) {
+        throw new UncheckedIOException(problem);
+      }
+      persistedNodes = size;
+    }
+  }
+
+  // the slot of the given entity, handing out a new one if it has none
+  private int rowFor(final long entityId) {
+    final int existing = find(entityId);
+    return existing >= 0 ? existing : allocate(entityId);
+  }
+
+  /**
+   * The slot of the given entity or -1 if it has none, probing the index from the entity's bucket
+   * until an empty one. Buckets are only ever filled, under the header's monitor, and an entity's
+   * bucket under its stripe lock too, so a caller holding that lock never misses the entity.
+   */
+  private int find(final long entityId) {
+    for (long bucket = bucketOf(entityId);; bucket = (bucket + 1L) & bucketMask) {
+      final int value = bucket(bucket);
+      if (value == 0) {
+        return -1;
+      }
+      if (segment(value - 1).getLong(position(value - 1)) == entityId + 1L) {
+        return value - 1;
+      }
+    }
+  }
+
+  // Index the entity's slot in the first empty bucket from its own, the header's monitor is held
+  private void insert(final long entityId, final int row) {
+    long bucket = bucketOf(entityId);
+    while (bucket(bucket) != 0) {
+      bucket = (bucket + 1L) & bucketMask;
+    }
+    putBucket(bucket, row + 1);
+  }
+
+  private long bucketOf(final long entityId) {
+    long hash = entityId * 0x9E3779B97F4A7C15L;
+    hash ^= hash >>> 32;
+    return hash & bucketMask;
+  }
+
+  private int bucket(final long bucket) {
+    return buckets[(int) (bucket / BUCKETS_PER_SEGMENT)]
+        .getInt((int) (bucket % BUCKETS_PER_SEGMENT) * Integer.BYTES);
+  }
+
+  private void putBucket(final long bucket, final int value) {
+    buckets[(int) (bucket / BUCKETS_PER_SEGMENT)]
+        .putInt((int) (bucket % BUCKETS_PER_SEGMENT) * Integer.BYTES, value);
+  }
+
+  // a copy of the clock of the given entity laid out by slot, all zeros if it was never written
+  private long[] row(final long entityId) {
+    checkEntityId(entityId);
+    final ReentrantLock lock = stripe(entityId);
+    lock.lock();
+    try {
+      final long[] row = new long[Math.min(registry.size(), maxNodes)];
+      final int slot = find(entityId);
+      if (slot >= 0) {
+        for (int iter = 0; iter < row.length; iter++) {
+          row[iter] = read(slot, iter);
+        }
+      }
+      return row;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private EventOrdering compare(final int row, final long[] other) {
+    final long[] tstamps = new long[Math.max(persistedNodes, other.length)];
+    for (int slot = 0; slot < persistedNodes; slot++) {
+      tstamps[slot] = read(row, slot);
+    }
+    return compare(tstamps, other);
+  }
+
+  // Compare two clocks laid out by slot, slots past the shorter one are implicitly 0
+  private static EventOrdering compare(final long[] one, final long[] two) {
+    boolean oneAfterTwo = false;
+    boolean twoAfterOne = false;
+    for (int slot = 0; slot < Math.max(one.length, two.length); slot++) {
+      final long tstampOne = slot < one.length ? one[slot] : 0L;
+      final long tstampTwo = slot < two.length ? two[slot] : 0L;
+      if (tstampOne > tstampTwo) {
+        oneAfterTwo = true;
+      } else if (tstampOne < tstampTwo) {
+        twoAfterOne = true;
+      }
+    }
+    if (oneAfterTwo && twoAfterOne) {
+      return EventOrdering.CONCURRENT;
+    } else if (oneAfterTwo) {
+      return EventOrdering.HAPPENS_AFTER;
+    } else if (twoAfterOne) {
+      return EventOrdering.HAPPENS_BEFORE;
+    }
+    return EventOrdering.IDENTICAL;
+  }
+
+  private long read(final int row, final int slot) {
+    return segment(row).getLong(position(row) + Long.BYTES * (1 + slot));
+  }
+
+  private void write(final int row, final int slot, final long tstamp) {
+    segment(row).putLong(position(row) + Long.BYTES * (1 + slot), tstamp);
+  }
+
+  private MappedByteBuffer segment(final int row) {
+    return segments[row / slotsPerSegment];
+  }
+
+  // offset of the row's slot within its segment
+  private int position(final int row) {
+    return (row % slotsPerSegment) * slotBytes;
+  }
+
+  private ReentrantLock stripe(final long entityId) {
+    final int hash = Long.hashCode(entityId);
+    return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Store is closed");
+    }
+  }
+
+  private static void checkEntityId(final long entityId) {
+    if (entityId < 0L || entityId == Long.MAX_VALUE) {
+      throw new IllegalArgumentException("entityId must be in [0, Long.MAX_VALUE)");
+    }
+  }
+
+  // entity id, ALLOCATION and the slot handed out to the entity
+  private static final int ALLOCATION_BODY_BYTES = Long.BYTES + Integer.BYTES * 2;
+
+  // entity id, count and count slot,tstamp pairs
+  private static int recordBodySize(final int count) {
+    return Long.BYTES + Integer.BYTES + count * (Integer.BYTES + Long.BYTES);
+  }
+
+  private static int readFully(final FileChannel channel, final ByteBuffer buffer, long position)
+      throws IOException {
+    int read = 0;
+    while (buffer.hasRemaining()) {
+      final int count = channel.read(buffer, position);
+      if (count < 0) {
+        break;
+      }
+      read += count;
+      position += count;
+    }
+    return read;
+  }
+
+}
@@ -1,19 +1,26 @@
 package com.github.vectorclock;
 
 /**
- * Basic immutable node skeleton.
+ * Basic immutable node skeleton. The hash of the id is computed once, and the instance a
+ * {@link NodeRegistry} interns remembers the slot it was handed so that looking it up again does
+ * not need to hash it at all.
  * 
  * @author gaurav
  */
 public class Node {
   private final String id;
+  private final int hash;
+
+  // a registry that interned this instance and the slot it handed out, see NodeRegistry
+  private volatile Interned interned;
 
   public Node(final String id) {
     this.id = id;
+    this.hash = hash(id);
   }
 
   public Node(final IdProvider idProvider) {
-    id = idProvider.id();
+    this(idProvider.id());
   }
 
   // return the unique node id
@@ -21,14 +28,31 @@ public class Node {
     return id;
   }
 
-  @Override
-  public int hashCode() {
+  // the slot the given registry interned this instance at, -1 if it was another or none
+  int slotIn(final NodeRegistry registry) {
+    final Interned current = interned;
+    return current != null && current.registry == registry ? current.slot : -1;
+  }
+
+  // remember the registry that interned this instance unless an earlier one already did
+  void interned(final NodeRegistry registry, final int slot) {
+    if (interned == null) {
+      interned = new Interned(registry, slot);
+    }
+  }
+
+  private static int hash(final String id) {
     final int prime = 31;
     int result = 1;
     result = prime * result + ((id == null) ? 0 : id.hashCode());
     return result;
   }
 
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (this == obj) {
@@ -41,6 +65,9 @@ public class Node {
       return false;
     }
     Node other = (Node) obj;
+    if (hash != other.hash) {
+      return false;
+    }
     if (id == null) {
       if (other.id != null) {
         return false;
@@ -51,6 +78,16 @@ public class Node {
     return true;
   }
 
+  private static final class Interned {
+    private final NodeRegistry registry;
+    private final int slot;
+
+    private Interned(final NodeRegistry registry, final int slot) {
+      this.registry = registry;
+      this.slot = slot;
+    }
+  }
+
   @Override
   public String toString() {
     StringBuilder builder = new StringBuilder();
@@ -0,0 +1,152 @@
+package com.github.vectorclock;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A shared, append-only registry that interns every known Node to a dense integer slot. Clocks
+ * that share a registry can lay out their logical timestamps as primitive arrays indexed by slot
+ * and compare or merge each other with simple loops instead of map lookups.
+ *
+ * Slots are handed out sequentially and are never reused, so a slot is a stable identity for a
+ * Node for the lifetime of the registry. The first instance registered for a node is its interned
+ * instance, it remembers its slot so looking it up again is a field read rather than a hash lookup
+ * and clocks over the registry order their nodes by slot rather than by id.
+ *
+ * @author gaurav
+ */
+public final class NodeRegistry {
+  private final ConcurrentMap<Node, Integer> slots = new ConcurrentHashMap<>();
+
+  // slot:node, grown under the registry monitor and republished
+  private volatile Node[] nodes = new Node[16];
+  private int size;
+
+  // orders registered nodes by slot, unregistered ones after them by id
+  private final Comparator<Node> bySlot = new Comparator<Node>() {
+    public int compare(Node nodeOne, Node nodeTwo) {
+      final int slotOne = slotIfPresent(nodeOne);
+      final int slotTwo = slotIfPresent(nodeTwo);
+      if (slotOne >= 0 && slotTwo >= 0) {
+        return Integer.compare(slotOne, slotTwo);
+      }
+      if (slotOne >= 0 || slotTwo >= 0) {
+        return slotOne >= 0 ? -1 : 1;
+      }
+      return nodeOne.getId().compareTo(nodeTwo.getId());
+    }
+  };
+
+  /**
+   * Return the slot for the given node, registering it if this is the first time the registry has
+   * seen it.
+   */
+  public int slot(final Node node) {
+    if (node == null) {
+      throw new IllegalArgumentException("node cannot be null");
+    }
+    final int interned = node.slotIn(this);
+    if (interned >= 0) {
+      return interned;
+    }
+    final Integer slot = slots.get(node);
+    if (slot != null) {
+      return slot;
+    }
+    return register(node);
+  }
+
+  // return the slot for the given node or -1 if it was never registered
+  public int slotIfPresent(final Node node) {
+    final int interned = node.slotIn(this);
+    if (interned >= 0) {
+      return interned;
+    }
+    final Integer slot = slots.get(node);
+    return slot != null ? slot : -1;
+  }
+
+  /**
+   * Return the interned instance of the given node, registering it if this is the first time the
+   * registry has seen it. Handing the interned instance around in place of equal copies of it makes
+   * every later lookup in this registry a field read.
+   */
+  public Node intern(final Node node) {
+    return node(slot(node));
+  }
+
+  // orders nodes by slot, as integers, for sorted snapshots of clocks laid out over this registry
+  public Comparator<Node> bySlot() {
+    return bySlot;
+  }
+
+  // return the node registered at the given slot
+  public Node node(final int slot) {
+    final Node[] current = nodes;
+    if (slot < 0 || slot >= current.length || current[slot] == null) {
+      throw new IllegalArgumentException("No node registered at slot " + slot);
+    }
+    return current[slot];
+  }
+
+  // return the count of registered nodes, which is also the next slot to be handed out
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Lay out the given clock's tstamps by slot, registering any node the registry has not seen. The
+   * returned array is as wide as the highest slot the clock holds, every other slot is 0.
+   */
+  long[] dense(final IVectorClock clock) {
+    if (clock == null) {
+      throw new IllegalArgumentException("clock cannot be null");
+    }
+    final long[] entries;
+    if (clock instanceof ArrayVectorClock && ((ArrayVectorClock) clock).getRegistry() == this) {
+      entries = ((ArrayVectorClock) clock).entries();
+    } else if (clock instanceof EncodedVectorClock
+        && ((EncodedVectorClock) clock).getDictionary() == this) {
+      entries = ((EncodedVectorClock) clock).entries();
+    } else {
+      final Map<Node, LogicalTstamp> snapshot = clock.snapshot();
+      entries = new long[snapshot.size() << 1];
+      int iter = 0;
+      for (final Map.Entry<Node, LogicalTstamp> entry : snapshot.entrySet()) {
+        entries[iter++] = slot(entry.getKey());
+        entries[iter++] = entry.getValue().currentValue();
+      }
+    }
+    int width = 0;
+    for (int iter = 0; iter < entries.length; iter += 2) {
+      width = Math.max(width, (int) entries[iter] + 1);
+    }
+    final long[] dense = new long[width];
+    for (int iter = 0; iter < entries.length; iter += 2) {
+      dense[(int) entries[iter]] = entries[iter + 1];
+    }
+    return dense;
+  }
+
+  private synchronized int register(final Node node) {
+    final Integer existing = slots.get(node);
+    if (existing != null) {
+      return existing;
+    }
+    final int slot = size;
+    Node[] current = nodes;
+    if (slot == current.length) {
+      current = Arrays.copyOf(current, current.length << 1);
+    }
+    current[slot] = node;
+    node.interned(this, slot);
+    nodes = current;
+    size++;
+    slots.put(node, slot);
+    return slot;
+  }
+
+}
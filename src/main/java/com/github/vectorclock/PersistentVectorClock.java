@@ -0,0 +1,503 @@
+package com.github.vectorclock;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Models a vector clock as an immutable, persistent trie of logical timestamps indexed by the slot
+ * that a shared {@link NodeRegistry} assigns to every Node. Every change copies the path from the
+ * root down to the changed slots, 32 slots to a node, and swaps the new root in with a single
+ * compare-and-set, so:<br/>
+ *
+ * 1. {@link #deepCopy()} and {@link #snapshot()} read one root, so they are always consistent and
+ * deepCopy is O(1), copies share all of their structure with the clock until either of them
+ * changes<br/>
+ * 2. a RECEIVE compares and merges against one version of the clock and is retried if another
+ * event got in first, so recording never blocks and never drops an event whatever the
+ * RecordingPolicy<br/>
+ * 3. comparing and merging clocks that share parts of their tries, like a clock and a copy of it
+ * it sent a while ago, skips the shared parts<br/>
+ *
+ * Ticks cost a path copy of a few small arrays rather than an in-place write, which suits senders
+ * that attach a copy of their clock to every outgoing message.
+ *
+ * @author gaurav
+ */
+public final class PersistentVectorClock implements IVectorClock {
+  private static final int BITS = 5;
+  private static final int FANOUT = 1 << BITS;
+  private static final int MASK = FANOUT - 1;
+
+  // marks slots of nodes that are not part of the clock, tstamps are never negative
+  private static final long ABSENT = -1L;
+
+  private final NodeRegistry registry;
+
+  private final AtomicReference<Trie> state;
+
+  private final ClockMetrics metrics;
+
+  public PersistentVectorClock(final NodeRegistry registry) {
+    this(registry, ClockMetrics.NOOP);
+  }
+
+  public PersistentVectorClock(final NodeRegistry registry, final ClockMetrics metrics) {
+    this(registry, metrics, Trie.EMPTY);
+    if (registry == null || metrics == null) {
+      throw new IllegalArgumentException("registry and metrics cannot be null");
+    }
+  }
+
+  private PersistentVectorClock(final NodeRegistry registry, final ClockMetrics metrics,
+      final Trie trie) {
+    this.registry = registry;
+    this.metrics = metrics;
+    this.state = new AtomicReference<>(trie);
+  }
+
+  public NodeRegistry getRegistry() {
+    return registry;
+  }
+
+  public ClockMetrics getMetrics() {
+    return metrics;
+  }
+
+  // count of nodes that are part of this clock
+  public int width() {
+    return state.get().width;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#initNode(com.github.vectorclock.Node)
+   */
+  @Override
+  public void initNode(final Node node) {
+    if (node == null) {
+      throw new IllegalArgumentException("node cannot be null");
+    }
+    final int slot = registry.slot(node);
+    while (true) {
+      final Trie current = state.get();
+      if (current.get(slot) != ABSENT || state.compareAndSet(current, current.with(slot, 0L))) {
+        return;
+      }
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#removeNode(com.github.vectorclock.Node)
+   */
+  @Override
+  public boolean removeNode(final Node node) {
+    final int slot = registry.slotIfPresent(node);
+    if (slot < 0) {
+      return false;
+    }
+    while (true) {
+      final Trie current = state.get();
+      if (current.get(slot) == ABSENT) {
+        return false;
+      }
+      if (state.compareAndSet(current, current.with(slot, ABSENT))) {
+        return true;
+      }
+    }
+  }
+
+  // A perfect snapshot, of a single version of the clock
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#snapshot()
+   */
+  @Override
+  public Map<Node, LogicalTstamp> snapshot() {
+    final Map<Node, LogicalTstamp> snapshot = new TreeMap<>(registry.bySlot());
+    final long[] entries = state.get().entries();
+    for (int iter = 0; iter < entries.length; iter += 2) {
+      snapshot.put(registry.node((int) entries[iter]), LogicalTstamp.curate(entries[iter + 1]));
+    }
+    return snapshot;
+  }
+
+  // O(1), the copy shares the current version of this clock's trie
+  @Override
+  public PersistentVectorClock deepCopy() {
+    return new PersistentVectorClock(registry, metrics, state.get());
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#recordEvent(com.github.vectorclock.Event)
+   */
+  @Override
+  public VectorClockTransition recordEvent(final Event event) {
+    final int slot = registry.slotIfPresent(event.getImpactedNode());
+    while (true) {
+      final Trie current = state.get();
+      checkMember(current, slot, event.getImpactedNode());
+      if (event.getEventType() != EventType.RECEIVE) {
+        if (state.compareAndSet(current, current.tick(slot, 1L))) {
+          metrics.eventRecorded(event.getEventType());
+          return new VectorClockTransition(event, null, false);
+        }
+        continue;
+      }
+      final IVectorClock receivedClock = event.getSenderClock();
+      final Trie received = received(receivedClock);
+      if (compareReceived(current, received) == EventOrdering.CONCURRENT) {
+        // do not accept events that result in conflicting version updates
+        metrics.conflictDetected();
+        return new VectorClockTransition(event, this, true);
+      }
+      if (state.compareAndSet(current, Trie.merge(current.tick(slot, 1L), received))) {
+        metrics.clockMerged(received.width);
+        metrics.eventRecorded(EventType.RECEIVE);
+        return new VectorClockTransition(event, this, false);
+      }
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#recordEvents(java.util.List)
+   */
+  @Override
+  public BatchTransition recordEvents(final List<Event> events) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null");
+    }
+    final Trie[] receivedClocks = new Trie[events.size()];
+    for (int index = 0; index < events.size(); index++) {
+      if (events.get(index).getEventType() == EventType.RECEIVE) {
+        receivedClocks[index] = received(events.get(index).getSenderClock());
+      }
+    }
+    // apply the whole batch to one version of the clock, starting over if another event got in
+    while (true) {
+      final Trie current = state.get();
+      final BitSet conflicts = new BitSet();
+      Trie next = current;
+      int tickedSlot = -1;
+      long pendingTicks = 0L;
+      // count of events applied, all of them unless one names a node that is not in the clock
+      int recorded = 0;
+      IllegalArgumentException failure = null;
+      for (; recorded < events.size(); recorded++) {
+        final int index = recorded;
+        final Event event = events.get(index);
+        final int slot = registry.slotIfPresent(event.getImpactedNode());
+        try {
+          checkMember(next, slot, event.getImpactedNode());
+        } catch (IllegalArgumentException problem) {
+          // the events before it stay recorded
+          failure = problem;
+          break;
+        }
+        if (event.getEventType() != EventType.RECEIVE) {
+          if (slot != tickedSlot) {
+            next = pendingTicks > 0L ? next.tick(tickedSlot, pendingTicks) : next;
+            tickedSlot = slot;
+            pendingTicks = 0L;
+          }
+          pendingTicks++;
+          continue;
+        }
+        if (pendingTicks > 0L) {
+          next = next.tick(tickedSlot, pendingTicks);
+          tickedSlot = -1;
+          pendingTicks = 0L;
+        }
+        if (compareReceived(next, receivedClocks[index]) == EventOrdering.CONCURRENT) {
+          conflicts.set(index);
+        } else {
+          next = Trie.merge(next.tick(slot, 1L), receivedClocks[index]);
+        }
+      }
+      if (pendingTicks > 0L) {
+        next = next.tick(tickedSlot, pendingTicks);
+      }
+      if (state.compareAndSet(current, next)) {
+        for (int index = 0; index < recorded; index++) {
+          if (conflicts.get(index)) {
+            metrics.conflictDetected();
+          } else {
+            if (receivedClocks[index] != null) {
+              metrics.clockMerged(receivedClocks[index].width);
+            }
+            metrics.eventRecorded(events.get(index).getEventType());
+          }
+        }
+        if (failure != null) {
+          throw failure;
+        }
+        return new BatchTransition(events.size(), conflicts, this);
+      }
+    }
+  }
+
+  /**
+   * Compare two clocks sharing the same registry with the same semantics as
+   * {@link VectorClock#compareClocks(IVectorClock, IVectorClock)}, skipping the parts of their
+   * tries that they share.
+   */
+  static EventOrdering compareClocks(final PersistentVectorClock clockOne,
+      final PersistentVectorClock clockTwo) {
+    return Trie.compare(clockOne.state.get(), clockTwo.state.get());
+  }
+
+  // Compare a version of this clock with a received one, timing it if the metrics are interested
+  private EventOrdering compareReceived(final Trie current, final Trie received) {
+    if (!metrics.isEnabled()) {
+      return Trie.compare(current, received);
+    }
+    final long start = System.nanoTime();
+    final EventOrdering ordering = Trie.compare(current, received);
+    metrics.clocksCompared(System.nanoTime() - start);
+    return ordering;
+  }
+
+  // A single version of the received clock as a trie over this clock's registry
+  private Trie received(final IVectorClock clock) {
+    if (clock instanceof PersistentVectorClock
+        && ((PersistentVectorClock) clock).registry == registry) {
+      return ((PersistentVectorClock) clock).state.get();
+    }
+    final long[] dense = registry.dense(clock);
+    Trie trie = Trie.EMPTY;
+    for (int slot = 0; slot < dense.length; slot++) {
+      if (dense[slot] > 0L) {
+        trie = trie.with(slot, dense[slot]);
+      }
+    }
+    return trie;
+  }
+
+  private static void checkMember(final Trie trie, final int slot, final Node node) {
+    if (slot < 0 || trie.get(slot) == ABSENT) {
+      throw new IllegalArgumentException(node + " is not initialized in this clock");
+    }
+  }
+
+  /**
+   * One immutable version of the clock. Inner nodes are Object[] of FANOUT children, leaves are
+   * long[] of FANOUT tstamps, and a null child stands for a subtree of slots that are all ABSENT.
+   */
+  private static final class Trie {
+    private static final Trie EMPTY = new Trie(null, 0, 0);
+
+    private final Object root;
+    // BITS times the count of inner levels above the leaves
+    private final int shift;
+    private final int width;
+
+    private Trie(final Object root, final int shift, final int width) {
+      this.root = root;
+      this.shift = shift;
+      this.width = width;
+    }
+
+    private int capacity() {
+      return FANOUT << shift;
+    }
+
+    private long get(final int slot) {
+      if (slot >= capacity()) {
+        return ABSENT;
+      }
+      Object node = root;
+      for (int level = shift; level > 0 && node != null; level -= BITS) {
+        node = ((Object[]) node)[(slot >>> level) & MASK];
+      }
+      return node == null ? ABSENT : ((long[]) node)[slot & MASK];
+    }
+
+    private Trie with(final int slot, final long tstamp) {
+      final long previous = get(slot);
+      if (previous == tstamp) {
+        return this;
+      }
+      final Trie grown = grownTo(slot);
+      final int width = this.width + (previous == ABSENT ? 1 : 0) - (tstamp == ABSENT ? 1 : 0);
+      return new Trie(set(grown.root, grown.shift, slot, tstamp), grown.shift, width);
+    }
+
+    private Trie tick(final int slot, final long ticks) {
+      return with(slot, LogicalTstamp.advance(get(slot), ticks));
+    }
+
+    // this version with as many levels added on top as it takes to hold the slot
+    private Trie grownTo(final int slot) {
+      Object grownRoot = root;
+      int grownShift = shift;
+      while (slot >= FANOUT << grownShift) {
+        if (grownRoot != null) {
+          final Object[] inner = new Object[FANOUT];
+          inner[0] = grownRoot;
+          grownRoot = inner;
+        }
+        grownShift += BITS;
+      }
+      return grownShift == shift ? this : new Trie(grownRoot, grownShift, width);
+    }
+
+    private static Object set(final Object node, final int level, final int slot,
+        final long tstamp) {
+      if (level == 0) {
+        final long[] leaf = node == null ? emptyLeaf() : ((long[]) node).clone();
+        leaf[slot & MASK] = tstamp;
+        return leaf;
+      }
+      final Object[] inner = node == null ? new Object[FANOUT] : ((Object[]) node).clone();
+      final int index = (slot >>> level) & MASK;
+      inner[index] = set(inner[index], level - BITS, slot, tstamp);
+      return inner;
+    }
+
+    private static long[] emptyLeaf() {
+      final long[] leaf = new long[FANOUT];
+      Arrays.fill(leaf, ABSENT);
+      return leaf;
+    }
+
+    // slot,tstamp pairs of the nodes in this version in ascending slot order
+    private long[] entries() {
+      final long[] entries = new long[width << 1];
+      collect(root, shift, 0, entries, 0);
+      return entries;
+    }
+
+    private static int collect(final Object node, final int level, final int base,
+        final long[] entries, int count) {
+      if (node == null) {
+        return count;
+      }
+      if (level == 0) {
+        final long[] leaf = (long[]) node;
+        for (int index = 0; index < FANOUT; index++) {
+          if (leaf[index] != ABSENT) {
+            entries[count++] = base + index;
+            entries[count++] = leaf[index];
+          }
+        }
+        return count;
+      }
+      final Object[] inner = (Object[]) node;
+      for (int index = 0; index < FANOUT; index++) {
+        count = collect(inner[index], level - BITS, base + (index << level), entries, count);
+      }
+      return count;
+    }
+
+    private static EventOrdering compare(final Trie one, final Trie two) {
+      final int shift = Math.max(one.shift, two.shift);
+      // bit 0 is set once one is seen after two, bit 1 once two is seen after one
+      final int seen = compare(one.grownTo(FANOUT << shift >>> 1).root,
+          two.grownTo(FANOUT << shift >>> 1).root, shift, 0);
+      switch (seen) {
+        case 3:
+          return EventOrdering.CONCURRENT;
+        case 1:
+          return EventOrdering.HAPPENS_AFTER;
+        case 2:
+          return EventOrdering.HAPPENS_BEFORE;
+        default:
+          return EventOrdering.IDENTICAL;
+      }
+    }
+
+    private static int compare(final Object one, final Object two, final int level, int seen) {
+      if (one == two || seen == 3) {
+        // shared subtrees are identical
+        return seen;
+      }
+      if (level == 0) {
+        for (int index = 0; index < FANOUT && seen != 3; index++) {
+          final long tstampOne = one == null ? 0L : Math.max(((long[]) one)[index], 0L);
+          final long tstampTwo = two == null ? 0L : Math.max(((long[]) two)[index], 0L);
+          if (tstampOne > tstampTwo) {
+            seen |= 1;
+          } else if (tstampOne < tstampTwo) {
+            seen |= 2;
+          }
+        }
+        return seen;
+      }
+      for (int index = 0; index < FANOUT && seen != 3; index++) {
+        seen = compare(one == null ? null : ((Object[]) one)[index],
+            two == null ? null : ((Object[]) two)[index], level - BITS, seen);
+      }
+      return seen;
+    }
+
+    // this version with every tstamp raised to the received one, adding the nodes it has seen
+    // events of, sharing whatever the received version has nothing to add to
+    private static Trie merge(final Trie current, final Trie received) {
+      final int shift = Math.max(current.shift, received.shift);
+      final Trie grown = current.grownTo(FANOUT << shift >>> 1);
+      final int[] added = new int[1];
+      final Object root =
+          merge(grown.root, received.grownTo(FANOUT << shift >>> 1).root, shift, added);
+      return root == grown.root ? current : new Trie(root, shift, current.width + added[0]);
+    }
+
+    private static Object merge(final Object current, final Object received, final int level,
+        final int[] added) {
+      if (current == received || received == null) {
+        return current;
+      }
+      if (level == 0) {
+        long[] merged = null;
+        for (int index = 0; index < FANOUT; index++) {
+          final long tstamp = current == null ? ABSENT : ((long[]) current)[index];
+          final long receivedTstamp = ((long[]) received)[index];
+          if (receivedTstamp > 0L && receivedTstamp > tstamp) {
+            if (merged == null) {
+              merged = current == null ? emptyLeaf() : ((long[]) current).clone();
+            }
+            merged[index] = receivedTstamp;
+            added[0] += tstamp == ABSENT ? 1 : 0;
+          }
+        }
+        return merged == null ? current : merged;
+      }
+      Object[] merged = null;
+      for (int index = 0; index < FANOUT; index++) {
+        final Object child = current == null ? null : ((Object[]) current)[index];
+        final Object mergedChild =
+            merge(child, ((Object[]) received)[index], level - BITS, added);
+        if (mergedChild != child) {
+          if (merged == null) {
+            merged = current == null ? new Object[FANOUT] : ((Object[]) current).clone();
+          }
+          merged[index] = mergedChild;
+        }
+      }
+      return merged == null ? current : merged;
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see com.github.vectorclock.IVectorClock#toString()
+   */
+  @Override
+  public String toString() {
+    return "PersistentVectorClock:[" + snapshot().toString() + "]";
+  }
+
+}
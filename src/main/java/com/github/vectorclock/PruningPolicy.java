@@ -0,0 +1,88 @@
+package com.github.vectorclock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how a {@link VectorClock} keeps its width bounded as nodes come and go:<br/>
+ *
+ * 1. NONE never prunes, entries stay until {@link IVectorClock#removeNode(Node)}, this is the
+ * default<br/>
+ * 2. a max width evicts the least recently updated entries whenever a new node would push the
+ * clock past it<br/>
+ * 3. a max age evicts entries that have not been updated for that long, swept while recording
+ * events<br/>
+ *
+ * Entries dropped this way may still be carried by other clocks, so the clock reports every such
+ * eviction of a non-zero entry as one that could make a later comparison come out as concurrent
+ * when it is not. Entries that every live peer has observed are better collected with
+ * {@link VectorClock#collectStable(java.util.Map)}, which never drops an entry a live peer has
+ * not seen yet, but is only safe if every clock collects the entry together, clocks taken before
+ * still carry it.
+ *
+ * Receiving a clock merges in every node it carries, so an entry dropped either way comes back
+ * with the next RECEIVE from a peer whose clock still holds it, and is only gone for good once
+ * every clock has dropped it.
+ *
+ * @author gaurav
+ */
+public final class PruningPolicy {
+  private static final PruningPolicy NONE = new PruningPolicy(0, 0L);
+
+  private final int maxWidth;
+  private final long maxAgeNanos;
+
+  private PruningPolicy(final int maxWidth, final long maxAgeNanos) {
+    this.maxWidth = maxWidth;
+    this.maxAgeNanos = maxAgeNanos;
+  }
+
+  public static PruningPolicy none() {
+    return NONE;
+  }
+
+  public static PruningPolicy maxWidth(final int maxWidth) {
+    return bounded(maxWidth, 0L, TimeUnit.NANOSECONDS);
+  }
+
+  public static PruningPolicy maxAge(final long maxAge, final TimeUnit unit) {
+    return bounded(0, maxAge, unit);
+  }
+
+  /**
+   * Bound both the width and the age of entries, a maxWidth or maxAge of 0 leaves that dimension
+   * unbounded.
+   */
+  public static PruningPolicy bounded(final int maxWidth, final long maxAge,
+      final TimeUnit unit) {
+    if (maxWidth < 0 || maxAge < 0 || unit == null) {
+      throw new IllegalArgumentException(
+          "maxWidth and maxAge must be non-negative with a valid unit");
+    }
+    if (maxWidth == 0 && maxAge == 0) {
+      return NONE;
+    }
+    return new PruningPolicy(maxWidth, unit.toNanos(maxAge));
+  }
+
+  public int getMaxWidth() {
+    return maxWidth;
+  }
+
+  public long getMaxAgeNanos() {
+    return maxAgeNanos;
+  }
+
+  // whether the clock needs to track when its entries were last updated
+  boolean isEnabled() {
+    return this != NONE;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("PruningPolicy[maxWidth:").append(maxWidth).append(", maxAgeNanos:")
+        .append(maxAgeNanos).append("]");
+    return builder.toString();
+  }
+
+}
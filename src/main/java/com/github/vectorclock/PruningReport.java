@@ -0,0 +1,47 @@
+package com.github.vectorclock;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This immutable object reflects the outcome of pruning entries from a {@link VectorClock}, either
+ * as per its {@link PruningPolicy} or by collecting the entries all live peers have observed.
+ *
+ * @author gaurav
+ */
+public final class PruningReport {
+  private final Map<Node, LogicalTstamp> prunedEntries;
+  private final boolean falseConcurrencyPossible;
+
+  PruningReport(final Map<Node, LogicalTstamp> prunedEntries,
+      final boolean falseConcurrencyPossible) {
+    this.prunedEntries = Collections.unmodifiableMap(prunedEntries);
+    this.falseConcurrencyPossible = falseConcurrencyPossible;
+  }
+
+  // the entries that were dropped from the clock with their last tstamps
+  public Map<Node, LogicalTstamp> getPrunedEntries() {
+    return prunedEntries;
+  }
+
+  public int getPrunedCount() {
+    return prunedEntries.size();
+  }
+
+  /**
+   * Whether a non-zero entry was dropped that other clocks may still carry, in which case comparing
+   * them with this clock could report CONCURRENT for events that are in fact ordered.
+   */
+  public boolean isFalseConcurrencyPossible() {
+    return falseConcurrencyPossible;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("PruningReport [pruned:").append(prunedEntries)
+        .append(", falseConcurrencyPossible:").append(falseConcurrencyPossible).append("]");
+    return builder.toString();
+  }
+
+}
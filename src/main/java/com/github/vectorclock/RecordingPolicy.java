@@ -0,0 +1,100 @@
+package com.github.vectorclock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Decides how {@link IVectorClock#recordEvent(Event)} deals with other threads recording events on
+ * the same clock at the same time:<br/>
+ *
+ * 1. BLOCKING waits for the clock's write lock for as long as it takes, this is the default<br/>
+ * 2. TIMED waits up to a timeout and then fails with an IllegalStateException<br/>
+ * 3. LOCK_FREE ticks LOCAL and SEND events with compare-and-set and never takes the write lock for
+ * them, RECEIVE events still wait for the write lock<br/>
+ * 4. TRY_LOCK gives up immediately and returns a null transition, the event is not recorded<br/>
+ *
+ * @author gaurav
+ */
+public final class RecordingPolicy {
+  private static final RecordingPolicy TRY_LOCK = new RecordingPolicy(Mode.TRY_LOCK, 0L);
+  private static final RecordingPolicy BLOCKING = new RecordingPolicy(Mode.BLOCKING, 0L);
+  private static final RecordingPolicy LOCK_FREE = new RecordingPolicy(Mode.LOCK_FREE, 0L);
+
+  private final Mode mode;
+  private final long timeoutNanos;
+
+  private RecordingPolicy(final Mode mode, final long timeoutNanos) {
+    this.mode = mode;
+    this.timeoutNanos = timeoutNanos;
+  }
+
+  public static RecordingPolicy tryLock() {
+    return TRY_LOCK;
+  }
+
+  public static RecordingPolicy blocking() {
+    return BLOCKING;
+  }
+
+  public static RecordingPolicy timed(final long timeout, final TimeUnit unit) {
+    if (timeout < 0 || unit == null) {
+      throw new IllegalArgumentException("timeout must be non-negative with a valid unit");
+    }
+    return new RecordingPolicy(Mode.TIMED, unit.toNanos(timeout));
+  }
+
+  public static RecordingPolicy lockFree() {
+    return LOCK_FREE;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  // LOCAL and SEND events skip the write lock
+  boolean ticksLockFree() {
+    return mode == Mode.LOCK_FREE;
+  }
+
+  /**
+   * Acquire the given lock as per this policy. Returns false only for TRY_LOCK when the lock is
+   * held by another thread, TIMED throws if the lock could not be had in time.
+   */
+  boolean acquire(final Lock lock) {
+    switch (mode) {
+      case TRY_LOCK:
+        return lock.tryLock();
+      case TIMED:
+        try {
+          if (lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS)) {
+            return true;
+          }
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting to record event",
+              interrupted);
+        }
+        throw new IllegalStateException(
+            "Failed to record event within " + timeoutNanos + " nanos");
+      default:
+        lock.lock();
+        return true;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("RecordingPolicy[mode:").append(mode);
+    if (mode == Mode.TIMED) {
+      builder.append(", timeoutNanos:").append(timeoutNanos);
+    }
+    builder.append("]");
+    return builder.toString();
+  }
+
+  public enum Mode {
+    TRY_LOCK, BLOCKING, TIMED, LOCK_FREE;
+  }
+
+}
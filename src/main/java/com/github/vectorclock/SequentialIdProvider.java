@@ -0,0 +1,32 @@
+package com.github.vectorclock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A compact id provider handing out a sequence number in base 36 behind an optional prefix, so ids
+ * are a few characters long rather than the 36 of a random UUID and hash and compare that much
+ * faster. Ids are unique per provider, give providers in different processes distinct prefixes.
+ * 
+ * @author gaurav
+ */
+public class SequentialIdProvider implements IdProvider {
+  private final String prefix;
+  private final AtomicLong sequence = new AtomicLong();
+
+  public SequentialIdProvider() {
+    this("");
+  }
+
+  public SequentialIdProvider(final String prefix) {
+    if (prefix == null) {
+      throw new IllegalArgumentException("prefix cannot be null");
+    }
+    this.prefix = prefix;
+  }
+
+  @Override
+  public String id() {
+    return prefix + Long.toString(sequence.getAndIncrement(), Character.MAX_RADIX);
+  }
+
+}
@@ -1,9 +1,12 @@
 package com.github.vectorclock;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -13,16 +16,39 @@ import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.github.vectorclock.Event.EventType;
+
 /**
  * Models a vector clock as a dynamic array of node:logicalTimestamp for the node.
  * 
  * The class itself is not completely thread-safe but the most important {@link #recordEvent(Event)}
- * implementation uses pessimistic locking to ensure correctness.
+ * implementation uses pessimistic locking to ensure correctness. How recording behaves under
+ * contention is decided by the clock's {@link RecordingPolicy} and what it observes while recording
+ * is reported to its {@link ClockMetrics}. Its width is kept bounded as per its
+ * {@link PruningPolicy}.
+ * 
+ * Like {@link ArrayVectorClock}, every clock keeps a summary of its tstamps: their sum, their
+ * maximum and a signature with a bit per node hash modulo 64 set once that node is past 0. Two
+ * VectorClocks are compared from what their summaries prove before walking their maps. Removing or
+ * pruning a node leaves the clock comparing by walk alone, copies of it are summarized afresh.
  * 
  * @author gaurav
  */
 public final class VectorClock implements IVectorClock {
   private static final Logger logger = LogManager.getLogger(VectorClock.class.getSimpleName());
+  private static final VarHandle SUM;
+  private static final VarHandle MAX;
+  private static final VarHandle SIGNATURE;
+  static {
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      SUM = lookup.findVarHandle(VectorClock.class, "sum", long.class);
+      MAX = lookup.findVarHandle(VectorClock.class, "max", long.class);
+      SIGNATURE = lookup.findVarHandle(VectorClock.class, "signature", long.class);
+    } catch (ReflectiveOperationException problem) {
+      throw new ExceptionInInitializerError(problem);
+    }
+  }
 
   private final ReentrantReadWriteLock superLock = new ReentrantReadWriteLock(true);
   private final WriteLock writeLock = superLock.writeLock();
@@ -32,6 +58,61 @@ public final class VectorClock implements IVectorClock {
   // is inherent in a system as nodes are allowed to come and go at will
   private final ConcurrentMap<Node, LogicalTstamp> tstampVector = new ConcurrentHashMap<>();
 
+  // summary of the tstamps: their sum, their max and a bit per node hash modulo 64 for nodes past 0
+  private volatile long sum;
+  private volatile long max;
+  private volatile long signature;
+  // cleared once a tstamp went down or the sum overflowed, the summary proves nothing after that
+  private volatile boolean summarized = true;
+
+  private final RecordingPolicy recordingPolicy;
+
+  private final ClockMetrics metrics;
+
+  private final PruningPolicy pruningPolicy;
+
+  // map from nodeId:System.nanoTime() of the last update to its tstamp, kept only for pruning
+  private final ConcurrentMap<Node, Long> lastUpdated = new ConcurrentHashMap<>();
+
+  // System.nanoTime() after which the next recorded event sweeps entries past their max age
+  private volatile long nextSweepNanos;
+
+  public VectorClock() {
+    this(RecordingPolicy.blocking());
+  }
+
+  public VectorClock(final RecordingPolicy recordingPolicy) {
+    this(recordingPolicy, ClockMetrics.NOOP);
+  }
+
+  public VectorClock(final RecordingPolicy recordingPolicy, final ClockMetrics metrics) {
+    this(recordingPolicy, metrics, PruningPolicy.none());
+  }
+
+  public VectorClock(final RecordingPolicy recordingPolicy, final ClockMetrics metrics,
+      final PruningPolicy pruningPolicy) {
+    if (recordingPolicy == null || metrics == null || pruningPolicy == null) {
+      throw new IllegalArgumentException(
+          "recordingPolicy, metrics and pruningPolicy cannot be null");
+    }
+    this.recordingPolicy = recordingPolicy;
+    this.metrics = metrics;
+    this.pruningPolicy = pruningPolicy;
+    this.nextSweepNanos = System.nanoTime();
+  }
+
+  public RecordingPolicy getRecordingPolicy() {
+    return recordingPolicy;
+  }
+
+  public ClockMetrics getMetrics() {
+    return metrics;
+  }
+
+  public PruningPolicy getPruningPolicy() {
+    return pruningPolicy;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -42,7 +123,15 @@ public final class VectorClock implements IVectorClock {
     if (node == null) {
       throw new IllegalArgumentException("node cannot be null");
     }
-    tstampVector.putIfAbsent(node, new LogicalTstamp());
+    if (tstampVector.putIfAbsent(node, new LogicalTstamp()) == null && pruningPolicy.isEnabled()) {
+      touch(node);
+      writeLock.lock();
+      try {
+        pruneExcessWidth(node);
+      } finally {
+        writeLock.unlock();
+      }
+    }
   }
 
   /*
@@ -52,6 +141,9 @@ public final class VectorClock implements IVectorClock {
    */
   @Override
   public boolean removeNode(final Node node) {
+    // cleared first so that no comparison trusts a sum that still counts the removed tstamp
+    summarized = false;
+    lastUpdated.remove(node);
     return tstampVector.remove(node) != null ? true : false;
   }
 
@@ -63,25 +155,21 @@ public final class VectorClock implements IVectorClock {
    */
   @Override
   public Map<Node, LogicalTstamp> snapshot() {
-    final Map<Node, LogicalTstamp> snapshot = new TreeMap<>(new Comparator<Node>() {
-      public int compare(Node nodeOne, Node nodeTwo) {
-        return nodeOne.getId().compareTo(nodeTwo.getId());
-      }
-    });
+    final Map<Node, LogicalTstamp> snapshot = byNodeId();
     for (final Node node : tstampVector.keySet()) {
       snapshot.put(node, tstampVector.get(node).clone());
     }
-    logger.info(snapshot);
     return snapshot;
   }
 
   @Override
   public VectorClock deepCopy() {
     final Map<Node, LogicalTstamp> snapshot = snapshot();
-    final VectorClock cloned = new VectorClock();
+    final VectorClock cloned = new VectorClock(recordingPolicy, metrics, pruningPolicy);
     for (final Map.Entry<Node, LogicalTstamp> entry : snapshot.entrySet()) {
       cloned.initNodeTstampTuple(entry.getKey(), entry.getValue());
     }
+    cloned.lastUpdated.putAll(lastUpdated);
     return cloned;
   }
 
@@ -89,17 +177,21 @@ public final class VectorClock implements IVectorClock {
     if (node == null || tstamp == null) {
       throw new IllegalArgumentException("node and logical timestamp cannot be null");
     }
-    tstampVector.putIfAbsent(node, tstamp);
+    if (tstampVector.putIfAbsent(node, tstamp) == null) {
+      summarize(node, 0L, tstamp.currentValue());
+    }
   }
 
   /**
    * Compare two vector clocks and return:<br/>
    * 
-   * 1. IDENTICAL if the count and values all match<br/>
+   * 1. IDENTICAL if the values all match<br/>
    * 2. HAPPENS_BEFORE if all tstamps of clockOne happen before those of clockTwo<br/>
    * 3. HAPPENS_AFTER if all tstamps of clockOne happen after those of clockTwo<br/>
    * 4. CONCURRENT if some tstamps of clockOne and clockTwo are reverse ordered<br/>
-   * 5. NOT_COMPARABLE otherwise
+   * 
+   * A node missing from either clock counts as a tstamp of 0 in it, so clocks over differing node
+   * sets compare as if every clock held every node and the result is never NOT_COMPARABLE.
    */
   public static EventOrdering compareClocks(final IVectorClock clockOne,
       final IVectorClock clockTwo) {
@@ -108,54 +200,163 @@ public final class VectorClock implements IVectorClock {
       throw new IllegalArgumentException("Cannot compare null vector clocks");
     }
 
-    final Map<Node, LogicalTstamp> clockOneSnapshot = clockOne.snapshot();
-    final Map<Node, LogicalTstamp> clockTwoSnapshot = clockTwo.snapshot();
+    // clocks laid out over the same registry are compared slot by slot
+    if (clockOne instanceof ArrayVectorClock && clockTwo instanceof ArrayVectorClock
+        && ((ArrayVectorClock) clockOne).getRegistry() == ((ArrayVectorClock) clockTwo)
+            .getRegistry()) {
+      return ArrayVectorClock.compareClocks((ArrayVectorClock) clockOne,
+          (ArrayVectorClock) clockTwo);
+    }
+    if (clockOne instanceof PersistentVectorClock && clockTwo instanceof PersistentVectorClock
+        && ((PersistentVectorClock) clockOne).getRegistry() == ((PersistentVectorClock) clockTwo)
+            .getRegistry()) {
+      return PersistentVectorClock.compareClocks((PersistentVectorClock) clockOne,
+          (PersistentVectorClock) clockTwo);
+    }
+    if (clockOne instanceof ClockArena.ArenaClock && clockTwo instanceof ClockArena.ArenaClock
+        && ((ClockArena.ArenaClock) clockOne).getArena() == ((ClockArena.ArenaClock) clockTwo)
+            .getArena()) {
+      return ClockArena.compareClocks((ClockArena.ArenaClock) clockOne,
+          (ClockArena.ArenaClock) clockTwo);
+    }
 
-    Set<Node> clockOneNodes = clockOneSnapshot.keySet();
-    Set<Node> clockTwoNodes = clockTwoSnapshot.keySet();
+    // encoded clocks are walked in place
+    if (clockTwo instanceof EncodedVectorClock && !(clockOne instanceof EncodedVectorClock)) {
+      ordering = compareEncoded(clockOne, (EncodedVectorClock) clockTwo);
+      if (ordering != null) {
+        return ordering;
+      }
+    } else if (clockOne instanceof EncodedVectorClock
+        && !(clockTwo instanceof EncodedVectorClock)) {
+      ordering = compareEncoded(clockTwo, (EncodedVectorClock) clockOne);
+      if (ordering != null) {
+        return ordering.reverse();
+      }
+    }
 
-    // sizes differ, not comparable
-    if (clockOneNodes.size() != clockTwoNodes.size()) {
-      return EventOrdering.NOT_COMPARABLE;
+    // summaries of VectorClocks may prove either direction, or both, without walking their maps
+    boolean oneAfterTwo = false;
+    boolean twoAfterOne = false;
+    if (clockOne instanceof VectorClock && clockTwo instanceof VectorClock) {
+      final VectorClock one = (VectorClock) clockOne;
+      final VectorClock two = (VectorClock) clockTwo;
+      if (one.summarized && two.summarized) {
+        oneAfterTwo = one.provenAfter(two);
+        twoAfterOne = two.provenAfter(one);
+        if (oneAfterTwo && twoAfterOne) {
+          return EventOrdering.CONCURRENT;
+        }
+        if (one.sum == 0L && two.sum == 0L) {
+          return EventOrdering.IDENTICAL;
+        }
+      }
     }
 
-    // sizes are same but some nodes differ
-    clockOneNodes.retainAll(clockTwoNodes);
-    if (clockOneNodes.size() != clockTwoNodes.size()) {
-      return EventOrdering.NOT_COMPARABLE;
+    // walk the live maps of VectorClocks directly, only other clocks need to be snapshotted
+    final Map<Node, LogicalTstamp> clockOneVector = clockOne instanceof VectorClock
+        ? ((VectorClock) clockOne).tstampVector : clockOne.snapshot();
+    final Map<Node, LogicalTstamp> clockTwoVector = clockTwo instanceof VectorClock
+        ? ((VectorClock) clockTwo).tstampVector : clockTwo.snapshot();
+    ordering = compareVectors(clockOneVector, clockTwoVector, oneAfterTwo, twoAfterOne);
+
+    if (logger.isDebugEnabled()) {
+      logger.debug(String.format("%s and %s are %s", clockOne, clockTwo, ordering));
     }
+    return ordering;
+  }
 
-    // got here, so nodes and sizes are identical - let's iterate and compare each tstamp
+  // Compare a clock with an encoded one without decoding it, null if there is no in-place way to
+  private static EventOrdering compareEncoded(final IVectorClock clock,
+      final EncodedVectorClock encoded) {
+    if (clock instanceof ArrayVectorClock
+        && ((ArrayVectorClock) clock).getRegistry() == encoded.getDictionary()) {
+      return ArrayVectorClock.compareClocks((ArrayVectorClock) clock, encoded);
+    }
+    if (!(clock instanceof VectorClock)) {
+      return null;
+    }
+    final Map<Node, LogicalTstamp> vector = ((VectorClock) clock).tstampVector;
+    final NodeRegistry dictionary = encoded.getDictionary();
     boolean oneAfterTwo = false;
     boolean twoAfterOne = false;
-    boolean concurrent = false;
-    for (Iterator<LogicalTstamp> iterOne = clockOneSnapshot.values().iterator(), iterTwo =
-        clockTwoSnapshot.values().iterator(); iterOne.hasNext() && iterTwo.hasNext();) {
-      final LogicalTstamp tstampOne = iterOne.next();
-      final LogicalTstamp tstampTwo = iterTwo.next();
-      if (tstampOne.after(tstampTwo)) {
+    int matched = 0;
+    // tstamps past 0 of the clock that the encoded one carries as well
+    int matchedAfterZero = 0;
+    final EncodedVectorClock.Cursor cursor = encoded.cursor();
+    while (cursor.next()) {
+      final LogicalTstamp tstamp = vector.get(dictionary.node(cursor.slot()));
+      final long tstampOne = tstamp == null ? 0L : tstamp.currentValue();
+      if (tstamp != null) {
+        matched++;
+        matchedAfterZero += tstampOne > 0L ? 1 : 0;
+      }
+      if (tstampOne > cursor.tstamp()) {
         oneAfterTwo = true;
+      } else if (tstampOne < cursor.tstamp()) {
+        twoAfterOne = true;
+      }
+    }
+    // nodes of the clock that the encoded one does not carry are 0 in it, one of them is past 0
+    // if the clock has more tstamps past 0 than were matched
+    if (!oneAfterTwo && matched < vector.size()) {
+      oneAfterTwo = countAfterZero(vector) > matchedAfterZero;
+    }
+    if (oneAfterTwo && twoAfterOne) {
+      return EventOrdering.CONCURRENT;
+    } else if (oneAfterTwo) {
+      return EventOrdering.HAPPENS_AFTER;
+    } else if (twoAfterOne) {
+      return EventOrdering.HAPPENS_BEFORE;
+    }
+    return EventOrdering.IDENTICAL;
+  }
+
+  // Compare two node:tstamp vectors without copying either of them, walking vectorOne and then, if
+  // vectorTwo holds nodes that vectorOne does not, counting the tstamps of vectorTwo past 0. Either
+  // direction may already be proven by the clocks' summaries
+  private static EventOrdering compareVectors(final Map<Node, LogicalTstamp> vectorOne,
+      final Map<Node, LogicalTstamp> vectorTwo, boolean oneAfterTwo, boolean twoAfterOne) {
+    int matched = 0;
+    // tstamps past 0 of vectorTwo that vectorOne holds nodes for
+    int matchedAfterZero = 0;
+    for (final Map.Entry<Node, LogicalTstamp> entry : vectorOne.entrySet()) {
+      final LogicalTstamp tstampTwo = vectorTwo.get(entry.getKey());
+      final long valueOne = entry.getValue().currentValue();
+      final long valueTwo = tstampTwo == null ? 0L : tstampTwo.currentValue();
+      if (tstampTwo != null) {
+        matched++;
+        matchedAfterZero += valueTwo > 0L ? 1 : 0;
       }
-      if (tstampTwo.after(tstampOne)) {
+      if (valueOne > valueTwo) {
+        oneAfterTwo = true;
+      } else if (valueOne < valueTwo) {
         twoAfterOne = true;
       }
       if (oneAfterTwo && twoAfterOne) {
-        ordering = EventOrdering.CONCURRENT;
-        concurrent = true;
-        break;
+        return EventOrdering.CONCURRENT;
       }
     }
+    // nodes of vectorTwo that vectorOne does not hold are 0 in it
+    if (!twoAfterOne && matched < vectorTwo.size()) {
+      twoAfterOne = countAfterZero(vectorTwo) > matchedAfterZero;
+    }
 
-    if (oneAfterTwo && !twoAfterOne) {
-      ordering = EventOrdering.HAPPENS_AFTER;
-    } else if (!oneAfterTwo && twoAfterOne) {
-      ordering = EventOrdering.HAPPENS_BEFORE;
-    } else if (!oneAfterTwo && !twoAfterOne && !concurrent) {
-      ordering = EventOrdering.IDENTICAL;
-    } // else ordering is CONCURRENT
+    if (oneAfterTwo && twoAfterOne) {
+      return EventOrdering.CONCURRENT;
+    } else if (oneAfterTwo) {
+      return EventOrdering.HAPPENS_AFTER;
+    } else if (twoAfterOne) {
+      return EventOrdering.HAPPENS_BEFORE;
+    }
+    return EventOrdering.IDENTICAL;
+  }
 
-    logger.info(String.format("%s and %s are %s", clockOne, clockTwo, ordering));
-    return ordering;
+  private static int countAfterZero(final Map<Node, LogicalTstamp> vector) {
+    int count = 0;
+    for (final LogicalTstamp tstamp : vector.values()) {
+      count += tstamp.currentValue() > 0L ? 1 : 0;
+    }
+    return count;
   }
 
   /*
@@ -165,43 +366,48 @@ public final class VectorClock implements IVectorClock {
    */
   @Override
   public VectorClockTransition recordEvent(final Event event) {
+    final Node node = event.getImpactedNode();
+    if (event.getEventType() != EventType.RECEIVE && recordingPolicy.ticksLockFree()) {
+      tick(node);
+      metrics.eventRecorded(event.getEventType());
+      return new VectorClockTransition(event, null, false);
+    }
     VectorClockTransition transition = null;
-    if (writeLock.tryLock()) {
+    if (acquireWriteLock()) {
       try {
-        final Node node = event.getImpactedNode();
-        final LogicalTstamp current = tstampVector.get(node);
         switch (event.getEventType()) {
           case LOCAL:
           case SEND:
-            final LogicalTstamp next = current.tick();
-            tstampVector.put(node, next);
+            tick(node);
             transition = new VectorClockTransition(event, null, false);
             break;
           case RECEIVE:
             // this is expected to be typically a clone of the original clock
-            final VectorClock receivedClock = event.getSenderClock();
-
-            // clone the current clock
-            // VectorClock currentClock = clone();
+            final IVectorClock receivedClock = event.getSenderClock();
 
             // now check if the event ordering indicates concurrent events
-            final EventOrdering eventOrdering = VectorClock.compareClocks(this, receivedClock);
+            final EventOrdering eventOrdering = compareReceived(receivedClock);
 
             if (eventOrdering == EventOrdering.CONCURRENT) {
               // do not accept events that result in conflicting version updates
+              metrics.conflictDetected();
               transition = new VectorClockTransition(event, this, true);
             } else {
               // first tick current tstamp
-              final LogicalTstamp nextTstamp = current.tick();
-              tstampVector.put(node, nextTstamp);
+              tick(node);
 
               // now merge in received vector clock
-              mergeClock(receivedClock);
+              metrics.clockMerged(mergeClock(receivedClock));
+              pruneExcessWidth(node);
 
               transition = new VectorClockTransition(event, this, false);
             }
             break;
         }
+        if (!transition.isConcurrentEventConflictDetected()) {
+          metrics.eventRecorded(event.getEventType());
+        }
+        sweepIfDue();
       } finally {
         writeLock.unlock();
       }
@@ -209,16 +415,337 @@ public final class VectorClock implements IVectorClock {
     return transition;
   }
 
-  // Merge the passed clock into this clock
-  private void mergeClock(final VectorClock clock) {
-    for (final Map.Entry<Node, LogicalTstamp> entry : clock.tstampVector.entrySet()) {
-      final LogicalTstamp thisTstamp = tstampVector.get(entry.getKey());
-      if (thisTstamp != null) {
-        final LogicalTstamp receivedTstamp = entry.getValue();
-        if (thisTstamp.before(receivedTstamp)) {
-          tstampVector.put(entry.getKey(), LogicalTstamp.curate(receivedTstamp.currentValue()));
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.github.vectorclock.IVectorClock#recordEvents(java.util.List)
+   */
+  @Override
+  public BatchTransition recordEvents(final List<Event> events) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null");
+    }
+    final BitSet conflicts = new BitSet();
+    if (!acquireWriteLock()) {
+      return null;
+    }
+    try {
+      // pending run of LOCAL and SEND ticks on the same node
+      Node tickedNode = null;
+      long pendingTicks = 0L;
+      for (int index = 0; index < events.size(); index++) {
+        final Event event = events.get(index);
+        final Node node = event.getImpactedNode();
+        if (event.getEventType() != EventType.RECEIVE) {
+          if (!node.equals(tickedNode)) {
+            if (pendingTicks > 0L) {
+              tick(tickedNode, pendingTicks);
+            }
+            // a run starts only on a node of the clock so that it never counts unrecorded events
+            checkInitialized(node);
+            tickedNode = node;
+            pendingTicks = 0L;
+          }
+          pendingTicks++;
+          metrics.eventRecorded(event.getEventType());
+          continue;
+        }
+        if (pendingTicks > 0L) {
+          tick(tickedNode, pendingTicks);
+          tickedNode = null;
+          pendingTicks = 0L;
+        }
+        checkInitialized(node);
+        final IVectorClock receivedClock = event.getSenderClock();
+        if (compareReceived(receivedClock) == EventOrdering.CONCURRENT) {
+          metrics.conflictDetected();
+          conflicts.set(index);
+        } else {
+          tick(node);
+          metrics.clockMerged(mergeClock(receivedClock));
+          pruneExcessWidth(node);
+          metrics.eventRecorded(EventType.RECEIVE);
         }
       }
+      if (pendingTicks > 0L) {
+        tick(tickedNode, pendingTicks);
+      }
+      sweepIfDue();
+    } finally {
+      writeLock.unlock();
+    }
+    return new BatchTransition(events.size(), conflicts, this);
+  }
+
+  // Acquire the write lock as per the RecordingPolicy, telling the metrics if it was contended or
+  // if the policy gave up on it
+  private boolean acquireWriteLock() {
+    if (metrics.isEnabled() && superLock.isWriteLocked()) {
+      metrics.lockContended();
+    }
+    boolean acquired = false;
+    try {
+      acquired = recordingPolicy.acquire(writeLock);
+    } finally {
+      if (!acquired) {
+        metrics.eventDropped();
+      }
+    }
+    return acquired;
+  }
+
+  // Compare this clock with a received one, timing it if the metrics are interested
+  private EventOrdering compareReceived(final IVectorClock receivedClock) {
+    if (!metrics.isEnabled()) {
+      return VectorClock.compareClocks(this, receivedClock);
+    }
+    final long start = System.nanoTime();
+    final EventOrdering ordering = VectorClock.compareClocks(this, receivedClock);
+    metrics.clocksCompared(System.nanoTime() - start);
+    return ordering;
+  }
+
+  private void tick(final Node node) {
+    tick(node, 1L);
+  }
+
+  private void checkInitialized(final Node node) {
+    if (!tstampVector.containsKey(node)) {
+      throw new IllegalArgumentException(node + " is not initialized in this clock");
+    }
+  }
+
+  // Tick the node's tstamp with compare-and-set so that lock-free ticks are never lost even when
+  // they race with a receive holding the write lock
+  private void tick(final Node node, final long ticks) {
+    while (true) {
+      final LogicalTstamp current = tstampVector.get(node);
+      if (current == null) {
+        throw new IllegalArgumentException(node + " is not initialized in this clock");
+      }
+      final LogicalTstamp ticked = current.tick(ticks);
+      if (tstampVector.replace(node, current, ticked)) {
+        summarize(node, current.currentValue(), ticked.currentValue());
+        touch(node);
+        return;
+      }
+    }
+  }
+
+  // Fold the change of the node's tstamp into the summary, the updates commute with each other so
+  // lock-free ticks can race with locked writers
+  private void summarize(final Node node, final long previous, final long tstamp) {
+    if (tstamp == previous) {
+      return;
+    }
+    if (tstamp < previous
+        || (long) SUM.getAndAdd(this, tstamp - previous) + tstamp - previous < 0L) {
+      summarized = false;
+      return;
+    }
+    SIGNATURE.getAndBitwiseOr(this, 1L << node.hashCode());
+    while (true) {
+      final long currentMax = max;
+      if (currentMax >= tstamp || MAX.compareAndSet(this, currentMax, tstamp)) {
+        return;
+      }
+    }
+  }
+
+  // whether the summaries alone prove that this clock is past the other one on some node
+  private boolean provenAfter(final VectorClock other) {
+    return sum > other.sum || max > other.max || (signature & ~other.signature) != 0L;
+  }
+
+  // sum of the tstamps, as summarized
+  long sum() {
+    return sum;
+  }
+
+  // Merge the passed clock into this clock, adding the nodes it has seen events of that this clock
+  // does not hold yet and returning the count of entries it held
+  private int mergeClock(final IVectorClock clock) {
+    if (clock instanceof EncodedVectorClock) {
+      final EncodedVectorClock encoded = (EncodedVectorClock) clock;
+      final EncodedVectorClock.Cursor cursor = encoded.cursor();
+      while (cursor.next()) {
+        if (cursor.tstamp() > 0L) {
+          advanceTo(encoded.getDictionary().node(cursor.slot()),
+              LogicalTstamp.curate(cursor.tstamp()));
+        }
+      }
+      return encoded.width();
+    }
+    final Map<Node, LogicalTstamp> receivedVector =
+        clock instanceof VectorClock ? ((VectorClock) clock).tstampVector : clock.snapshot();
+    for (final Map.Entry<Node, LogicalTstamp> entry : receivedVector.entrySet()) {
+      final LogicalTstamp receivedTstamp = entry.getValue();
+      if (receivedTstamp.currentValue() > 0L) {
+        advanceTo(entry.getKey(), LogicalTstamp.curate(receivedTstamp.currentValue()));
+      }
+    }
+    return receivedVector.size();
+  }
+
+  // Move the node's tstamp up to the received one unless it is already there, adding the node if
+  // this clock does not hold it
+  private void advanceTo(final Node node, final LogicalTstamp received) {
+    while (true) {
+      final LogicalTstamp current = tstampVector.get(node);
+      if (current == null) {
+        if (tstampVector.putIfAbsent(node, received) == null) {
+          summarize(node, 0L, received.currentValue());
+          touch(node);
+          return;
+        }
+        continue;
+      }
+      if (!current.before(received)) {
+        return;
+      }
+      if (tstampVector.replace(node, current, received)) {
+        summarize(node, current.currentValue(), received.currentValue());
+        touch(node);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Prune the entries that are past the max width or max age of the clock's PruningPolicy right
+   * away rather than waiting for the next recorded event to sweep them.
+   */
+  public PruningReport prune() {
+    writeLock.lock();
+    try {
+      return pruneEntries(null);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Garbage collect the entries of nodes that are no longer live once every live peer has observed
+   * them, that is once the last clock received from every live node carries at least this clock's
+   * tstamp for them. Such an entry can no longer tell any two future clocks apart, but clocks
+   * taken before the collection still carry it and may then compare as concurrent with this one.
+   * Dropping it is safe only if every clock drops it together, so a non-zero entry is reported as
+   * one that could make a later comparison come out as concurrent when it is not.
+   */
+  public PruningReport collectStable(final Map<Node, ? extends IVectorClock> livePeers) {
+    if (livePeers == null || livePeers.isEmpty()) {
+      throw new IllegalArgumentException("livePeers cannot be null or empty");
+    }
+    final List<Map<Node, LogicalTstamp>> peerVectors = new ArrayList<>(livePeers.size());
+    for (final IVectorClock peerClock : livePeers.values()) {
+      if (peerClock == null) {
+        throw new IllegalArgumentException("livePeers cannot have null clocks");
+      }
+      peerVectors.add(peerClock.snapshot());
+    }
+    final Map<Node, LogicalTstamp> pruned = byNodeId();
+    writeLock.lock();
+    try {
+      for (final Map.Entry<Node, LogicalTstamp> entry : tstampVector.entrySet()) {
+        if (livePeers.containsKey(entry.getKey())) {
+          continue;
+        }
+        boolean observed = true;
+        for (final Map<Node, LogicalTstamp> peerVector : peerVectors) {
+          final LogicalTstamp peerTstamp = peerVector.get(entry.getKey());
+          if (peerTstamp == null ? entry.getValue().currentValue() > 0L
+              : peerTstamp.before(entry.getValue())) {
+            observed = false;
+            break;
+          }
+        }
+        if (observed) {
+          pruned.put(entry.getKey(), entry.getValue());
+        }
+      }
+      for (final Node node : pruned.keySet()) {
+        removeNode(node);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+    return reportPruned(pruned);
+  }
+
+  // Prune the clock back to its max width if nodes were added, the write lock must be held
+  private void pruneExcessWidth(final Node keptNode) {
+    if (pruningPolicy.getMaxWidth() > 0 && tstampVector.size() > pruningPolicy.getMaxWidth()) {
+      pruneEntries(keptNode);
+    }
+  }
+
+  // Sweep entries past their max age if it has been a while, the write lock must be held
+  private void sweepIfDue() {
+    if (pruningPolicy.getMaxAgeNanos() > 0L && System.nanoTime() - nextSweepNanos >= 0L) {
+      pruneEntries(null);
+    }
+  }
+
+  // Drop the entries past the PruningPolicy's max age, then the least recently updated ones past
+  // its max width, never the given node, the write lock must be held
+  private PruningReport pruneEntries(final Node keptNode) {
+    final Map<Node, LogicalTstamp> pruned = byNodeId();
+    if (!pruningPolicy.isEnabled()) {
+      return new PruningReport(pruned, false);
+    }
+    final long now = System.nanoTime();
+    final List<Map.Entry<Node, Long>> entries = new ArrayList<>(lastUpdated.entrySet());
+    entries.sort(Map.Entry.comparingByValue());
+    int width = tstampVector.size();
+    for (final Map.Entry<Node, Long> entry : entries) {
+      final boolean expired = pruningPolicy.getMaxAgeNanos() > 0L
+          && now - entry.getValue() > pruningPolicy.getMaxAgeNanos();
+      final boolean excess =
+          pruningPolicy.getMaxWidth() > 0 && width > pruningPolicy.getMaxWidth();
+      if (!expired && !excess) {
+        // least recently updated first, so no later entry is expired either
+        break;
+      }
+      if (entry.getKey().equals(keptNode)) {
+        continue;
+      }
+      final LogicalTstamp tstamp = tstampVector.get(entry.getKey());
+      if (removeNode(entry.getKey())) {
+        pruned.put(entry.getKey(), tstamp);
+        width--;
+      }
+    }
+    if (pruningPolicy.getMaxAgeNanos() > 0L) {
+      nextSweepNanos = now + pruningPolicy.getMaxAgeNanos() / 2;
+    }
+    return reportPruned(pruned);
+  }
+
+  // Report the pruned entries to the metrics, a non-zero one could make a later comparison with a
+  // clock that still holds it come out as concurrent
+  private PruningReport reportPruned(final Map<Node, LogicalTstamp> pruned) {
+    boolean falseConcurrencyPossible = false;
+    for (final LogicalTstamp tstamp : pruned.values()) {
+      falseConcurrencyPossible |= tstamp.currentValue() > 0L;
+    }
+    if (!pruned.isEmpty()) {
+      metrics.entriesPruned(pruned.size(), falseConcurrencyPossible);
+    }
+    return new PruningReport(pruned, falseConcurrencyPossible);
+  }
+
+  private static Map<Node, LogicalTstamp> byNodeId() {
+    return new TreeMap<>(new Comparator<Node>() {
+      public int compare(Node nodeOne, Node nodeTwo) {
+        return nodeOne.getId().compareTo(nodeTwo.getId());
+      }
+    });
+  }
+
+  // Remember when the node's tstamp was last updated if the PruningPolicy needs to know
+  private void touch(final Node node) {
+    if (pruningPolicy.isEnabled()) {
+      lastUpdated.put(node, System.nanoTime());
     }
   }
 
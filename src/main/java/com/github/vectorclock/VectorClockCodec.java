@@ -0,0 +1,340 @@
+package com.github.vectorclock;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A compact, versioned binary wire format for vector clocks. Nodes are not written by id but by
+ * their slot in a {@link NodeRegistry} used as a dictionary, so both ends of the wire must share
+ * the same dictionary, for example by registering the cluster membership in the same order.
+ *
+ * Layout, every number is an unsigned LEB128 varint:<br/>
+ * 1. format version byte<br/>
+ * 2. entry count<br/>
+ * 3. per entry in ascending slot order, the slot as a delta from the previous entry's slot followed
+ * by the logical timestamp<br/>
+ *
+ * Encoding and decoding work on heap and direct buffers alike, starting at and advancing the
+ * buffer's position. {@link #wrap(ByteBuffer)} reads a clock in place so that it can be compared
+ * with or merged into another clock without copying it out of the buffer.
+ *
+ * Peers that keep exchanging clocks can send deltas instead: {@link #encodeDelta(IVectorClock,
+ * IVectorClock, ByteBuffer)} only writes the entries that changed since the last clock the peer
+ * acknowledged, using the DELTA_VERSION byte followed by the width of that acknowledged clock, a
+ * 4 byte big-endian checksum of its entries and the changed entries laid out as above. The
+ * receiving end keeps its own copy of the peer's clock, brings it up to date with
+ * {@link #applyDelta(ByteBuffer, ArrayVectorClock)} and records it as the sender clock of a
+ * RECEIVE event. A delta is refused unless that copy matches the acknowledged clock's width and
+ * checksum. ArrayVectorClocks keep their checksum up to date as they change, so checking the base
+ * of a delta does not hash the whole clock.
+ *
+ * @author gaurav
+ */
+public final class VectorClockCodec {
+  public static final byte VERSION = 1;
+  public static final byte DELTA_VERSION = 2;
+
+  private final NodeRegistry dictionary;
+
+  public VectorClockCodec(final NodeRegistry dictionary) {
+    if (dictionary == null) {
+      throw new IllegalArgumentException("dictionary cannot be null");
+    }
+    this.dictionary = dictionary;
+  }
+
+  public NodeRegistry getDictionary() {
+    return dictionary;
+  }
+
+  // the count of bytes that encode(clock, buffer) would write
+  public int encodedSize(final IVectorClock clock) {
+    return 1 + bodySize(entries(clock));
+  }
+
+  /**
+   * Write the clock to the buffer at its position. Throws a BufferOverflowException if the buffer
+   * runs out of space, in which case the buffer's position is left where it was.
+   */
+  public void encode(final IVectorClock clock, final ByteBuffer buffer) {
+    final long[] entries = entries(clock);
+    final int start = buffer.position();
+    try {
+      buffer.put(VERSION);
+      writeBody(buffer, entries);
+    } catch (BufferOverflowException overflow) {
+      buffer.position(start);
+      throw overflow;
+    }
+  }
+
+  // the count of bytes that encodeDelta(clock, base, buffer) would write
+  public int encodedDeltaSize(final IVectorClock clock, final IVectorClock base) {
+    final long[] baseEntries = entries(base);
+    return 1 + varLongSize(baseEntries.length >>> 1) + Integer.BYTES
+        + bodySize(deltaEntries(entries(clock), baseEntries));
+  }
+
+  /**
+   * Write only the entries of the clock that are new or changed compared to base, the last clock
+   * that the receiving peer acknowledged. Deltas cannot express removed nodes, so base must not
+   * hold any node that the clock does not. Throws a BufferOverflowException if the buffer runs out
+   * of space, in which case the buffer's position is left where it was.
+   */
+  public void encodeDelta(final IVectorClock clock, final IVectorClock base,
+      final ByteBuffer buffer) {
+    final long[] baseEntries = entries(base);
+    final long[] delta = deltaEntries(entries(clock), baseEntries);
+    final int start = buffer.position();
+    try {
+      buffer.put(DELTA_VERSION);
+      writeVarLong(buffer, baseEntries.length >>> 1);
+      writeChecksum(buffer, checksum(base, baseEntries));
+      writeBody(buffer, delta);
+    } catch (BufferOverflowException overflow) {
+      buffer.position(start);
+      throw overflow;
+    }
+  }
+
+  /**
+   * Read a delta from the buffer at its position and apply it to the receiver's copy of the
+   * sending peer's clock, advancing the position past it. Only the changed entries are touched.
+   * The peer clock must be the one the delta was encoded against, a delta whose base has another
+   * width or checksum is refused with an IllegalArgumentException and the buffer's position is
+   * left where it was.
+   */
+  public void applyDelta(final ByteBuffer buffer, final ArrayVectorClock peerClock) {
+    if (peerClock.getRegistry() != dictionary) {
+      throw new IllegalArgumentException("peerClock must be laid out over the codec's dictionary");
+    }
+    final int offset = buffer.position();
+    try {
+      if (buffer.get(offset) != DELTA_VERSION) {
+        throw new IllegalArgumentException(
+            "Unsupported vector clock delta format version " + buffer.get(offset));
+      }
+      final long baseWidth = readVarLong(buffer, offset + 1);
+      if (baseWidth != peerClock.width()) {
+        throw new IllegalArgumentException("Delta was encoded against a clock of " + baseWidth
+            + " nodes but the peer clock has " + peerClock.width());
+      }
+      final int checksumIndex = offset + 1 + varLongSize(baseWidth);
+      if (readChecksum(buffer, checksumIndex) != fold(peerClock.checksum())) {
+        throw new IllegalArgumentException(
+            "Delta was encoded against another clock than the peer clock");
+      }
+      buffer.position(checksumIndex + Integer.BYTES);
+      peerClock.overlay(readBody(buffer));
+    } catch (IndexOutOfBoundsException truncated) {
+      buffer.position(offset);
+      throw new IllegalArgumentException("Encoded vector clock delta is truncated", truncated);
+    } catch (IllegalArgumentException malformed) {
+      buffer.position(offset);
+      throw malformed;
+    }
+  }
+
+  // Read a clock from the buffer at its position into a new ArrayVectorClock over the dictionary
+  public ArrayVectorClock decode(final ByteBuffer buffer) {
+    return wrap(buffer).deepCopy();
+  }
+
+  /**
+   * Read a clock in place from the buffer at its position, advancing the position past it. The
+   * returned clock is a read-only view that is only valid for as long as those bytes of the buffer
+   * are left untouched.
+   */
+  public EncodedVectorClock wrap(final ByteBuffer buffer) {
+    final int offset = buffer.position();
+    try {
+      if (buffer.get(offset) != VERSION) {
+        throw new IllegalArgumentException(
+            "Unsupported vector clock format version " + buffer.get(offset));
+      }
+      buffer.position(offset + 1);
+      return readBody(buffer);
+    } catch (IndexOutOfBoundsException truncated) {
+      buffer.position(offset);
+      throw new IllegalArgumentException("Encoded vector clock is truncated", truncated);
+    } catch (IllegalArgumentException malformed) {
+      buffer.position(offset);
+      throw malformed;
+    }
+  }
+
+  // Validate the entry count and entries at the buffer's position and advance past them
+  private EncodedVectorClock readBody(final ByteBuffer buffer) {
+    int position = buffer.position();
+    final long count = readVarLong(buffer, position);
+    position += varLongSize(count);
+    if (count > dictionary.size()) {
+      throw new IllegalArgumentException("Encoded vector clock has more entries than nodes known");
+    }
+    final int entriesOffset = position;
+    long slot = 0L;
+    for (long iter = 0; iter < count; iter++) {
+      final long slotDelta = readVarLong(buffer, position);
+      position += varLongSize(slotDelta);
+      if (iter > 0 && slotDelta == 0L) {
+        throw new IllegalArgumentException("Encoded vector clock repeats slot " + slot);
+      }
+      slot += slotDelta;
+      if (slot >= dictionary.size()) {
+        throw new IllegalArgumentException("Encoded vector clock refers to unknown slot " + slot);
+      }
+      position += varLongSize(readVarLong(buffer, position));
+    }
+    buffer.position(position);
+    return new EncodedVectorClock(dictionary, buffer, entriesOffset, (int) count);
+  }
+
+  private static int bodySize(final long[] entries) {
+    int size = varLongSize(entries.length >>> 1);
+    int previousSlot = 0;
+    for (int iter = 0; iter < entries.length; iter += 2) {
+      final int slot = (int) entries[iter];
+      size += varLongSize(slot - previousSlot) + varLongSize(entries[iter + 1]);
+      previousSlot = slot;
+    }
+    return size;
+  }
+
+  private static void writeBody(final ByteBuffer buffer, final long[] entries) {
+    writeVarLong(buffer, entries.length >>> 1);
+    int previousSlot = 0;
+    for (int iter = 0; iter < entries.length; iter += 2) {
+      final int slot = (int) entries[iter];
+      writeVarLong(buffer, slot - previousSlot);
+      writeVarLong(buffer, entries[iter + 1]);
+      previousSlot = slot;
+    }
+  }
+
+  // Merge-join two slot ordered entry arrays keeping the entries of clock that differ from base
+  private static long[] deltaEntries(final long[] clock, final long[] base) {
+    final long[] delta = new long[clock.length];
+    int deltaIter = 0;
+    int baseIter = 0;
+    for (int iter = 0; iter < clock.length; iter += 2) {
+      if (baseIter < base.length && base[baseIter] < clock[iter]) {
+        throw new IllegalArgumentException(
+            "Deltas cannot express the removal of the node at slot " + base[baseIter]);
+      }
+      if (baseIter < base.length && base[baseIter] == clock[iter]) {
+        final boolean unchanged = base[baseIter + 1] == clock[iter + 1];
+        baseIter += 2;
+        if (unchanged) {
+          continue;
+        }
+      }
+      delta[deltaIter++] = clock[iter];
+      delta[deltaIter++] = clock[iter + 1];
+    }
+    if (baseIter < base.length) {
+      throw new IllegalArgumentException(
+          "Deltas cannot express the removal of the node at slot " + base[baseIter]);
+    }
+    return Arrays.copyOf(delta, deltaIter);
+  }
+
+  // Flatten the clock into slot,tstamp pairs in ascending slot order
+  private long[] entries(final IVectorClock clock) {
+    if (clock instanceof EncodedVectorClock
+        && ((EncodedVectorClock) clock).getDictionary() == dictionary) {
+      return ((EncodedVectorClock) clock).entries();
+    }
+    if (clock instanceof ArrayVectorClock
+        && ((ArrayVectorClock) clock).getRegistry() == dictionary) {
+      return ((ArrayVectorClock) clock).entries();
+    }
+    final Map<Node, LogicalTstamp> snapshot = clock.snapshot();
+    final long[] slots = new long[snapshot.size()];
+    int iter = 0;
+    for (final Map.Entry<Node, LogicalTstamp> entry : snapshot.entrySet()) {
+      final int slot = dictionary.slotIfPresent(entry.getKey());
+      if (slot < 0) {
+        throw new IllegalArgumentException(entry.getKey() + " is not in the codec's dictionary");
+      }
+      slots[iter++] = slot;
+    }
+    Arrays.sort(slots);
+    final long[] entries = new long[slots.length << 1];
+    for (iter = 0; iter < slots.length; iter++) {
+      final Node node = dictionary.node((int) slots[iter]);
+      entries[iter << 1] = slots[iter];
+      entries[(iter << 1) + 1] = snapshot.get(node).currentValue();
+    }
+    return entries;
+  }
+
+  // the checksum that tells a delta's base from other clocks of the same width, ArrayVectorClocks
+  // over the dictionary keep it up to date so only other clocks have their entries hashed
+  private int checksum(final IVectorClock clock, final long[] entries) {
+    if (clock instanceof ArrayVectorClock
+        && ((ArrayVectorClock) clock).getRegistry() == dictionary) {
+      return fold(((ArrayVectorClock) clock).checksum());
+    }
+    long checksum = 0L;
+    for (int iter = 0; iter < entries.length; iter += 2) {
+      checksum += ArrayVectorClock.entryHash((int) entries[iter], entries[iter + 1]);
+    }
+    return fold(checksum);
+  }
+
+  private static int fold(final long checksum) {
+    return (int) (checksum ^ (checksum >>> 32));
+  }
+
+  // written byte by byte so that it reads the same whatever the buffer's byte order
+  private static void writeChecksum(final ByteBuffer buffer, final int checksum) {
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      buffer.put((byte) (checksum >>> shift));
+    }
+  }
+
+  private static int readChecksum(final ByteBuffer buffer, final int index) {
+    int checksum = 0;
+    for (int iter = 0; iter < Integer.BYTES; iter++) {
+      checksum = checksum << 8 | buffer.get(index + iter) & 0xFF;
+    }
+    return checksum;
+  }
+
+  static void writeVarLong(final ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0L) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  // read the varint at the given absolute index without moving the buffer's position
+  static long readVarLong(final ByteBuffer buffer, int index) {
+    long value = 0L;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final byte current = buffer.get(index++);
+      if (shift == 63 && (current & 0x7E) != 0) {
+        // the 10th byte only has room for bit 63, anything above it would be silently dropped
+        throw new IllegalArgumentException("Encoded varint overflows 64 bits");
+      }
+      value |= (long) (current & 0x7F) << shift;
+      if ((current & 0x80) == 0) {
+        // only minimal encodings are accepted so that varLongSize(value) is the encoded length
+        if ((current == 0 && shift > 0) || value < 0L) {
+          throw new IllegalArgumentException("Encoded varint is out of range or not minimal");
+        }
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint in encoded vector clock");
+  }
+
+  static int varLongSize(final long value) {
+    final int bits = 64 - Long.numberOfLeadingZeros(value | 1L);
+    return (bits + 6) / 7;
+  }
+
+}
@@ -0,0 +1,94 @@
+package com.github.vectorclock;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link ClockKernel} that walks the arrays in vectors of the widest lanes the platform has
+ * through the incubating Vector API, rather than hoping that the JIT vectorizes a loop. Like the
+ * blocked kernel it or-s differences into the lanes and only checks for an early exit between
+ * blocks, and walks the tail of the arrays past the last whole vector one slot at a time.
+ *
+ * Built for Java 16 and later into the versioned part of the multi-release jar, and loaded by
+ * {@link ClockKernel#get()} when the JVM resolved the jdk.incubator.vector module.
+ *
+ * @author gaurav
+ */
+final class VectorKernel extends ClockKernel {
+  private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+  // slots walked between checks for an early exit, a whole number of vectors
+  private static final int BLOCK = Math.max(256, SPECIES.length());
+
+  @Override
+  int compare(final long[] one, final int oneBase, final long[] two, final int twoBase,
+      final int length, int seen) {
+    final int bound = SPECIES.loopBound(length);
+    int slot = 0;
+    while (slot < bound && seen != BOTH) {
+      final int to = Math.min(slot + BLOCK, bound);
+      // masked tstamps are below 2^63, so a lane of a difference is negative exactly when the
+      // subtrahend is the greater one and the sign bits of the or-ed lanes say what was seen
+      LongVector oneAfterTwo = LongVector.zero(SPECIES);
+      LongVector twoAfterOne = LongVector.zero(SPECIES);
+      for (; slot < to; slot += SPECIES.length()) {
+        final LongVector tstampsOne =
+            LongVector.fromArray(SPECIES, one, oneBase + slot).and(Long.MAX_VALUE);
+        final LongVector tstampsTwo =
+            LongVector.fromArray(SPECIES, two, twoBase + slot).and(Long.MAX_VALUE);
+        oneAfterTwo = oneAfterTwo.or(tstampsTwo.sub(tstampsOne));
+        twoAfterOne = twoAfterOne.or(tstampsOne.sub(tstampsTwo));
+      }
+      seen |= (int) (oneAfterTwo.reduceLanes(VectorOperators.OR) >>> 63)
+          | (int) (twoAfterOne.reduceLanes(VectorOperators.OR) >>> 63) << 1;
+    }
+    for (; slot < length && seen != BOTH; slot++) {
+      final long tstampOne = one[oneBase + slot] & Long.MAX_VALUE;
+      final long tstampTwo = two[twoBase + slot] & Long.MAX_VALUE;
+      if (tstampOne > tstampTwo) {
+        seen |= ONE_AFTER_TWO;
+      } else if (tstampOne < tstampTwo) {
+        seen |= TWO_AFTER_ONE;
+      }
+    }
+    return seen;
+  }
+
+  @Override
+  void merge(final long[] into, final int intoBase, final long[] from, final int fromBase,
+      final int length) {
+    final int bound = SPECIES.loopBound(length);
+    int slot = 0;
+    for (; slot < bound; slot += SPECIES.length()) {
+      LongVector.fromArray(SPECIES, into, intoBase + slot)
+          .max(LongVector.fromArray(SPECIES, from, fromBase + slot))
+          .intoArray(into, intoBase + slot);
+    }
+    for (; slot < length; slot++) {
+      into[intoBase + slot] = Math.max(into[intoBase + slot], from[fromBase + slot]);
+    }
+  }
+
+  @Override
+  boolean anyAfterZero(final long[] tstamps, final int base, final int length) {
+    final int bound = SPECIES.loopBound(length);
+    int slot = 0;
+    while (slot < bound) {
+      final int to = Math.min(slot + BLOCK, bound);
+      LongVector any = LongVector.zero(SPECIES);
+      for (; slot < to; slot += SPECIES.length()) {
+        any = any.or(LongVector.fromArray(SPECIES, tstamps, base + slot));
+      }
+      if ((any.reduceLanes(VectorOperators.OR) & Long.MAX_VALUE) != 0L) {
+        return true;
+      }
+    }
+    for (; slot < length; slot++) {
+      if ((tstamps[base + slot] & Long.MAX_VALUE) > 0L) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
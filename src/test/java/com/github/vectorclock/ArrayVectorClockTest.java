@@ -0,0 +1,250 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Maintain sanity and correctness of ArrayVectorClock implementation.
+ *
+ * @author gaurav
+ */
+public class ArrayVectorClockTest {
+
+  @Test
+  public void testArrayVectorClocks() {
+    final NodeRegistry registry = new NodeRegistry();
+    final Node nodeOne = new Node("a");
+    final Node nodeTwo = new Node("b");
+    final Node nodeThree = new Node("c");
+
+    final IVectorClock nodeOneClock = new ArrayVectorClock(registry);
+    final IVectorClock nodeTwoClock = new ArrayVectorClock(registry);
+    final IVectorClock nodeThreeClock = new ArrayVectorClock(registry);
+    for (final Node node : new Node[] {nodeOne, nodeTwo, nodeThree}) {
+      nodeOneClock.initNode(node);
+      nodeTwoClock.initNode(node);
+      nodeThreeClock.initNode(node);
+    }
+    for (final LogicalTstamp logicalTstamp : nodeOneClock.snapshot().values()) {
+      assertEquals(0L, logicalTstamp.currentValue());
+    }
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(nodeOneClock, nodeTwoClock));
+
+    // 1. 0,0,0 -> 1,0,0 :: nodeOne local event
+    nodeOneClock.recordEvent(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    assertEquals(1L, nodeOneClock.snapshot().get(nodeOne).currentValue());
+    assertEquals(EventOrdering.HAPPENS_AFTER,
+        VectorClock.compareClocks(nodeOneClock, nodeTwoClock));
+    assertEquals(EventOrdering.HAPPENS_BEFORE,
+        VectorClock.compareClocks(nodeTwoClock, nodeOneClock));
+
+    // 2. 0,0,0 -> 0,1,0 :: nodeTwo local event, 0,0,0 -> 0,0,1 :: nodeThree send event
+    nodeTwoClock.recordEvent(new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+    nodeThreeClock.recordEvent(new Event(EventType.SEND, nodeThree, Optional.empty()));
+
+    // 3. nodeTwo<-nodeThree receive event is concurrent and rejected
+    VectorClockTransition transition = nodeTwoClock.recordEvent(
+        new Event(EventType.RECEIVE, nodeTwo, Optional.of(nodeThreeClock.deepCopy())));
+    assertTrue(transition.isConcurrentEventConflictDetected());
+    assertEquals(0L, nodeTwoClock.snapshot().get(nodeThree).currentValue());
+
+    // 4. nodeOne<-nodeTwo's initial state is causally before, so it is merged: 1,0,0 -> 2,0,0
+    final IVectorClock zeroClock = new ArrayVectorClock(registry);
+    zeroClock.initNode(nodeOne);
+    zeroClock.initNode(nodeTwo);
+    zeroClock.initNode(nodeThree);
+    transition = nodeOneClock
+        .recordEvent(new Event(EventType.RECEIVE, nodeOne, Optional.of(zeroClock)));
+    assertFalse(transition.isConcurrentEventConflictDetected());
+    assertEquals(2L, nodeOneClock.snapshot().get(nodeOne).currentValue());
+
+    // 5. nodeThree<-nodeOne receive event: 0,0,1 vs 2,0,0 is concurrent
+    transition = nodeThreeClock
+        .recordEvent(new Event(EventType.RECEIVE, nodeThree, Optional.of(nodeOneClock)));
+    assertTrue(transition.isConcurrentEventConflictDetected());
+
+    // 6. nodeTwo's original clock 0,1,0 vs a fresh clock which has seen nothing yet
+    final IVectorClock copy = nodeTwoClock.deepCopy();
+    transition = copy.recordEvent(new Event(EventType.RECEIVE, nodeTwo, Optional.of(zeroClock)));
+    assertFalse(transition.isConcurrentEventConflictDetected());
+    assertEquals(2L, copy.snapshot().get(nodeTwo).currentValue());
+    assertEquals(1L, nodeTwoClock.snapshot().get(nodeTwo).currentValue());
+  }
+
+  @Test
+  public void testNodeMembership() {
+    final NodeRegistry registry = new NodeRegistry();
+    final IVectorClock clockOne = new ArrayVectorClock(registry);
+    final IVectorClock clockTwo = new ArrayVectorClock(registry);
+    // grow well past the initial capacity of both the registry and the clocks
+    for (int iter = 0; iter < 200; iter++) {
+      clockOne.initNode(new Node(String.valueOf(iter)));
+    }
+    for (int iter = 199; iter >= 0; iter--) {
+      clockTwo.initNode(new Node(String.valueOf(iter)));
+    }
+    assertEquals(200, clockOne.snapshot().size());
+    assertEquals(200, registry.size());
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(clockOne, clockTwo));
+
+    assertTrue(clockTwo.removeNode(new Node("150")));
+    assertFalse(clockTwo.removeNode(new Node("150")));
+    // a node missing from a clock counts as 0 in it
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(clockOne, clockTwo));
+    clockOne.recordEvent(new Event(EventType.LOCAL, new Node("150"), Optional.empty()));
+    assertEquals(EventOrdering.HAPPENS_AFTER, VectorClock.compareClocks(clockOne, clockTwo));
+
+    clockTwo.initNode(new Node("200"));
+    clockTwo.recordEvent(new Event(EventType.LOCAL, new Node("200"), Optional.empty()));
+    assertEquals(EventOrdering.CONCURRENT, VectorClock.compareClocks(clockOne, clockTwo));
+    final VectorClockCodec codec = new VectorClockCodec(registry);
+    final ByteBuffer buffer = ByteBuffer.allocate(codec.encodedSize(clockTwo));
+    codec.encode(clockTwo, buffer);
+    buffer.flip();
+    final EncodedVectorClock encodedTwo = codec.wrap(buffer);
+    assertEquals(EventOrdering.CONCURRENT, VectorClock.compareClocks(clockOne, encodedTwo));
+
+    // merging adds the nodes the receiver had never seen events of, from either clock
+    final IVectorClock clockThree = new ArrayVectorClock(registry);
+    clockThree.initNode(new Node("201"));
+    clockThree.recordEvent(new Event(EventType.RECEIVE, new Node("201"), Optional.of(clockOne)));
+    final IVectorClock clockFour = new ArrayVectorClock(registry);
+    clockFour.initNode(new Node("202"));
+    clockFour.recordEvent(new Event(EventType.RECEIVE, new Node("202"), Optional.of(encodedTwo)));
+    assertEquals(2, clockThree.snapshot().size());
+    assertEquals(2, clockFour.snapshot().size());
+    assertEquals(EventOrdering.HAPPENS_AFTER, VectorClock.compareClocks(clockThree, clockOne));
+    assertEquals(EventOrdering.HAPPENS_AFTER, VectorClock.compareClocks(clockFour, encodedTwo));
+    assertEquals(EventOrdering.CONCURRENT, VectorClock.compareClocks(clockThree, clockFour));
+  }
+
+  @Test
+  public void testSizedToMembers() {
+    // a registry that has seen many nodes does not make every new clock as wide as itself
+    final NodeRegistry registry = new NodeRegistry();
+    for (int iter = 0; iter < 10000; iter++) {
+      registry.slot(new Node(String.valueOf(iter)));
+    }
+    final ArrayVectorClock clock = new ArrayVectorClock(registry);
+    assertEquals(1, clock.capacity());
+    clock.initNode(new Node("0"));
+    clock.initNode(new Node("5"));
+    clock.recordEvent(new Event(EventType.LOCAL, new Node("5"), Optional.empty()));
+    assertTrue(clock.capacity() < 16);
+    assertTrue(clock.deepCopy().capacity() < 16);
+
+    final VectorClockCodec codec = new VectorClockCodec(registry);
+    final ByteBuffer buffer = ByteBuffer.allocate(codec.encodedSize(clock));
+    codec.encode(clock, buffer);
+    buffer.flip();
+    final ArrayVectorClock decoded = codec.decode(buffer);
+    assertEquals(6, decoded.capacity());
+    assertEquals(clock.snapshot(), decoded.snapshot());
+  }
+
+  @Test
+  public void testInteropWithVectorClock() {
+    final Node nodeOne = new Node("x");
+    final Node nodeTwo = new Node("y");
+    final IVectorClock arrayClock = new ArrayVectorClock(new NodeRegistry());
+    final IVectorClock mapClock = new VectorClock();
+    arrayClock.initNode(nodeOne);
+    arrayClock.initNode(nodeTwo);
+    mapClock.initNode(nodeOne);
+    mapClock.initNode(nodeTwo);
+
+    mapClock.recordEvent(new Event(EventType.SEND, nodeTwo, Optional.empty()));
+    assertEquals(EventOrdering.HAPPENS_BEFORE, VectorClock.compareClocks(arrayClock, mapClock));
+
+    arrayClock.recordEvent(new Event(EventType.RECEIVE, nodeOne, Optional.of(mapClock)));
+    assertEquals(1L, arrayClock.snapshot().get(nodeOne).currentValue());
+    assertEquals(1L, arrayClock.snapshot().get(nodeTwo).currentValue());
+
+    mapClock.recordEvent(new Event(EventType.RECEIVE, nodeTwo, Optional.of(arrayClock)));
+    assertEquals(EventOrdering.HAPPENS_AFTER,
+        VectorClock.compareClocks(mapClock, arrayClock.deepCopy()));
+  }
+
+  @Test
+  public void testSummarizedComparisons() {
+    final NodeRegistry registry = new NodeRegistry();
+    final Random random = new Random(22L);
+    final Node[] nodes = new Node[150];
+    for (int iter = 0; iter < nodes.length; iter++) {
+      nodes[iter] = registry.intern(new Node(String.valueOf(iter)));
+    }
+    final ArrayVectorClock[] clocks = new ArrayVectorClock[6];
+    for (int index = 0; index < clocks.length; index++) {
+      clocks[index] = new ArrayVectorClock(registry);
+      for (final Node node : nodes) {
+        clocks[index].initNode(node);
+      }
+    }
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(clocks[0], clocks[1]));
+    for (int step = 0; step < 3000; step++) {
+      final int index = random.nextInt(clocks.length);
+      final Node node = nodes[random.nextInt(nodes.length)];
+      if (step == 2000) {
+        // a removal leaves the clock comparing by scan alone
+        clocks[index].removeNode(node);
+        clocks[index].initNode(node);
+      } else if (random.nextInt(3) == 0) {
+        final IVectorClock sender = clocks[random.nextInt(3)];
+        clocks[index].recordEvent(new Event(EventType.RECEIVE, node, Optional.of(sender)));
+      } else if (random.nextInt(10) == 0) {
+        clocks[index] = clocks[random.nextInt(clocks.length)].deepCopy();
+      } else {
+        clocks[index].recordEvent(new Event(EventType.LOCAL, node, Optional.empty()));
+      }
+      for (int other = 0; other < clocks.length; other++) {
+        assertEquals(scannedOrdering(clocks[index], clocks[other]),
+            VectorClock.compareClocks(clocks[index], clocks[other]));
+      }
+      long sum = 0L;
+      for (final LogicalTstamp tstamp : clocks[index].snapshot().values()) {
+        sum += tstamp.currentValue();
+      }
+      if (step < 2000) {
+        assertEquals(sum, clocks[index].sum());
+      }
+    }
+  }
+
+  // the ordering of two clocks worked out entry by entry from their snapshots
+  static EventOrdering scannedOrdering(final IVectorClock clockOne,
+      final IVectorClock clockTwo) {
+    final Map<Node, LogicalTstamp> one = clockOne.snapshot();
+    final Map<Node, LogicalTstamp> two = clockTwo.snapshot();
+    final Set<Node> nodes = new HashSet<>(one.keySet());
+    nodes.addAll(two.keySet());
+    boolean oneAfterTwo = false;
+    boolean twoAfterOne = false;
+    for (final Node node : nodes) {
+      final long tstampOne = one.containsKey(node) ? one.get(node).currentValue() : 0L;
+      final long tstampTwo = two.containsKey(node) ? two.get(node).currentValue() : 0L;
+      oneAfterTwo |= tstampOne > tstampTwo;
+      twoAfterOne |= tstampOne < tstampTwo;
+    }
+    if (oneAfterTwo && twoAfterOne) {
+      return EventOrdering.CONCURRENT;
+    } else if (oneAfterTwo) {
+      return EventOrdering.HAPPENS_AFTER;
+    } else if (twoAfterOne) {
+      return EventOrdering.HAPPENS_BEFORE;
+    }
+    return EventOrdering.IDENTICAL;
+  }
+
+}
@@ -0,0 +1,163 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Make sure that the CausalDeliveryQueue delivers in causal order and holds bounded memory.
+ *
+ * @author gaurav
+ */
+public class CausalDeliveryQueueTest {
+  private final Node nodeA = new Node("a");
+  private final Node nodeB = new Node("b");
+  private final Node nodeC = new Node("c");
+
+  @Test
+  public void testCausalOrder() {
+    final NodeRegistry registry = new NodeRegistry();
+    final CausalDeliveryQueue<String> queueA = new CausalDeliveryQueue<>(registry, 16);
+    final CausalDeliveryQueue<String> queueB = new CausalDeliveryQueue<>(registry, 16);
+    final CausalDeliveryQueue<String> queueC = new CausalDeliveryQueue<>(registry, 16);
+
+    // a broadcasts twice, b replies to the first one after delivering it
+    final ArrayVectorClock first = queueA.stampBroadcast(nodeA);
+    final ArrayVectorClock second = queueA.stampBroadcast(nodeA);
+    assertTrue(queueB.offer(nodeA, first, "a1"));
+    assertEquals("a1", queueB.poll());
+    final ArrayVectorClock reply = queueB.stampBroadcast(nodeB);
+
+    // c hears the reply and a's second broadcast before a's first one
+    assertTrue(queueC.offer(nodeB, reply, "b1"));
+    assertTrue(queueC.offer(nodeA, second, "a2"));
+    assertNull(queueC.poll());
+    assertEquals(2, queueC.pendingCount());
+    assertTrue(queueC.offer(nodeA, first, "a1"));
+    final List<String> delivered = new ArrayList<>();
+    assertEquals(3, queueC.drainTo(delivered));
+    assertEquals("a1", delivered.get(0));
+    assertTrue(delivered.containsAll(Arrays.asList("a2", "b1")));
+    assertEquals(0, queueC.pendingCount());
+
+    // redelivered messages are discarded
+    assertTrue(queueC.offer(nodeA, first, "a1"));
+    assertNull(queueC.poll());
+    assertEquals(1L, queueC.getDuplicates());
+
+    // plain vector clocks work as well, as long as their entries count broadcasts
+    final IVectorClock clock = new VectorClock();
+    clock.initNode(nodeC);
+    clock.recordEvent(new Event(EventType.SEND, nodeC, Optional.empty()));
+    assertTrue(queueA.offer(nodeC, clock, "c1"));
+    assertEquals("c1", queueA.poll());
+    assertEquals(EventOrdering.HAPPENS_AFTER,
+        VectorClock.compareClocks(queueA.delivered(), clock));
+  }
+
+  @Test
+  public void testBackpressure() throws Exception {
+    final CausalDeliveryQueue<String> queue = new CausalDeliveryQueue<>(new NodeRegistry(), 2);
+    final CausalDeliveryQueue<String> sender =
+        new CausalDeliveryQueue<>(queue.getRegistry(), 2);
+    final ArrayVectorClock first = sender.stampBroadcast(nodeA);
+    final ArrayVectorClock second = sender.stampBroadcast(nodeA);
+    final ArrayVectorClock third = sender.stampBroadcast(nodeA);
+    final ArrayVectorClock fourth = sender.stampBroadcast(nodeA);
+    final ArrayVectorClock fifth = sender.stampBroadcast(nodeA);
+
+    assertTrue(queue.offer(nodeA, third, "a3"));
+    assertTrue(queue.offer(nodeA, second, "a2"));
+    assertFalse(queue.offer(nodeA, fourth, "a4"));
+    assertFalse(queue.offer(nodeA, fourth, "a4", 10L, TimeUnit.MILLISECONDS));
+    // a full queue still lets in the message everything waits for
+    assertTrue(queue.offer(nodeA, first, "a1"));
+    assertEquals(3, queue.readyCount());
+    assertFalse(queue.offer(nodeA, fourth, "a4"));
+
+    // a blocked producer gets in once a consumer makes room
+    final AtomicReference<Exception> failure = new AtomicReference<>();
+    final Thread producer = new Thread(() -> {
+      try {
+        queue.put(nodeA, fifth, "a5");
+        queue.put(nodeA, fourth, "a4");
+      } catch (Exception problem) {
+        failure.set(problem);
+      }
+    });
+    producer.start();
+    final List<String> delivered = new ArrayList<>();
+    while (delivered.size() < 5) {
+      delivered.add(queue.poll(10L, TimeUnit.SECONDS));
+    }
+    producer.join();
+    assertNull(failure.get());
+    assertEquals(Arrays.asList("a1", "a2", "a3", "a4", "a5"), delivered);
+  }
+
+  @Test
+  public void testConcurrentProducers() throws Exception {
+    // message j of every node depends on message j of the node before it
+    final int nodeCount = 4;
+    final int messageCount = 500;
+    final NodeRegistry registry = new NodeRegistry();
+    final CausalDeliveryQueue<int[]> queue = new CausalDeliveryQueue<>(registry, 16);
+    final Node[] nodes = new Node[nodeCount];
+    for (int node = 0; node < nodeCount; node++) {
+      nodes[node] = new Node(String.valueOf(node));
+    }
+    final AtomicReference<Exception> failure = new AtomicReference<>();
+    final Thread[] producers = new Thread[nodeCount];
+    for (int node = 0; node < nodeCount; node++) {
+      final int sender = node;
+      producers[node] = new Thread(() -> {
+        try {
+          for (int message = 1; message <= messageCount; message++) {
+            final long[] entries = sender == 0 ? new long[] {registry.slot(nodes[0]), message}
+                : new long[] {registry.slot(nodes[sender - 1]), message,
+                    registry.slot(nodes[sender]), message};
+            queue.put(nodes[sender], ArrayVectorClock.fromEntries(registry, entries),
+                new int[] {sender, message});
+          }
+        } catch (Exception problem) {
+          failure.set(problem);
+        }
+      });
+    }
+    // register in slot order so that the entries above are laid out ascending
+    for (final Node node : nodes) {
+      registry.slot(node);
+    }
+    for (final Thread producer : producers) {
+      producer.start();
+    }
+
+    final int[] deliveredCounts = new int[nodeCount];
+    for (int iter = 0; iter < nodeCount * messageCount; iter++) {
+      final int[] message = queue.poll(10L, TimeUnit.SECONDS);
+      final int sender = message[0];
+      assertEquals(deliveredCounts[sender] + 1, message[1]);
+      assertTrue(sender == 0 || deliveredCounts[sender - 1] >= message[1]);
+      deliveredCounts[sender]++;
+      assertTrue(queue.size() <= queue.getCapacity() + 1);
+    }
+    for (final Thread producer : producers) {
+      producer.join();
+    }
+    assertNull(failure.get());
+    assertEquals(0, queue.pendingCount());
+  }
+
+}
@@ -0,0 +1,141 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Make sure that ordering queries answered by the CausalHistory index match comparing the clocks of
+ * the logged events pairwise.
+ *
+ * @author gaurav
+ */
+public class CausalHistoryTest {
+
+  @Test
+  public void testLatestCommonAncestors() {
+    final Node nodeOne = new Node("1");
+    final Node nodeTwo = new Node("2");
+    final Node nodeThree = new Node("3");
+    final CausalHistory history = new CausalHistory();
+    final IVectorClock clockOne = new VectorClock();
+    final IVectorClock clockTwo = new VectorClock();
+    final IVectorClock clockThree = new VectorClock();
+    clockOne.initNode(nodeOne);
+    clockTwo.initNode(nodeTwo);
+    clockThree.initNode(nodeThree);
+
+    final int base = history.record(clockOne, new Event(EventType.SEND, nodeOne, Optional.empty()));
+    final int fork =
+        history.record(clockTwo, new Event(EventType.RECEIVE, nodeTwo, Optional.of(clockOne)));
+    final int left =
+        history.record(clockOne, new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    final int right =
+        history.record(clockTwo, new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+    final int other =
+        history.record(clockThree, new Event(EventType.LOCAL, nodeThree, Optional.empty()));
+    // clockOne has moved on concurrently, so the receive is rejected and not logged
+    assertEquals(-1,
+        history.record(clockTwo, new Event(EventType.RECEIVE, nodeTwo, Optional.of(clockOne))));
+    assertEquals(5, history.size());
+
+    assertTrue(history.happenedBefore(base, right));
+    assertFalse(history.happenedBefore(right, right));
+    assertEquals(EventOrdering.CONCURRENT, history.compare(left, right));
+    assertArrayEquals(new int[] {fork, right, other}, history.concurrentWith(left));
+    assertEquals(3, history.countConcurrentWith(left));
+    assertArrayEquals(new int[] {base}, history.latestCommonAncestors(left, right));
+    assertArrayEquals(new int[] {fork}, history.latestCommonAncestors(fork, right));
+    assertArrayEquals(new int[0], history.latestCommonAncestors(left, other));
+    assertEquals(nodeTwo, history.getNode(right));
+    assertEquals(EventOrdering.IDENTICAL,
+        VectorClock.compareClocks(history.getClock(right), clockTwo));
+
+    try {
+      history.append(nodeOne, history.getClock(base));
+      fail("a node's events must tick its own tstamp");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void testIndexMatchesPairwiseComparison() {
+    final Random random = new Random(11L);
+    final int nodeCount = 5;
+    final CausalHistory history = new CausalHistory();
+    final Node[] nodes = new Node[nodeCount];
+    final IVectorClock[] clocks = new IVectorClock[nodeCount];
+    for (int node = 0; node < nodeCount; node++) {
+      nodes[node] = new Node(String.valueOf(node));
+      clocks[node] = new VectorClock();
+      clocks[node].initNode(nodes[node]);
+    }
+    final List<IVectorClock> loggedClocks = new ArrayList<>();
+    while (loggedClocks.size() < 300) {
+      final int node = random.nextInt(nodeCount);
+      final Event event;
+      if (random.nextInt(3) == 0) {
+        final int sender = random.nextInt(nodeCount);
+        event = new Event(EventType.RECEIVE, nodes[node], Optional.of(clocks[sender].deepCopy()));
+      } else {
+        event = new Event(EventType.LOCAL, nodes[node], Optional.empty());
+      }
+      if (history.record(clocks[node], event) >= 0) {
+        loggedClocks.add(clocks[node].deepCopy());
+      }
+    }
+
+    for (int x = 0; x < loggedClocks.size(); x++) {
+      final List<Integer> concurrent = new ArrayList<>();
+      for (int y = 0; y < loggedClocks.size(); y++) {
+        final EventOrdering expected = x == y ? EventOrdering.IDENTICAL
+            : VectorClock.compareClocks(loggedClocks.get(x), loggedClocks.get(y));
+        assertEquals(expected, history.compare(x, y));
+        if (expected == EventOrdering.CONCURRENT) {
+          concurrent.add(y);
+        }
+      }
+      assertArrayEquals(concurrent.stream().mapToInt(Integer::intValue).toArray(),
+          history.concurrentWith(x));
+    }
+
+    for (int iter = 0; iter < 200; iter++) {
+      final int x = random.nextInt(loggedClocks.size());
+      final int y = random.nextInt(loggedClocks.size());
+      assertArrayEquals(commonAncestors(history, x, y), history.latestCommonAncestors(x, y));
+    }
+  }
+
+  // the maximal events among those that happened before or are both x and y, by brute force
+  private static int[] commonAncestors(final CausalHistory history, final int x, final int y) {
+    final List<Integer> common = new ArrayList<>();
+    for (int z = 0; z < history.size(); z++) {
+      if ((z == x || history.happenedBefore(z, x)) && (z == y || history.happenedBefore(z, y))) {
+        common.add(z);
+      }
+    }
+    final List<Integer> maximal = new ArrayList<>();
+    for (final int z : common) {
+      boolean dominated = false;
+      for (final int other : common) {
+        dominated |= history.happenedBefore(z, other);
+      }
+      if (!dominated) {
+        maximal.add(z);
+      }
+    }
+    return maximal.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+}
@@ -0,0 +1,155 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.vectorclock.ClockArena.ArenaClock;
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Maintain sanity and correctness of ClockArena implementation.
+ *
+ * @author gaurav
+ */
+public class ClockArenaTest {
+
+  @Test
+  public void testMatchesArrayVectorClock() {
+    final NodeRegistry registry = new NodeRegistry();
+    final Random random = new Random(24L);
+    final int clockCount = 4;
+    final int nodeCount = 200;
+    // clocks span chunks of three
+    final ClockArena arena = new ClockArena(registry, nodeCount, 3);
+    final IVectorClock[] arenaClocks = new IVectorClock[clockCount];
+    final IVectorClock[] arrayClocks = new IVectorClock[clockCount];
+    for (int index = 0; index < clockCount; index++) {
+      arenaClocks[index] = arena.allocate();
+      arrayClocks[index] = new ArrayVectorClock(registry);
+      for (int slot = index; slot < nodeCount; slot += clockCount) {
+        arenaClocks[index].initNode(new Node(String.valueOf(slot)));
+        arrayClocks[index].initNode(new Node(String.valueOf(slot)));
+      }
+    }
+    for (int step = 0; step < 2000; step++) {
+      final int index = random.nextInt(clockCount);
+      final Node node = new Node(String.valueOf(index + clockCount * random.nextInt(10)));
+      if (random.nextInt(4) == 0) {
+        final int sender = random.nextInt(clockCount);
+        // senders alternate between arena clocks and on-heap ones
+        final IVectorClock senderClock =
+            step % 2 == 0 ? arenaClocks[sender] : arrayClocks[sender].deepCopy();
+        final VectorClockTransition arenaTransition = arenaClocks[index]
+            .recordEvent(new Event(EventType.RECEIVE, node, Optional.of(senderClock)));
+        final VectorClockTransition arrayTransition = arrayClocks[index].recordEvent(
+            new Event(EventType.RECEIVE, node, Optional.of(arrayClocks[sender])));
+        assertEquals(arrayTransition.isConcurrentEventConflictDetected(),
+            arenaTransition.isConcurrentEventConflictDetected());
+      } else {
+        arenaClocks[index].recordEvent(new Event(EventType.SEND, node, Optional.empty()));
+        arrayClocks[index].recordEvent(new Event(EventType.SEND, node, Optional.empty()));
+      }
+      final int other = random.nextInt(clockCount);
+      assertEquals(VectorClock.compareClocks(arrayClocks[index], arrayClocks[other]),
+          VectorClock.compareClocks(arenaClocks[index], arenaClocks[other]));
+      assertEquals(EventOrdering.IDENTICAL,
+          VectorClock.compareClocks(arenaClocks[index], arrayClocks[index]));
+    }
+    for (int index = 0; index < clockCount; index++) {
+      assertEquals(arrayClocks[index].snapshot(), arenaClocks[index].snapshot());
+      assertEquals(arrayClocks[index].snapshot(), arenaClocks[index].deepCopy().snapshot());
+    }
+    final BatchTransition batch = arenaClocks[1].recordEvents(
+        Arrays.asList(new Event(EventType.LOCAL, new Node("1"), Optional.empty()),
+            new Event(EventType.RECEIVE, new Node("1"), Optional.of(arenaClocks[2]))));
+    assertEquals(2, batch.getEventCount());
+    final Node removed = new Node("0");
+    assertTrue(arenaClocks[0].removeNode(removed));
+    assertFalse(arenaClocks[0].removeNode(removed));
+    assertEquals(nodeCount / clockCount - 1, arenaClocks[0].snapshot().size());
+  }
+
+  @Test
+  public void testFreedSlotsAreReused() {
+    final NodeRegistry registry = new NodeRegistry();
+    final Node node = new Node("a");
+    final ClockArena arena = new ClockArena(registry, 8, 2);
+    final ArenaClock[] clocks = new ArenaClock[5];
+    for (int index = 0; index < clocks.length; index++) {
+      clocks[index] = arena.allocate();
+      clocks[index].initNode(node);
+      clocks[index].recordEvent(new Event(EventType.LOCAL, node, Optional.empty()));
+    }
+    assertEquals(5, arena.size());
+    assertEquals(6L, arena.capacity());
+
+    arena.free(clocks[3]);
+    assertEquals(4, arena.size());
+    try {
+      clocks[3].snapshot();
+      fail("Expected a freed clock to be rejected");
+    } catch (IllegalStateException expected) {
+    }
+    try {
+      arena.free(clocks[3]);
+      fail("Expected a double free to be rejected");
+    } catch (IllegalStateException expected) {
+    }
+
+    // the freed slot comes back empty and the stale view stays dead
+    final ArenaClock reused = arena.allocate();
+    assertEquals(6L, arena.capacity());
+    assertTrue(reused.snapshot().isEmpty());
+    try {
+      clocks[3].recordEvent(new Event(EventType.LOCAL, node, Optional.empty()));
+      fail("Expected a freed clock to be rejected");
+    } catch (IllegalStateException expected) {
+    }
+    reused.initNode(node);
+    assertEquals(EventOrdering.HAPPENS_BEFORE, VectorClock.compareClocks(reused, clocks[0]));
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(clocks[0], clocks[0]));
+
+    for (int index = 0; index < 4; index++) {
+      arena.allocate();
+    }
+    assertEquals(9, arena.size());
+    assertEquals(10L, arena.capacity());
+  }
+
+  @Test
+  public void testWidthIsEnforced() {
+    final NodeRegistry registry = new NodeRegistry();
+    final ClockArena arena = new ClockArena(registry, 2);
+    final ArenaClock clock = arena.allocate();
+    clock.initNode(new Node("a"));
+    clock.initNode(new Node("b"));
+    try {
+      clock.initNode(new Node("c"));
+      fail("Expected a node past the arena's width to be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    final ArrayVectorClock wide = new ArrayVectorClock(registry);
+    wide.initNode(new Node("c"));
+    wide.recordEvent(new Event(EventType.LOCAL, new Node("c"), Optional.empty()));
+    try {
+      clock.recordEvent(new Event(EventType.RECEIVE, new Node("a"), Optional.of(wide)));
+      fail("Expected a sender clock past the arena's width to be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      new ClockArena(new NodeRegistry(), 0);
+      fail("Expected an empty width to be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+}
@@ -0,0 +1,112 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Make sure that a ClockEventLoop records every submitted event exactly once.
+ *
+ * @author gaurav
+ */
+public class ClockEventLoopTest {
+  private static final int producerCount = 32;
+  private static final int eventsPerProducer = 2_000;
+
+  @Test
+  public void testFanIn() throws Exception {
+    final Node node = new Node("receiver");
+    final Node sender = new Node("sender");
+    final IVectorClock clock = new ArrayVectorClock(new NodeRegistry());
+    clock.initNode(node);
+    clock.initNode(sender);
+    final IVectorClock senderClock = clock.deepCopy();
+
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    try (ClockEventLoop loop = new ClockEventLoop(clock)) {
+      final Thread[] producers = new Thread[producerCount];
+      for (int iter = 0; iter < producerCount; iter++) {
+        final Event event = iter % 2 == 0 ? new Event(EventType.LOCAL, node, Optional.empty())
+            : new Event(EventType.RECEIVE, node, Optional.of(senderClock));
+        producers[iter] = new Thread(() -> {
+          final List<CompletableFuture<VectorClockTransition>> futures = new ArrayList<>();
+          for (int submitted = 0; submitted < eventsPerProducer; submitted++) {
+            futures.add(loop.submit(event));
+          }
+          try {
+            for (final CompletableFuture<VectorClockTransition> future : futures) {
+              assertFalse(future.get(10L, TimeUnit.SECONDS).isConcurrentEventConflictDetected());
+            }
+          } catch (Throwable problem) {
+            failure.set(problem);
+          }
+        });
+        producers[iter].start();
+      }
+      for (final Thread producer : producers) {
+        producer.join();
+      }
+    }
+    assertNull(failure.get());
+    assertEquals((long) producerCount * eventsPerProducer,
+        clock.snapshot().get(node).currentValue());
+  }
+
+  @Test
+  public void testFailuresAndClose() throws Exception {
+    final Node node = new Node("1");
+    final Node otherNode = new Node("2");
+    final IVectorClock clock = new VectorClock();
+    clock.initNode(node);
+    clock.initNode(otherNode);
+    final IVectorClock concurrentClock = clock.deepCopy();
+    concurrentClock.recordEvent(new Event(EventType.LOCAL, otherNode, Optional.empty()));
+
+    final ClockEventLoop loop = new ClockEventLoop(clock);
+    assertNull(loop.submit(new Event(EventType.LOCAL, node, Optional.empty())).get()
+        .getReceiverVectorClock());
+    assertTrue(loop.submit(new Event(EventType.RECEIVE, node, Optional.of(concurrentClock)))
+        .get().isConcurrentEventConflictDetected());
+    try {
+      loop.submit(new Event(EventType.LOCAL, new Node("3"), Optional.empty())).get();
+      fail("the clock does not hold node 3");
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof IllegalArgumentException);
+    }
+
+    // events queued before closing are still recorded, those after are rejected
+    final List<CompletableFuture<VectorClockTransition>> queued = new ArrayList<>();
+    for (int iter = 0; iter < 1_000; iter++) {
+      queued.add(loop.submit(new Event(EventType.LOCAL, node, Optional.empty())));
+    }
+    // an interrupt does not cut the wait short, it is still pending once close() returns
+    Thread.currentThread().interrupt();
+    loop.close();
+    assertTrue(Thread.interrupted());
+    for (final CompletableFuture<VectorClockTransition> future : queued) {
+      assertTrue(future.isDone() && !future.isCompletedExceptionally());
+    }
+    assertEquals(1_001L, clock.snapshot().get(node).currentValue());
+    try {
+      loop.submit(new Event(EventType.LOCAL, node, Optional.empty())).get();
+      fail("the loop is closed");
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof IllegalStateException);
+    }
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Maintain sanity and correctness of the kernels over clocks laid out by slot.
+ *
+ * @author gaurav
+ */
+public class ClockKernelTest {
+
+  @Test
+  public void testKernelsAgree() {
+    final ClockKernel scalar = ClockKernel.of("scalar");
+    final List<ClockKernel> kernels = new ArrayList<>();
+    kernels.add(ClockKernel.of("blocked"));
+    // the build and surefire add the vector kernel and its module on Java 16 and later
+    if (Runtime.version().feature() >= 16) {
+      assertNotNull(ClockKernel.vector());
+      kernels.add(ClockKernel.of("vector"));
+    }
+    final Random random = new Random(23L);
+    for (int iter = 0; iter < 500; iter++) {
+      final long[] one = new long[random.nextInt(1200)];
+      final long[] two = new long[random.nextInt(1200)];
+      fill(one, random);
+      fill(two, random);
+      // most pairs differ only in one spot, or not at all, so that walks run to the end
+      final int common = Math.min(one.length, two.length);
+      System.arraycopy(one, 0, two, 0, random.nextBoolean() ? common : common / 2);
+      if (common > 0 && random.nextBoolean()) {
+        final int slot = random.nextInt(common);
+        two[slot] = Math.max(two[slot] + random.nextInt(3) - 1, 0L);
+      }
+      if (one.length > 0 && random.nextInt(4) == 0) {
+        // a slot forwarded by ArrayVectorClock reads as its tstamp
+        one[random.nextInt(one.length)] |= Long.MIN_VALUE;
+      }
+      final EventOrdering expected = scanned(one, two);
+      assertEquals(expected, scalar.compare(one, 0, one.length, two, 0, two.length, 0));
+      for (final ClockKernel kernel : kernels) {
+        assertEquals(expected, kernel.compare(one, 0, one.length, two, 0, two.length, 0));
+        assertEquals(expected.reverse(),
+            kernel.compare(two, 0, two.length, one, 0, one.length, 0));
+      }
+
+      final long[] merged = new long[Math.max(one.length, two.length)];
+      final long[] scalarMerged = merged.clone();
+      final long[][] kernelMerged = new long[kernels.size()][merged.length];
+      for (final long[] clock : new long[][] {masked(one), two}) {
+        for (int slot = 0; slot < clock.length; slot++) {
+          merged[slot] = Math.max(merged[slot], clock[slot]);
+        }
+        scalar.merge(scalarMerged, 0, clock, 0, clock.length);
+        for (int kernel = 0; kernel < kernels.size(); kernel++) {
+          kernels.get(kernel).merge(kernelMerged[kernel], 0, clock, 0, clock.length);
+        }
+      }
+      assertArrayEquals(merged, scalarMerged);
+      for (final long[] kernelMerge : kernelMerged) {
+        assertArrayEquals(merged, kernelMerge);
+      }
+    }
+    assertEquals(EventOrdering.IDENTICAL, ClockKernel.get().compare(new long[0], 0, 0,
+        new long[] {0L, 0L}, 0, 2, 0));
+  }
+
+  private static void fill(final long[] tstamps, final Random random) {
+    for (int slot = 0; slot < tstamps.length; slot++) {
+      tstamps[slot] = random.nextInt(4) == 0 ? 0L : 1L + random.nextInt(1000);
+    }
+  }
+
+  private static long[] masked(final long[] tstamps) {
+    final long[] masked = new long[tstamps.length];
+    for (int slot = 0; slot < tstamps.length; slot++) {
+      masked[slot] = tstamps[slot] & Long.MAX_VALUE;
+    }
+    return masked;
+  }
+
+  private static EventOrdering scanned(final long[] one, final long[] two) {
+    boolean oneAfterTwo = false;
+    boolean twoAfterOne = false;
+    for (int slot = 0; slot < Math.max(one.length, two.length); slot++) {
+      final long tstampOne = slot < one.length ? one[slot] & Long.MAX_VALUE : 0L;
+      final long tstampTwo = slot < two.length ? two[slot] : 0L;
+      oneAfterTwo |= tstampOne > tstampTwo;
+      twoAfterOne |= tstampOne < tstampTwo;
+    }
+    if (oneAfterTwo && twoAfterOne) {
+      return EventOrdering.CONCURRENT;
+    } else if (oneAfterTwo) {
+      return EventOrdering.HAPPENS_AFTER;
+    } else if (twoAfterOne) {
+      return EventOrdering.HAPPENS_BEFORE;
+    }
+    return EventOrdering.IDENTICAL;
+  }
+
+}
@@ -0,0 +1,114 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Maintain sanity and correctness of bulk comparison and merge of clocks.
+ *
+ * @author gaurav
+ */
+public class ClockMatrixTest {
+
+  @Test
+  public void testMatchesPairwiseComparison() {
+    final NodeRegistry registry = new NodeRegistry();
+    final Random random = new Random(20L);
+    final List<Node> nodes = new ArrayList<>();
+    for (int iter = 0; iter < 600; iter++) {
+      nodes.add(registry.intern(new Node("n" + iter)));
+    }
+    // clocks over a few hot nodes, some identical and some over a wide tail of quiet ones
+    final List<IVectorClock> clocks = new ArrayList<>();
+    for (int iter = 0; iter < 300; iter++) {
+      if (iter % 50 == 49) {
+        clocks.add(clocks.get(random.nextInt(iter)).deepCopy());
+        continue;
+      }
+      final IVectorClock clock = iter % 3 == 0 ? new ArrayVectorClock(registry) : new VectorClock();
+      for (int slot = 0; slot < 6; slot++) {
+        clock.initNode(nodes.get(slot));
+        final int ticks = random.nextInt(4);
+        for (int tick = 0; tick < ticks; tick++) {
+          clock.recordEvent(new Event(EventType.LOCAL, nodes.get(slot), Optional.empty()));
+        }
+      }
+      if (iter % 7 == 0) {
+        final Node quiet = nodes.get(6 + random.nextInt(nodes.size() - 6));
+        clock.initNode(quiet);
+        clock.recordEvent(new Event(EventType.LOCAL, quiet, Optional.empty()));
+      }
+      clocks.add(clock);
+    }
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      final ClockMatrix matrix = new ClockMatrix(registry, clocks, pool);
+      assertEquals(clocks.size(), matrix.size());
+
+      final EventOrdering[][] dominance = matrix.dominance();
+      for (int one = 0; one < clocks.size(); one++) {
+        for (int two = 0; two < clocks.size(); two++) {
+          assertEquals(VectorClock.compareClocks(clocks.get(one), clocks.get(two)),
+              dominance[one][two]);
+        }
+      }
+      final IVectorClock probe = clocks.get(17);
+      final EventOrdering[] orderings = matrix.compareWith(probe);
+      for (int one = 0; one < clocks.size(); one++) {
+        assertEquals(VectorClock.compareClocks(clocks.get(one), probe), orderings[one]);
+      }
+
+      final List<Integer> expectedMaximal = new ArrayList<>();
+      for (int one = 0; one < clocks.size(); one++) {
+        boolean dominated = false;
+        for (int two = 0; two < clocks.size(); two++) {
+          dominated |= dominance[one][two] == EventOrdering.HAPPENS_BEFORE
+              || dominance[one][two] == EventOrdering.IDENTICAL && two < one;
+        }
+        if (!dominated) {
+          expectedMaximal.add(one);
+        }
+      }
+      final int[] maximal = matrix.maximal();
+      assertEquals(expectedMaximal.size(), maximal.length);
+      for (int index = 0; index < maximal.length; index++) {
+        assertEquals((int) expectedMaximal.get(index), maximal[index]);
+      }
+      assertTrue(maximal.length > 1);
+
+      // the least upper bound is after every clock and is that of the maximal clocks alone
+      final ArrayVectorClock merged = matrix.leastUpperBound();
+      for (final IVectorClock clock : clocks) {
+        final EventOrdering ordering = VectorClock.compareClocks(clock, merged);
+        assertTrue(ordering == EventOrdering.HAPPENS_BEFORE || ordering == EventOrdering.IDENTICAL);
+      }
+      final ClockMatrix maximalOnly = new ClockMatrix(registry, pick(clocks, maximal), pool);
+      assertEquals(EventOrdering.IDENTICAL,
+          VectorClock.compareClocks(merged, maximalOnly.leastUpperBound()));
+      assertArrayEquals(new int[0], new ClockMatrix(registry, Collections.emptyList()).maximal());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static List<IVectorClock> pick(final List<IVectorClock> clocks, final int[] indexes) {
+    final List<IVectorClock> picked = new ArrayList<>();
+    for (final int index : indexes) {
+      picked.add(clocks.get(index));
+    }
+    return picked;
+  }
+
+}
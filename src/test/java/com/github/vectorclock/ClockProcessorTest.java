@@ -0,0 +1,259 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Maintain sanity and correctness of ClockProcessor implementation.
+ *
+ * @author gaurav
+ */
+public class ClockProcessorTest {
+
+  @Test
+  public void testMatchesRecordedEvents() {
+    final Node nodeOne = new Node("a");
+    final Node nodeTwo = new Node("b");
+    final IVectorClock sender = new VectorClock();
+    sender.initNode(nodeOne);
+    sender.initNode(nodeTwo);
+    final Random random = new Random(25L);
+    final List<Event> events = new ArrayList<>();
+    for (int iter = 0; iter < 1000; iter++) {
+      if (random.nextInt(3) == 0) {
+        // some sender clocks run ahead on nodeOne and so conflict with the receiver
+        sender.recordEvent(new Event(EventType.LOCAL,
+            random.nextInt(4) == 0 ? nodeOne : nodeTwo, Optional.empty()));
+        events.add(new Event(EventType.RECEIVE, nodeOne, Optional.of(sender.deepCopy())));
+      } else {
+        events.add(new Event(random.nextBoolean() ? EventType.LOCAL : EventType.SEND, nodeOne,
+            Optional.empty()));
+      }
+    }
+    final IVectorClock expected = newClock(nodeOne, nodeTwo);
+    final List<Boolean> expectedConflicts = new ArrayList<>();
+    for (final Event event : events) {
+      expectedConflicts.add(expected.recordEvent(event).isConcurrentEventConflictDetected());
+    }
+    assertTrue(expectedConflicts.contains(true));
+
+    final ClockProcessor processor = new ClockProcessor(newClock(nodeOne, nodeTwo), 16);
+    final CollectingSubscriber subscriber = new CollectingSubscriber(7);
+    processor.subscribe(subscriber);
+    new ListPublisher(events).subscribe(processor);
+
+    assertTrue(subscriber.completed);
+    assertNull(subscriber.error);
+    assertTrue(subscriber.maxOutstanding <= 7);
+    assertEquals(events.size(), subscriber.transitions.size());
+    for (int index = 0; index < events.size(); index++) {
+      final VectorClockTransition transition = subscriber.transitions.get(index);
+      assertSame(events.get(index), transition.getNodeEvent());
+      assertEquals(expectedConflicts.get(index), transition.isConcurrentEventConflictDetected());
+    }
+    assertEquals(expected.snapshot(), processor.getClock().snapshot());
+  }
+
+  @Test
+  public void testBatchesPerRequestWindow() {
+    final Node node = new Node("a");
+    final CountingClock clock = new CountingClock(newClock(node));
+    final List<Event> events = new ArrayList<>();
+    for (int iter = 0; iter < 100; iter++) {
+      events.add(new Event(EventType.LOCAL, node, Optional.empty()));
+    }
+    final ClockProcessor processor = new ClockProcessor(clock);
+    // all events are buffered before there is any demand
+    new ListPublisher(events).subscribe(processor);
+    final CollectingSubscriber subscriber = new CollectingSubscriber(0);
+    processor.subscribe(subscriber);
+    assertEquals(0, clock.batches);
+
+    subscriber.subscription.request(50L);
+    assertEquals(1, clock.batches);
+    assertEquals(50, subscriber.transitions.size());
+    subscriber.subscription.request(50L);
+    assertEquals(2, clock.batches);
+    assertEquals(100, subscriber.transitions.size());
+    assertTrue(subscriber.completed);
+    assertEquals(LogicalTstamp.curate(100L), clock.snapshot().get(node));
+  }
+
+  @Test
+  public void testErrors() {
+    final Node node = new Node("a");
+    final ClockProcessor processor = new ClockProcessor(newClock(node));
+    final CollectingSubscriber subscriber = new CollectingSubscriber(10);
+    processor.subscribe(subscriber);
+    final CollectingSubscriber second = new CollectingSubscriber(10);
+    processor.subscribe(second);
+    assertTrue(second.error instanceof IllegalStateException);
+
+    // an event of a node missing from the clock fails the stream and cancels upstream
+    final List<Event> events = new ArrayList<>();
+    events.add(new Event(EventType.LOCAL, node, Optional.empty()));
+    events.add(new Event(EventType.LOCAL, new Node("b"), Optional.empty()));
+    events.add(new Event(EventType.LOCAL, node, Optional.empty()));
+    final ListPublisher publisher = new ListPublisher(events);
+    publisher.subscribe(processor);
+    assertEquals(1, subscriber.transitions.size());
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+    assertTrue(publisher.cancelled);
+    assertFalse(subscriber.completed);
+  }
+
+  private static IVectorClock newClock(final Node... nodes) {
+    final IVectorClock clock = new VectorClock();
+    for (final Node node : nodes) {
+      clock.initNode(node);
+    }
+    return clock;
+  }
+
+  // publishes the events synchronously as they are requested
+  private static final class ListPublisher implements Flow.Publisher<Event> {
+    private final List<Event> events;
+    private int next;
+    private long requested;
+    private boolean emitting;
+    private boolean cancelled;
+
+    private ListPublisher(final List<Event> events) {
+      this.events = events;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super Event> subscriber) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(final long count) {
+          requested += count;
+          if (emitting) {
+            return;
+          }
+          emitting = true;
+          while (requested > 0L && next < events.size() && !cancelled) {
+            requested--;
+            subscriber.onNext(events.get(next++));
+          }
+          emitting = false;
+          if (next == events.size() && !cancelled) {
+            cancelled = true;
+            subscriber.onComplete();
+          }
+        }
+
+        @Override
+        public void cancel() {
+          cancelled = true;
+        }
+      });
+    }
+  }
+
+  // requests a window of transitions at a time, and again once it has them all
+  private static final class CollectingSubscriber
+      implements Flow.Subscriber<VectorClockTransition> {
+    private final int window;
+    private final List<VectorClockTransition> transitions = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private long outstanding;
+    private long maxOutstanding;
+    private boolean completed;
+    private Throwable error;
+
+    private CollectingSubscriber(final int window) {
+      this.window = window;
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+      this.subscription = subscription;
+      request();
+    }
+
+    @Override
+    public void onNext(final VectorClockTransition transition) {
+      transitions.add(transition);
+      outstanding--;
+      assertTrue(outstanding >= 0L || window == 0);
+      if (outstanding == 0L) {
+        request();
+      }
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+
+    private void request() {
+      if (window > 0) {
+        outstanding += window;
+        maxOutstanding = Math.max(maxOutstanding, outstanding);
+        subscription.request(window);
+      }
+    }
+  }
+
+  // counts the batches recorded on the clock
+  private static final class CountingClock implements IVectorClock {
+    private final IVectorClock clock;
+    private int batches;
+
+    private CountingClock(final IVectorClock clock) {
+      this.clock = clock;
+    }
+
+    @Override
+    public void initNode(final Node node) {
+      clock.initNode(node);
+    }
+
+    @Override
+    public boolean removeNode(final Node node) {
+      return clock.removeNode(node);
+    }
+
+    @Override
+    public Map<Node, LogicalTstamp> snapshot() {
+      return clock.snapshot();
+    }
+
+    @Override
+    public VectorClockTransition recordEvent(final Event event) {
+      throw new AssertionError("events should be recorded in batches");
+    }
+
+    @Override
+    public BatchTransition recordEvents(final List<Event> events) {
+      batches++;
+      return clock.recordEvents(events);
+    }
+
+    @Override
+    public IVectorClock deepCopy() {
+      return clock.deepCopy();
+    }
+  }
+
+}
@@ -0,0 +1,164 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Maintain sanity and correctness of per-entity clocks kept in a ClockStore.
+ *
+ * @author gaurav
+ */
+public class ClockStoreTest {
+
+  @Test
+  public void testRecordAndCompareByKey() {
+    final NodeRegistry registry = new NodeRegistry();
+    final ClockStore<String> store = new ClockStore<>(registry, 4, 0, null);
+    final Node nodeOne = new Node("1");
+    final Node nodeTwo = new Node("2");
+    final IVectorClock reference = new ArrayVectorClock(registry);
+    reference.initNode(nodeOne);
+    reference.initNode(nodeTwo);
+
+    assertEquals(EventOrdering.IDENTICAL, store.compare("x", "y"));
+    for (int iter = 0; iter < 3; iter++) {
+      final Event event = new Event(EventType.LOCAL, nodeOne, Optional.empty());
+      assertFalse(store.recordEvent("x", event).isConcurrentEventConflictDetected());
+      reference.recordEvent(event);
+    }
+    assertEquals(reference.snapshot(), store.get("x").snapshot());
+    assertEquals(EventOrdering.IDENTICAL, store.compare("x", reference));
+    assertEquals(EventOrdering.HAPPENS_AFTER, store.compare("x", "y"));
+    assertNull(store.get("y"));
+
+    // y is concurrent with x once it ticks nodeTwo, receiving x's clock is then rejected
+    store.recordEvent("y", new Event(EventType.SEND, nodeTwo, Optional.empty()));
+    assertEquals(EventOrdering.CONCURRENT, store.compare("y", "x"));
+    assertTrue(store
+        .recordEvent("y", new Event(EventType.RECEIVE, nodeTwo, Optional.of(reference)))
+        .isConcurrentEventConflictDetected());
+
+    // z has seen nothing, receiving the reference clock merges it in
+    final VectorClock mapClock = new VectorClock();
+    mapClock.initNode(nodeOne);
+    mapClock.initNode(nodeTwo);
+    mapClock.recordEvent(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    store.recordEvent("z", new Event(EventType.RECEIVE, nodeTwo, Optional.of(mapClock)));
+    assertEquals(1L, store.get("z").snapshot().get(nodeOne).currentValue());
+    assertEquals(1L, store.get("z").snapshot().get(nodeTwo).currentValue());
+
+    // merging does not tick, nodes new to the registry widen the rows
+    final Node nodeThree = new Node("3");
+    mapClock.initNode(nodeThree);
+    mapClock.recordEvent(new Event(EventType.LOCAL, nodeThree, Optional.empty()));
+    store.merge("y", "x");
+    store.merge("y", mapClock);
+    assertEquals(3L, store.get("y").snapshot().get(nodeOne).currentValue());
+    assertEquals(1L, store.get("y").snapshot().get(nodeTwo).currentValue());
+    assertEquals(1L, store.get("y").snapshot().get(nodeThree).currentValue());
+    assertEquals(EventOrdering.HAPPENS_AFTER, store.compare("y", "x"));
+
+    assertEquals(3, store.size());
+    assertTrue(store.remove("y"));
+    assertFalse(store.remove("y"));
+    assertFalse(store.contains("y"));
+    assertEquals(2, store.size());
+  }
+
+  @Test
+  public void testEvictionOfColdEntries() {
+    final NodeRegistry registry = new NodeRegistry();
+    final Node node = new Node("node");
+    final List<Integer> evictedKeys = new ArrayList<>();
+    final List<ArrayVectorClock> evictedClocks = new ArrayList<>();
+    final ClockStore<Integer> store = new ClockStore<>(registry, 1, 4, (key, clock) -> {
+      evictedKeys.add(key);
+      evictedClocks.add(clock);
+    });
+    for (int key = 0; key < 4; key++) {
+      for (int tick = 0; tick <= key; tick++) {
+        store.recordEvent(key, new Event(EventType.LOCAL, node, Optional.empty()));
+      }
+    }
+    assertTrue(evictedKeys.isEmpty());
+
+    // every entry was used since it was added, the sweep gives each a second chance
+    store.recordEvent(4, new Event(EventType.LOCAL, node, Optional.empty()));
+    assertEquals(0, evictedKeys.get(0).intValue());
+    assertEquals(1L, evictedClocks.get(0).snapshot().get(node).currentValue());
+
+    // 2 and 3 are hot, 1 has not been touched since the sweep passed it
+    store.recordEvent(2, new Event(EventType.LOCAL, node, Optional.empty()));
+    store.recordEvent(3, new Event(EventType.LOCAL, node, Optional.empty()));
+    store.recordEvent(5, new Event(EventType.LOCAL, node, Optional.empty()));
+    assertEquals(1, evictedKeys.get(1).intValue());
+    assertEquals(2L, evictedClocks.get(1).snapshot().get(node).currentValue());
+    assertTrue(store.contains(2));
+    assertTrue(store.contains(3));
+    assertEquals(5L, store.get(3).snapshot().get(node).currentValue());
+
+    for (int key = 6; key < 1_000; key++) {
+      store.recordEvent(key, new Event(EventType.LOCAL, node, Optional.empty()));
+      assertEquals(4, store.size());
+    }
+    assertEquals(996, evictedKeys.size());
+
+    // a RECEIVE rejected as concurrent leaves the full store as it was
+    final Node other = new Node("other");
+    final ArrayVectorClock sender = new ArrayVectorClock(registry);
+    sender.initNode(other);
+    sender.recordEvent(new Event(EventType.LOCAL, other, Optional.empty()));
+    assertTrue(store.recordEvent(999, new Event(EventType.RECEIVE, node, Optional.of(sender)))
+        .isConcurrentEventConflictDetected());
+    assertEquals(996, evictedKeys.size());
+    assertEquals(1L, store.get(999).snapshot().get(node).currentValue());
+  }
+
+  @Test
+  public void testConcurrentRecording() throws Exception {
+    final NodeRegistry registry = new NodeRegistry();
+    final ClockStore<Integer> store = new ClockStore<>(registry, 8, 0, null);
+    final int workerCount = 8;
+    final int keyCount = 1_000;
+    final int rounds = 50;
+    final Thread[] workers = new Thread[workerCount];
+    for (int iter = 0; iter < workerCount; iter++) {
+      final Node node = new Node("worker-" + iter);
+      workers[iter] = new Thread() {
+        public void run() {
+          for (int round = 0; round < rounds; round++) {
+            for (int key = 0; key < keyCount; key++) {
+              store.recordEvent(key, new Event(EventType.LOCAL, node, Optional.empty()));
+            }
+          }
+        }
+      };
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    assertEquals(keyCount, store.size());
+    for (int key = 0; key < keyCount; key++) {
+      final ArrayVectorClock clock = store.get(key);
+      assertEquals(workerCount, clock.width());
+      for (final LogicalTstamp tstamp : clock.snapshot().values()) {
+        assertEquals(rounds, tstamp.currentValue());
+      }
+      assertEquals(EventOrdering.IDENTICAL, store.compare(key, 0));
+    }
+  }
+
+}
@@ -0,0 +1,133 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Maintain sanity and correctness of sibling tracking with DottedVersionVectorSets.
+ *
+ * @author gaurav
+ */
+public class DottedVersionVectorSetTest {
+  private final Node replicaA = new Node("a");
+  private final Node replicaB = new Node("b");
+  private final Node replicaC = new Node("c");
+
+  @Test
+  public void testUpdate() {
+    final DottedVersionVectorSet<String> a0 = DottedVersionVectorSet.of("v1").update(replicaA);
+    final DottedVersionVectorSet<String> a1 =
+        DottedVersionVectorSet.of(a0.join(), "v2").update(a0, replicaA);
+    final DottedVersionVectorSet<String> a2 =
+        DottedVersionVectorSet.of(a1.join(), "v3").update(a1, replicaB);
+    final DottedVersionVectorSet<String> a3 =
+        DottedVersionVectorSet.of(a0.join(), "v4").update(a1, replicaB);
+    final DottedVersionVectorSet<String> a4 =
+        DottedVersionVectorSet.of(a0.join(), "v5").update(a1, replicaA);
+
+    assertState(a0, counters(1, 0), "v1");
+    // the client had seen v1, so v2 replaces it
+    assertState(a1, counters(2, 0), "v2");
+    assertState(a2, counters(2, 1), "v3");
+    // the client had not seen v2, so both are kept as siblings
+    assertState(a3, counters(2, 1), "v2", "v4");
+    assertState(a4, counters(3, 0), "v5", "v2");
+  }
+
+  @Test
+  public void testSync() {
+    final DottedVersionVectorSet<String> a0 = DottedVersionVectorSet.of("v1").update(replicaA);
+    // a:1 with v1 overwritten
+    final DottedVersionVectorSet<String> w = a0.discard(a0.join());
+    // a:2 with v1 and v2 both current
+    final DottedVersionVectorSet<String> z = DottedVersionVectorSet.of("v2").update(a0, replicaA);
+    assertState(w, counters(1, 0));
+    assertState(z, counters(2, 0), "v2", "v1");
+    assertState(w.sync(z), counters(2, 0), "v2");
+    assertEquals(w.sync(z), z.sync(w));
+
+    final DottedVersionVectorSet<String> a1 =
+        DottedVersionVectorSet.of(a0.join(), "v2").update(replicaA);
+    final DottedVersionVectorSet<String> a3 =
+        DottedVersionVectorSet.of(a1.join(), "v3").update(replicaB);
+    final DottedVersionVectorSet<String> a4 =
+        DottedVersionVectorSet.of(a1.join(), "v3").update(replicaC);
+    assertEquals(a0.sync(a1), a1.sync(a0));
+    assertEquals(a3.sync(a4), a4.sync(a3));
+    assertEquals(Arrays.asList("v3", "v3"), a3.sync(a4).values());
+    assertEquals(3, a3.sync(a4).width());
+    assertEquals(a4, a4.sync(a4));
+  }
+
+  @Test
+  public void testCompare() {
+    final DottedVersionVectorSet<String> a0 = DottedVersionVectorSet.of("v1").update(replicaA);
+    final DottedVersionVectorSet<String> a1 =
+        DottedVersionVectorSet.of(a0.join(), "v2").update(a0, replicaA);
+    final DottedVersionVectorSet<String> b1 =
+        DottedVersionVectorSet.of(a0.join(), "v3").update(a0, replicaB);
+    assertEquals(EventOrdering.HAPPENS_BEFORE, DottedVersionVectorSet.compare(a0, a1));
+    assertEquals(EventOrdering.HAPPENS_AFTER, DottedVersionVectorSet.compare(b1, a0));
+    assertEquals(EventOrdering.CONCURRENT, DottedVersionVectorSet.compare(a1, b1));
+    assertEquals(EventOrdering.IDENTICAL,
+        DottedVersionVectorSet.compare(a1, a1.discard(a1.join())));
+    assertEquals(EventOrdering.HAPPENS_AFTER,
+        DottedVersionVectorSet.compare(a1.sync(b1), b1));
+  }
+
+  @Test
+  public void testSiblingsBoundedByReplicas() {
+    // 100 clients write blindly to replica a, then one client reads everything and writes once
+    DottedVersionVectorSet<Integer> replicaClock = DottedVersionVectorSet.of(0).update(replicaA);
+    final Map<Node, LogicalTstamp> staleContext = replicaClock.join();
+    for (int client = 1; client <= 100; client++) {
+      replicaClock = DottedVersionVectorSet.of(staleContext, client).update(replicaClock, replicaA);
+      assertEquals(1, replicaClock.width());
+    }
+    assertEquals(100, replicaClock.size());
+
+    // replica b has a concurrent value of its own, syncing keeps every sibling exactly once
+    final DottedVersionVectorSet<Integer> otherReplicaClock =
+        DottedVersionVectorSet.of(staleContext, -1).update(replicaB);
+    final DottedVersionVectorSet<Integer> synced = replicaClock.sync(otherReplicaClock);
+    assertEquals(101, synced.size());
+    assertEquals(synced, otherReplicaClock.sync(replicaClock).sync(replicaClock));
+
+    final DottedVersionVectorSet<Integer> resolved =
+        DottedVersionVectorSet.of(synced.join(), 1_000).update(synced, replicaB);
+    assertEquals(Collections.singletonList(1_000), resolved.values());
+    assertEquals(2, resolved.width());
+    assertEquals(EventOrdering.HAPPENS_AFTER, DottedVersionVectorSet.compare(resolved, synced));
+
+    try {
+      resolved.update(replicaA);
+      fail("only a client write with a single anonymous value can be applied");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private Map<Node, LogicalTstamp> counters(final long a, final long b) {
+    final Map<Node, LogicalTstamp> counters = new HashMap<>();
+    if (a > 0) {
+      counters.put(replicaA, LogicalTstamp.curate(a));
+    }
+    if (b > 0) {
+      counters.put(replicaB, LogicalTstamp.curate(b));
+    }
+    return counters;
+  }
+
+  private static void assertState(final DottedVersionVectorSet<String> clock,
+      final Map<Node, LogicalTstamp> counters, final String... values) {
+    assertEquals(counters, clock.join());
+    assertEquals(Arrays.asList(values), clock.values());
+  }
+
+}
@@ -0,0 +1,99 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Maintain sanity and correctness of HybridLogicalClock implementation.
+ *
+ * @author gaurav
+ */
+public class HybridLogicalClockTest {
+
+  @Test
+  public void testHybridTstamps() {
+    final AtomicLong millisOne = new AtomicLong(1000L);
+    final AtomicLong millisTwo = new AtomicLong(990L);
+    final HybridLogicalClock clockOne = new HybridLogicalClock(millisOne::get, 100L);
+    final HybridLogicalClock clockTwo = new HybridLogicalClock(millisTwo::get, 100L);
+    final Node nodeOne = new Node("a");
+    final Node nodeTwo = new Node("b");
+
+    // events within a milli are told apart by the logical counter
+    final long first = clockOne.now();
+    final long second =
+        clockOne.recordEvent(new Event(EventType.SEND, nodeOne, OptionalLong.empty()));
+    assertEquals(HybridLogicalClock.pack(1000L, 0), first);
+    assertEquals(HybridLogicalClock.pack(1000L, 1), second);
+    assertEquals(EventOrdering.HAPPENS_BEFORE, HybridLogicalClock.compare(first, second));
+
+    // a receiver behind in physical time still stamps the receive after the send
+    final Event receive = new Event(EventType.RECEIVE, nodeTwo, OptionalLong.of(second));
+    assertNull(receive.getSenderClock());
+    final long received = clockTwo.recordEvent(receive);
+    assertEquals(HybridLogicalClock.pack(1000L, 2), received);
+    assertEquals(EventOrdering.HAPPENS_AFTER, HybridLogicalClock.compare(received, second));
+
+    // physical time catching up resets the counter
+    millisTwo.set(1005L);
+    assertEquals(HybridLogicalClock.pack(1005L, 0), clockTwo.now());
+    assertEquals(1005L, HybridLogicalClock.physicalMillis(clockTwo.current()));
+    assertEquals(0, HybridLogicalClock.logical(clockTwo.current()));
+
+    // a remote tstamp too far ahead is rejected and leaves the clock as it was
+    try {
+      clockOne.update(HybridLogicalClock.pack(1101L, 0));
+      fail("Remote tstamps past the maximum drift should be rejected");
+    } catch (IllegalArgumentException expected) {
+      assertEquals(second, clockOne.current());
+    }
+    assertEquals(HybridLogicalClock.pack(1100L, 1),
+        clockOne.update(HybridLogicalClock.pack(1100L, 0)));
+  }
+
+  @Test
+  public void testConcurrentTstampsAreUnique() throws Exception {
+    // a frozen physical clock has every tstamp told apart by the counter alone
+    final HybridLogicalClock clock = new HybridLogicalClock(() -> 42L, 0L);
+    final int threads = 4;
+    final int events = 10000;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final Set<Long> tstamps = new HashSet<>();
+    try {
+      final Callable<List<Long>> stamper = () -> IntStream.range(0, events)
+          .mapToObj(iter -> clock.now()).collect(Collectors.toList());
+      for (final Future<List<Long>> future : executor
+          .invokeAll(IntStream.range(0, threads).mapToObj(iter -> stamper)
+              .collect(Collectors.toList()))) {
+        final List<Long> stamped = future.get();
+        for (int index = 1; index < stamped.size(); index++) {
+          assertTrue(stamped.get(index - 1) < stamped.get(index));
+        }
+        tstamps.addAll(stamped);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(threads * events, tstamps.size());
+    assertEquals(HybridLogicalClock.pack(42L, 0) + threads * events - 1, clock.current());
+  }
+
+}
@@ -0,0 +1,132 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Maintain sanity and correctness of causality tracking with IntervalTreeClocks.
+ *
+ * @author gaurav
+ */
+public class IntervalTreeClockTest {
+
+  @Test
+  public void testForkEventJoin() {
+    // the run from the interval tree clocks paper
+    final IntervalTreeClock[] seed = IntervalTreeClock.seed().fork();
+    final IntervalTreeClock a = seed[0].event();
+    final IntervalTreeClock[] forked = seed[1].event().fork();
+    final IntervalTreeClock b = forked[0].event();
+    final IntervalTreeClock c = forked[1];
+    final IntervalTreeClock[] aForked = a.fork();
+    final IntervalTreeClock ac = aForked[1].join(c).event();
+    final IntervalTreeClock joined = aForked[0].event().join(ac);
+
+    assertEquals("IntervalTreeClock[id:(1, 0), events:(0, 1, 0)]", a.toString());
+    assertEquals(EventOrdering.CONCURRENT, IntervalTreeClock.compare(a, b));
+    assertEquals(EventOrdering.HAPPENS_BEFORE, IntervalTreeClock.compare(c, b));
+    assertEquals(EventOrdering.HAPPENS_AFTER, IntervalTreeClock.compare(ac, a));
+    assertEquals(EventOrdering.CONCURRENT, IntervalTreeClock.compare(ac, b));
+    assertEquals(EventOrdering.HAPPENS_AFTER, IntervalTreeClock.compare(joined, ac));
+    assertEquals(EventOrdering.IDENTICAL, IntervalTreeClock.compare(joined, joined.peek()));
+    assertEquals(EventOrdering.HAPPENS_AFTER,
+        IntervalTreeClock.compare(b.join(joined.peek()), joined));
+  }
+
+  @Test
+  public void testRetiredParticipantsAreReclaimed() {
+    IntervalTreeClock survivor = IntervalTreeClock.seed();
+    final List<IntervalTreeClock> participants = new ArrayList<>();
+    for (int joined = 0; joined < 100; joined++) {
+      final IntervalTreeClock[] forked = survivor.fork();
+      survivor = forked[0].event();
+      participants.add(forked[1].event());
+    }
+    for (final IntervalTreeClock participant : participants) {
+      survivor = survivor.join(participant.event());
+    }
+    // once everyone else has left, the stamp is back to a single id and a single counter
+    survivor = survivor.event();
+    assertEquals(2, survivor.size());
+    assertEquals(EventOrdering.HAPPENS_AFTER,
+        IntervalTreeClock.compare(survivor, participants.get(42)));
+
+    try {
+      survivor.peek().event();
+      fail("anonymous stamps cannot record events");
+    } catch (IllegalStateException expected) {
+    }
+    try {
+      survivor.join(survivor);
+      fail("a stamp cannot join its own id");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void testOrderingMatchesCausalHistories() {
+    // run random fork, event, join and message exchanges, checking every ordering against the
+    // set of events each stamp has seen
+    final Random random = new Random(7L);
+    final List<IntervalTreeClock> stamps = new ArrayList<>();
+    final List<Set<Integer>> histories = new ArrayList<>();
+    stamps.add(IntervalTreeClock.seed());
+    histories.add(new HashSet<>());
+    int eventId = 0;
+    for (int step = 0; step < 1_000; step++) {
+      final int one = random.nextInt(stamps.size());
+      final int operation = random.nextInt(10);
+      if (operation < 2 && stamps.size() < 8) {
+        final IntervalTreeClock[] forked = stamps.get(one).fork();
+        stamps.set(one, forked[0]);
+        stamps.add(forked[1]);
+        histories.add(new HashSet<>(histories.get(one)));
+      } else if (operation < 3 && stamps.size() > 1) {
+        final int two = (one + 1 + random.nextInt(stamps.size() - 1)) % stamps.size();
+        stamps.set(one, stamps.get(one).join(stamps.get(two)));
+        histories.get(one).addAll(histories.get(two));
+        stamps.remove(two);
+        histories.remove(two);
+      } else if (operation < 6) {
+        final int two = random.nextInt(stamps.size());
+        stamps.set(one, stamps.get(one).join(stamps.get(two).peek()).event());
+        histories.get(one).addAll(histories.get(two));
+        histories.get(one).add(eventId++);
+      } else {
+        stamps.set(one, stamps.get(one).event());
+        histories.get(one).add(eventId++);
+      }
+
+      for (int i = 0; i < stamps.size(); i++) {
+        for (int j = 0; j < stamps.size(); j++) {
+          assertEquals(expected(histories.get(i), histories.get(j)),
+              IntervalTreeClock.compare(stamps.get(i), stamps.get(j)));
+        }
+      }
+    }
+    assertTrue(eventId > 300);
+  }
+
+  private static EventOrdering expected(final Set<Integer> one, final Set<Integer> two) {
+    final boolean oneInTwo = two.containsAll(one);
+    final boolean twoInOne = one.containsAll(two);
+    if (oneInTwo && twoInOne) {
+      return EventOrdering.IDENTICAL;
+    } else if (oneInTwo) {
+      return EventOrdering.HAPPENS_BEFORE;
+    } else if (twoInOne) {
+      return EventOrdering.HAPPENS_AFTER;
+    }
+    return EventOrdering.CONCURRENT;
+  }
+
+}
@@ -0,0 +1,211 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Make sure that clocks kept in a MappedClockStore survive restarts and crashes.
+ *
+ * @author gaurav
+ */
+public class MappedClockStoreTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testReopen() throws Exception {
+    final Path directory = folder.newFolder().toPath();
+    final Node nodeOne = new Node("1");
+    final Node nodeTwo = new Node("2");
+    final IVectorClock sender = new VectorClock();
+    sender.initNode(nodeOne);
+    sender.initNode(nodeTwo);
+    sender.recordEvent(new Event(EventType.SEND, nodeTwo, Optional.empty()));
+    sender.recordEvent(new Event(EventType.SEND, nodeTwo, Optional.empty()));
+
+    try (MappedClockStore store = MappedClockStore.open(directory, 8, 100, false)) {
+      for (long entityId = 0; entityId < 50; entityId++) {
+        for (int tick = 0; tick < entityId; tick++) {
+          store.recordEvent(entityId, new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+        }
+      }
+      // 50 has seen nothing and merges the sender's clock, 4 has moved on concurrently
+      assertFalse(store
+          .recordEvent(50L, new Event(EventType.RECEIVE, nodeOne, Optional.of(sender)))
+          .isConcurrentEventConflictDetected());
+      assertTrue(store
+          .recordEvent(4L, new Event(EventType.RECEIVE, nodeOne, Optional.of(sender)))
+          .isConcurrentEventConflictDetected());
+      assertEquals(EventOrdering.HAPPENS_AFTER, store.compare(50L, sender));
+    }
+
+    final MappedClockStore reopened = MappedClockStore.open(directory, 8, 100, false);
+    try (MappedClockStore store = reopened) {
+      assertEquals(2, store.getRegistry().size());
+      assertEquals(50, store.size());
+      assertNull(store.get(0L));
+      assertEquals(1L, store.get(50L).snapshot().get(nodeOne).currentValue());
+      assertEquals(2L, store.get(50L).snapshot().get(nodeTwo).currentValue());
+      assertEquals(4L, store.get(4L).snapshot().get(nodeOne).currentValue());
+      assertEquals(0L, store.get(4L).snapshot().get(nodeTwo).currentValue());
+      assertEquals(EventOrdering.CONCURRENT, store.compare(50L, 40L));
+      assertEquals(EventOrdering.HAPPENS_BEFORE, store.compare(39L, 40L));
+      assertEquals(EventOrdering.IDENTICAL, store.compare(0L, 60L));
+    }
+    // an event of a node the store has not persisted yet is rejected like any other
+    try {
+      reopened.recordEvent(1L, new Event(EventType.LOCAL, new Node("three"), Optional.empty()));
+      fail("the store is closed");
+    } catch (IllegalStateException expected) {
+      assertEquals("Store is closed", expected.getMessage());
+    }
+
+    try {
+      MappedClockStore.open(directory, 16, 100, false);
+      fail("a store cannot be reopened with other limits");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void testRecoveryFromWriteAheadLog() throws Exception {
+    final Path directory = folder.newFolder().toPath();
+    final Path crashed = folder.newFolder().toPath();
+    final Node nodeOne = new Node("1");
+    final Node nodeTwo = new Node("2");
+    try (MappedClockStore store = MappedClockStore.open(directory, 4, 10, true)) {
+      store.recordEvent(1L, new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+      store.recordEvent(2L, new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+      store.checkpoint();
+      // the machine goes down with the mapped file as of the checkpoint, only the log is newer
+      Files.copy(directory.resolve(MappedClockStore.CLOCKS_FILE),
+          crashed.resolve(MappedClockStore.CLOCKS_FILE));
+
+      store.recordEvent(1L, new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+      store.recordEvent(3L, new Event(EventType.SEND, nodeTwo, Optional.empty()));
+      store.merge(2L, store.get(3L));
+      for (final String file : new String[] {MappedClockStore.NODES_FILE,
+          MappedClockStore.WAL_FILE}) {
+        Files.copy(directory.resolve(file), crashed.resolve(file),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+      // and in the middle of appending to the log
+      Files.write(crashed.resolve(MappedClockStore.WAL_FILE), new byte[] {0, 0, 0, 24, 1, 2},
+          StandardOpenOption.APPEND);
+
+      try (MappedClockStore recovered = MappedClockStore.open(crashed, 4, 10, true)) {
+        assertEquals(store.size(), recovered.size());
+        for (long entityId = 1; entityId <= 3; entityId++) {
+          assertEquals(store.get(entityId).snapshot(), recovered.get(entityId).snapshot());
+        }
+        assertEquals(EventOrdering.IDENTICAL, recovered.compare(2L, store.get(2L)));
+        assertEquals(0L, Files.size(crashed.resolve(MappedClockStore.WAL_FILE)));
+      }
+    }
+  }
+
+  @Test
+  public void testRecoveryOfAllocations() throws Exception {
+    final Path directory = folder.newFolder().toPath();
+    final Path crashed = folder.newFolder().toPath();
+    final Path lost = folder.newFolder().toPath();
+    final Node nodeOne = new Node("1");
+    final Node nodeTwo = new Node("2");
+    try (MappedClockStore store = MappedClockStore.open(directory, 4, 10, true)) {
+      store.recordEvent(1L, new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+      store.checkpoint();
+      final byte[] checkpointed =
+          Files.readAllBytes(directory.resolve(MappedClockStore.CLOCKS_FILE));
+
+      for (int tick = 0; tick < 3; tick++) {
+        store.recordEvent(3L, new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+      }
+      store.recordEvent(4L, new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+      store.recordEvent(3L, new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+      // the machine goes down with the slots of 3 and 4 on disk but the header and index as of the
+      // checkpoint
+      final byte[] clocks = Files.readAllBytes(directory.resolve(MappedClockStore.CLOCKS_FILE));
+      final int slotsStart = clocks.length - 10 * Long.BYTES * (1 + 4);
+      System.arraycopy(checkpointed, 0, clocks, 0, slotsStart);
+      for (final Path target : new Path[] {crashed, lost}) {
+        Files.write(target.resolve(MappedClockStore.CLOCKS_FILE), clocks);
+        Files.copy(directory.resolve(MappedClockStore.NODES_FILE),
+            target.resolve(MappedClockStore.NODES_FILE));
+      }
+      // and with the log of 4 ahead of the log of 3, as when both are recorded concurrently
+      final ByteBuffer log =
+          ByteBuffer.wrap(Files.readAllBytes(directory.resolve(MappedClockStore.WAL_FILE)));
+      final ByteBuffer reordered = ByteBuffer.allocate(log.capacity());
+      for (final long entityId : new long[] {4L, 3L}) {
+        for (int position = 0; position < log.capacity();) {
+          final int recordBytes = Integer.BYTES * 2 + log.getInt(position);
+          if (log.getLong(position + Integer.BYTES) == entityId) {
+            reordered.put(Arrays.copyOfRange(log.array(), position, position + recordBytes));
+          }
+          position += recordBytes;
+        }
+      }
+      Files.write(crashed.resolve(MappedClockStore.WAL_FILE), reordered.array());
+
+      try (MappedClockStore recovered = MappedClockStore.open(crashed, 4, 10, true)) {
+        assertEquals(3, recovered.size());
+        for (final long entityId : new long[] {1L, 3L, 4L}) {
+          assertEquals(store.get(entityId).snapshot(), recovered.get(entityId).snapshot());
+        }
+      }
+    }
+
+    // without the log, as when written without syncWrites, the slots of 3 and 4 are handed out
+    // again and must not carry their tstamps over to the new owners
+    try (MappedClockStore recovered = MappedClockStore.open(lost, 4, 10, false)) {
+      assertEquals(1, recovered.size());
+      assertNull(recovered.get(3L));
+      recovered.recordEvent(5L, new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+      recovered.recordEvent(6L, new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+      for (final long entityId : new long[] {5L, 6L}) {
+        assertEquals(0L, recovered.get(entityId).snapshot().get(nodeOne).currentValue());
+        assertEquals(1L, recovered.get(entityId).snapshot().get(nodeTwo).currentValue());
+      }
+      assertEquals(3, recovered.size());
+    }
+  }
+
+  @Test
+  public void testCapacity() throws Exception {
+    final Path directory = folder.newFolder().toPath();
+    try (MappedClockStore store = MappedClockStore.open(directory, 2, 2, false)) {
+      final Node node = new Node("1");
+      store.recordEvent(0L, new Event(EventType.LOCAL, node, Optional.empty()));
+      store.recordEvent(1L, new Event(EventType.LOCAL, node, Optional.empty()));
+      try {
+        store.recordEvent(2L, new Event(EventType.LOCAL, node, Optional.empty()));
+        fail("store is full of entities");
+      } catch (IllegalStateException expected) {
+      }
+      store.recordEvent(0L, new Event(EventType.LOCAL, new Node("2"), Optional.empty()));
+      try {
+        store.recordEvent(0L, new Event(EventType.LOCAL, new Node("3"), Optional.empty()));
+        fail("store is full of nodes");
+      } catch (IllegalStateException expected) {
+      }
+    }
+  }
+
+}
@@ -0,0 +1,69 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Maintain sanity and correctness of node interning and compact ids.
+ *
+ * @author gaurav
+ */
+public class NodeRegistryTest {
+
+  @Test
+  public void testSequentialIds() {
+    final IdProvider idProvider = new SequentialIdProvider("n");
+    final Set<String> ids = new HashSet<>();
+    for (int iter = 0; iter < 10000; iter++) {
+      final String id = new Node(idProvider).getId();
+      assertTrue(id.startsWith("n"));
+      assertTrue(id.length() <= 4);
+      ids.add(id);
+    }
+    assertEquals(10000, ids.size());
+    assertEquals("0", new SequentialIdProvider().id());
+  }
+
+  @Test
+  public void testInterning() {
+    final NodeRegistry registry = new NodeRegistry();
+    final NodeRegistry otherRegistry = new NodeRegistry();
+    final Node node = new Node("a");
+    final Node copy = new Node("a");
+    assertEquals(node.hashCode(), copy.hashCode());
+
+    otherRegistry.slot(new Node("z"));
+    assertSame(node, registry.intern(node));
+    assertSame(node, registry.intern(copy));
+    assertNotSame(copy, registry.intern(copy));
+    assertEquals(0, registry.slot(copy));
+    // interned by one registry, the node is looked up by equality in the others
+    assertEquals(1, otherRegistry.slot(node));
+    assertEquals(1, otherRegistry.slotIfPresent(copy));
+    assertEquals(0, registry.slotIfPresent(node));
+    assertEquals(-1, registry.slotIfPresent(new Node("b")));
+
+    // clocks over the registry list their nodes in slot order
+    final IdProvider idProvider = new SequentialIdProvider("p");
+    final List<Node> nodes = new ArrayList<>();
+    final IVectorClock clock = new ArrayVectorClock(registry);
+    for (int iter = 0; iter < 40; iter++) {
+      final Node next = registry.intern(new Node(idProvider));
+      nodes.add(next);
+      clock.initNode(next);
+    }
+    assertEquals(nodes, new ArrayList<>(clock.snapshot().keySet()));
+    assertTrue(registry.bySlot().compare(nodes.get(35), nodes.get(36)) < 0);
+    assertTrue(nodes.get(35).getId().compareTo(nodes.get(36).getId()) > 0);
+  }
+
+}
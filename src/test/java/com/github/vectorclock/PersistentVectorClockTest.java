@@ -0,0 +1,165 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Maintain sanity and correctness of PersistentVectorClock implementation.
+ *
+ * @author gaurav
+ */
+public class PersistentVectorClockTest {
+
+  @Test
+  public void testMatchesArrayVectorClock() {
+    final NodeRegistry registry = new NodeRegistry();
+    final Random random = new Random(18L);
+    final int clockCount = 4;
+    // enough nodes for three levels of trie
+    final int nodeCount = 1500;
+    final IVectorClock[] persistentClocks = new IVectorClock[clockCount];
+    final IVectorClock[] arrayClocks = new IVectorClock[clockCount];
+    for (int index = 0; index < clockCount; index++) {
+      persistentClocks[index] = new PersistentVectorClock(registry);
+      arrayClocks[index] = new ArrayVectorClock(registry);
+      for (int slot = index; slot < nodeCount; slot += clockCount) {
+        persistentClocks[index].initNode(new Node(String.valueOf(slot)));
+        arrayClocks[index].initNode(new Node(String.valueOf(slot)));
+      }
+    }
+    for (int step = 0; step < 2000; step++) {
+      final int index = random.nextInt(clockCount);
+      final Node node = new Node(String.valueOf(index + clockCount * random.nextInt(10)));
+      if (random.nextInt(4) == 0) {
+        final int sender = random.nextInt(clockCount);
+        final VectorClockTransition persistentTransition = persistentClocks[index].recordEvent(
+            new Event(EventType.RECEIVE, node, Optional.of(persistentClocks[sender])));
+        final VectorClockTransition arrayTransition = arrayClocks[index].recordEvent(
+            new Event(EventType.RECEIVE, node, Optional.of(arrayClocks[sender])));
+        assertEquals(arrayTransition.isConcurrentEventConflictDetected(),
+            persistentTransition.isConcurrentEventConflictDetected());
+      } else {
+        persistentClocks[index].recordEvent(new Event(EventType.SEND, node, Optional.empty()));
+        arrayClocks[index].recordEvent(new Event(EventType.SEND, node, Optional.empty()));
+      }
+      final int other = random.nextInt(clockCount);
+      assertEquals(VectorClock.compareClocks(arrayClocks[index], arrayClocks[other]),
+          VectorClock.compareClocks(persistentClocks[index], persistentClocks[other]));
+      assertEquals(EventOrdering.IDENTICAL,
+          VectorClock.compareClocks(persistentClocks[index], arrayClocks[index]));
+    }
+    for (int index = 0; index < clockCount; index++) {
+      assertEquals(arrayClocks[index].snapshot(), persistentClocks[index].snapshot());
+    }
+    final Node removed = new Node("0");
+    assertTrue(persistentClocks[0].removeNode(removed));
+    assertFalse(persistentClocks[0].removeNode(removed));
+    assertEquals(nodeCount / clockCount - 1, persistentClocks[0].snapshot().size());
+  }
+
+  @Test
+  public void testCopiesAreIndependent() {
+    final NodeRegistry registry = new NodeRegistry();
+    final Node nodeOne = new Node("a");
+    final Node nodeTwo = new Node("b");
+    final PersistentVectorClock clock = new PersistentVectorClock(registry);
+    clock.initNode(nodeOne);
+    clock.initNode(nodeTwo);
+    clock.recordEvent(new Event(EventType.SEND, nodeOne, Optional.empty()));
+
+    final PersistentVectorClock sent = clock.deepCopy();
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(clock, sent));
+    clock.recordEvent(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    assertEquals(EventOrdering.HAPPENS_AFTER, VectorClock.compareClocks(clock, sent));
+    assertEquals(1L, sent.snapshot().get(nodeOne).currentValue());
+    assertEquals(2L, clock.snapshot().get(nodeOne).currentValue());
+
+    // the copy records events of its own without the original seeing them
+    sent.recordEvent(new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+    assertEquals(EventOrdering.CONCURRENT, VectorClock.compareClocks(clock, sent));
+    assertEquals(0L, clock.snapshot().get(nodeTwo).currentValue());
+    assertEquals(2, sent.width());
+  }
+
+  @Test
+  public void testConsistentSnapshotsUnderConcurrentWrites() throws Exception {
+    final NodeRegistry registry = new NodeRegistry();
+    final Node receiver = new Node("receiver");
+    final Node left = new Node("left");
+    final Node right = new Node("right");
+    final PersistentVectorClock clock = new PersistentVectorClock(registry);
+    clock.initNode(receiver);
+    clock.initNode(left);
+    clock.initNode(right);
+    final int threads = 4;
+    final int ticks = 5000;
+    final AtomicBoolean writing = new AtomicBoolean(true);
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads + 2);
+    try {
+      // every batch records as many events of left as of right
+      final Future<?> writer = executor.submit(() -> {
+        final List<Event> batch = new ArrayList<>();
+        batch.add(new Event(EventType.LOCAL, left, Optional.empty()));
+        batch.add(new Event(EventType.SEND, right, Optional.empty()));
+        start.await();
+        for (int iter = 0; iter < ticks; iter++) {
+          assertEquals(0, clock.recordEvents(batch).getConflictCount());
+        }
+        writing.set(false);
+        return null;
+      });
+      final Future<Integer> reader = executor.submit(() -> {
+        start.await();
+        int copies = 0;
+        do {
+          final Map<Node, LogicalTstamp> snapshot = clock.deepCopy().snapshot();
+          assertEquals(snapshot.get(left), snapshot.get(right));
+          copies++;
+        } while (writing.get());
+        return copies;
+      });
+      final Future<?>[] tickers = new Future<?>[threads];
+      for (int thread = 0; thread < threads; thread++) {
+        tickers[thread] = executor.submit(() -> {
+          start.await();
+          for (int iter = 0; iter < ticks; iter++) {
+            clock.recordEvent(new Event(EventType.LOCAL, receiver, Optional.empty()));
+          }
+          return null;
+        });
+      }
+      start.countDown();
+      writer.get(30, TimeUnit.SECONDS);
+      assertTrue(reader.get(30, TimeUnit.SECONDS) > 0);
+      for (final Future<?> ticker : tickers) {
+        ticker.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    // no event was lost to a racing one
+    final Map<Node, LogicalTstamp> snapshot = clock.snapshot();
+    assertEquals((long) threads * ticks, snapshot.get(receiver).currentValue());
+    assertEquals(ticks, snapshot.get(left).currentValue());
+    assertEquals(ticks, snapshot.get(right).currentValue());
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Make sure that no RecordingPolicy other than TRY_LOCK ever drops an event under contention.
+ *
+ * @author gaurav
+ */
+public class RecordingPolicyTest {
+  private static final int workerCount = 8;
+  private static final int eventsPerWorker = 5_000;
+
+  @Test
+  public void testBlockingRecording() throws Exception {
+    assertNoEventsDropped(policy -> new VectorClock(policy), RecordingPolicy.blocking());
+    assertNoEventsDropped(policy -> new ArrayVectorClock(new NodeRegistry(), policy),
+        RecordingPolicy.blocking());
+  }
+
+  @Test
+  public void testTimedRecording() throws Exception {
+    final RecordingPolicy policy = RecordingPolicy.timed(10, TimeUnit.SECONDS);
+    assertNoEventsDropped(clockPolicy -> new VectorClock(clockPolicy), policy);
+    assertNoEventsDropped(clockPolicy -> new ArrayVectorClock(new NodeRegistry(), clockPolicy),
+        policy);
+  }
+
+  @Test
+  public void testLockFreeRecording() throws Exception {
+    assertNoEventsDropped(policy -> new VectorClock(policy), RecordingPolicy.lockFree());
+    assertNoEventsDropped(policy -> new ArrayVectorClock(new NodeRegistry(), policy),
+        RecordingPolicy.lockFree());
+  }
+
+  @Test
+  public void testLockFreeTicksRaceWithNodeGrowth() throws Exception {
+    final NodeRegistry registry = new NodeRegistry();
+    final Node node = new Node("ticker");
+    final IVectorClock clock = new ArrayVectorClock(registry, RecordingPolicy.lockFree());
+    clock.initNode(node);
+    final Thread grower = new Thread() {
+      public void run() {
+        for (int iter = 0; iter < 2_000; iter++) {
+          clock.initNode(new Node("grown-" + iter));
+        }
+      }
+    };
+    grower.start();
+    for (int iter = 0; iter < eventsPerWorker; iter++) {
+      assertNotNull(clock.recordEvent(new Event(EventType.LOCAL, node, Optional.empty())));
+    }
+    grower.join();
+    assertEquals(eventsPerWorker, clock.snapshot().get(node).currentValue());
+    assertEquals(2_001, clock.snapshot().size());
+  }
+
+  // half the workers tick locally, the other half merge in receives from a sender that is always
+  // causally behind, every one of them ticks the same node
+  private static void assertNoEventsDropped(final Function<RecordingPolicy, IVectorClock> factory,
+      final RecordingPolicy policy) throws Exception {
+    final Node node = new Node("receiver");
+    final Node sender = new Node("sender");
+    final IVectorClock clock = factory.apply(policy);
+    clock.initNode(node);
+    clock.initNode(sender);
+    final IVectorClock senderClock = clock.deepCopy();
+
+    // assertions that fail on a worker thread are only seen once the workers are joined
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Thread[] workers = new Thread[workerCount];
+    for (int iter = 0; iter < workerCount; iter++) {
+      final EventType eventType = iter % 2 == 0 ? EventType.LOCAL : EventType.RECEIVE;
+      workers[iter] = new Thread() {
+        public void run() {
+          final Event event = new Event(eventType, node, Optional.of(senderClock));
+          try {
+            for (int count = 0; count < eventsPerWorker; count++) {
+              assertNotNull(clock.recordEvent(event));
+            }
+          } catch (Throwable problem) {
+            failure.set(problem);
+          }
+        }
+      };
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    assertNull(policy.toString(), failure.get());
+    assertEquals(policy.toString(), (long) workerCount * eventsPerWorker,
+        clock.snapshot().get(node).currentValue());
+  }
+
+}
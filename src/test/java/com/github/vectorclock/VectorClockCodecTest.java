@@ -0,0 +1,298 @@
+package com.github.vectorclock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.github.vectorclock.Event.EventType;
+
+/**
+ * Maintain sanity and correctness of the VectorClock binary wire format.
+ *
+ * @author gaurav
+ */
+public class VectorClockCodecTest {
+
+  @Test
+  public void testRoundTrip() {
+    final NodeRegistry dictionary = new NodeRegistry();
+    final VectorClockCodec codec = new VectorClockCodec(dictionary);
+    final IVectorClock mapClock = new VectorClock();
+    final IVectorClock arrayClock = new ArrayVectorClock(dictionary);
+    for (int iter = 0; iter < 300; iter++) {
+      final Node node = new Node(String.valueOf(iter));
+      dictionary.slot(node);
+      // leave gaps so that slot deltas are exercised
+      if (iter % 3 != 0) {
+        mapClock.initNode(node);
+        arrayClock.initNode(node);
+      }
+    }
+    for (int iter = 1; iter < 300; iter += 7) {
+      final Node node = new Node(String.valueOf(iter));
+      if (iter % 3 != 0) {
+        for (int tick = 0; tick < iter * iter; tick++) {
+          mapClock.recordEvent(new Event(EventType.LOCAL, node, Optional.empty()));
+          arrayClock.recordEvent(new Event(EventType.LOCAL, node, Optional.empty()));
+        }
+      }
+    }
+
+    for (final ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(2048),
+        ByteBuffer.allocateDirect(2048)}) {
+      buffer.position(5);
+      codec.encode(mapClock, buffer);
+      assertEquals(5 + codec.encodedSize(mapClock), buffer.position());
+      codec.encode(arrayClock, buffer);
+      final int end = buffer.position();
+
+      buffer.position(5);
+      final ArrayVectorClock decoded = codec.decode(buffer);
+      final EncodedVectorClock wrapped = codec.wrap(buffer);
+      assertEquals(end, buffer.position());
+      assertEquals(mapClock.snapshot(), decoded.snapshot());
+      assertEquals(arrayClock.snapshot(), wrapped.snapshot());
+      assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(mapClock, wrapped));
+      assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(wrapped, arrayClock));
+      assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(decoded, arrayClock));
+    }
+
+    // nodes of the map clock that the encoded one does not carry are 0 in it
+    final ByteBuffer buffer = ByteBuffer.allocate(2048);
+    codec.encode(arrayClock, buffer);
+    buffer.flip();
+    final EncodedVectorClock wrapped = codec.wrap(buffer);
+    final Node extra = new Node("extra");
+    mapClock.initNode(extra);
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(mapClock, wrapped));
+    mapClock.recordEvent(new Event(EventType.LOCAL, extra, Optional.empty()));
+    assertEquals(EventOrdering.HAPPENS_AFTER, VectorClock.compareClocks(mapClock, wrapped));
+    assertEquals(EventOrdering.HAPPENS_BEFORE, VectorClock.compareClocks(wrapped, mapClock));
+  }
+
+  @Test
+  public void testReceiveEncodedClock() {
+    final NodeRegistry dictionary = new NodeRegistry();
+    final VectorClockCodec codec = new VectorClockCodec(dictionary);
+    final Node sender = new Node("sender");
+    final Node receiver = new Node("receiver");
+    dictionary.slot(sender);
+    dictionary.slot(receiver);
+
+    final IVectorClock senderClock = new VectorClock();
+    final IVectorClock mapReceiverClock = new VectorClock();
+    final IVectorClock arrayReceiverClock = new ArrayVectorClock(dictionary);
+    for (final IVectorClock clock : new IVectorClock[] {senderClock, mapReceiverClock,
+        arrayReceiverClock}) {
+      clock.initNode(sender);
+      clock.initNode(receiver);
+    }
+    senderClock.recordEvent(new Event(EventType.SEND, sender, Optional.empty()));
+    senderClock.recordEvent(new Event(EventType.SEND, sender, Optional.empty()));
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(codec.encodedSize(senderClock));
+    codec.encode(senderClock, buffer);
+    buffer.flip();
+    final EncodedVectorClock wrapped = codec.wrap(buffer);
+
+    assertEquals(EventOrdering.HAPPENS_BEFORE,
+        VectorClock.compareClocks(mapReceiverClock, wrapped));
+    assertEquals(EventOrdering.HAPPENS_AFTER,
+        VectorClock.compareClocks(wrapped, arrayReceiverClock));
+    for (final IVectorClock receiverClock : new IVectorClock[] {mapReceiverClock,
+        arrayReceiverClock}) {
+      final VectorClockTransition transition = receiverClock
+          .recordEvent(new Event(EventType.RECEIVE, receiver, Optional.of(wrapped)));
+      assertFalse(transition.isConcurrentEventConflictDetected());
+      assertEquals(2L, receiverClock.snapshot().get(sender).currentValue());
+      assertEquals(1L, receiverClock.snapshot().get(receiver).currentValue());
+    }
+
+    // receiver has now ticked its own entry which the sender has not seen
+    senderClock.recordEvent(new Event(EventType.SEND, sender, Optional.empty()));
+    buffer.clear();
+    codec.encode(senderClock, buffer);
+    buffer.flip();
+    assertEquals(EventOrdering.CONCURRENT,
+        VectorClock.compareClocks(arrayReceiverClock, codec.wrap(buffer)));
+  }
+
+  @Test
+  public void testDeltaEncoding() {
+    // a 500 node cluster where the sender only ticks a couple of entries between messages
+    final NodeRegistry dictionary = new NodeRegistry();
+    final VectorClockCodec codec = new VectorClockCodec(dictionary);
+    final IVectorClock senderClock = new ArrayVectorClock(dictionary);
+    final IVectorClock receiverClock = new ArrayVectorClock(dictionary);
+    final Node[] nodes = new Node[500];
+    for (int iter = 0; iter < nodes.length; iter++) {
+      nodes[iter] = new Node("node-" + iter);
+      senderClock.initNode(nodes[iter]);
+      receiverClock.initNode(nodes[iter]);
+    }
+    for (int iter = 0; iter < nodes.length; iter += 5) {
+      senderClock.recordEvent(new Event(EventType.LOCAL, nodes[iter], Optional.empty()));
+    }
+    final Node sender = nodes[7];
+    final Node receiver = nodes[400];
+
+    // first message carries the full clock, the receiver keeps its own copy of the sender's clock
+    final ByteBuffer buffer = ByteBuffer.allocate(4096);
+    codec.encode(senderClock, buffer);
+    final int fullSize = buffer.position();
+    buffer.flip();
+    final ArrayVectorClock peerClock = codec.decode(buffer);
+    receiverClock.recordEvent(new Event(EventType.RECEIVE, receiver, Optional.of(peerClock)));
+    IVectorClock acknowledged = senderClock.deepCopy();
+
+    for (int message = 0; message < 3; message++) {
+      senderClock.recordEvent(new Event(EventType.SEND, sender, Optional.empty()));
+      senderClock.recordEvent(new Event(EventType.LOCAL, nodes[message], Optional.empty()));
+      buffer.clear();
+      codec.encodeDelta(senderClock, acknowledged, buffer);
+      assertEquals(codec.encodedDeltaSize(senderClock, acknowledged), buffer.position());
+      assertTrue(buffer.position() < 16);
+      assertTrue(buffer.position() * 50 < fullSize);
+      buffer.flip();
+
+      codec.applyDelta(buffer, peerClock);
+      assertEquals(buffer.limit(), buffer.position());
+      assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(senderClock, peerClock));
+      // a receiver that has not moved since the last message merges the reconstructed clock
+      final IVectorClock idleReceiverClock = acknowledged.deepCopy();
+      final VectorClockTransition transition = idleReceiverClock
+          .recordEvent(new Event(EventType.RECEIVE, receiver, Optional.of(peerClock)));
+      assertFalse(transition.isConcurrentEventConflictDetected());
+      assertEquals(senderClock.snapshot().get(sender),
+          idleReceiverClock.snapshot().get(sender));
+      acknowledged = senderClock.deepCopy();
+    }
+
+    // nodes new to the sender travel in the delta too, removed ones cannot
+    final Node joiner = new Node("joiner");
+    senderClock.initNode(joiner);
+    buffer.clear();
+    codec.encodeDelta(senderClock, acknowledged, buffer);
+    buffer.flip();
+    codec.applyDelta(buffer, peerClock);
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(senderClock, peerClock));
+
+    // applying a delta against the wrong base is refused
+    buffer.rewind();
+    try {
+      codec.applyDelta(buffer, peerClock);
+      fail("delta base width no longer matches");
+    } catch (IllegalArgumentException expected) {
+      assertEquals(0, buffer.position());
+    }
+
+    // as is a delta against a base of the same width that differs in a tstamp
+    final ArrayVectorClock staleClock = peerClock.deepCopy();
+    staleClock.recordEvent(new Event(EventType.LOCAL, nodes[1], Optional.empty()));
+    buffer.clear();
+    senderClock.recordEvent(new Event(EventType.SEND, sender, Optional.empty()));
+    codec.encodeDelta(senderClock, peerClock, buffer);
+    buffer.flip();
+    try {
+      codec.applyDelta(buffer, staleClock);
+      fail("delta base checksum does not match");
+    } catch (IllegalArgumentException expected) {
+      assertEquals(0, buffer.position());
+    }
+    codec.applyDelta(buffer, peerClock);
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(senderClock, peerClock));
+
+    // a base that is not an ArrayVectorClock is hashed from its entries to the same checksum
+    final IVectorClock mapBase = new VectorClock();
+    for (final Map.Entry<Node, LogicalTstamp> entry : peerClock.snapshot().entrySet()) {
+      mapBase.initNode(entry.getKey());
+      for (long tick = 0L; tick < entry.getValue().currentValue(); tick++) {
+        mapBase.recordEvent(new Event(EventType.LOCAL, entry.getKey(), Optional.empty()));
+      }
+    }
+    senderClock.recordEvent(new Event(EventType.SEND, sender, Optional.empty()));
+    buffer.clear();
+    codec.encodeDelta(senderClock, mapBase, buffer);
+    buffer.flip();
+    codec.applyDelta(buffer, peerClock);
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(senderClock, peerClock));
+
+    senderClock.removeNode(nodes[3]);
+    try {
+      codec.encodeDelta(senderClock, peerClock, ByteBuffer.allocate(64));
+      fail("deltas cannot express removals");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void testMalformedInput() {
+    final NodeRegistry dictionary = new NodeRegistry();
+    final VectorClockCodec codec = new VectorClockCodec(dictionary);
+    final Node node = new Node("known");
+    dictionary.slot(node);
+    final IVectorClock clock = new VectorClock();
+    clock.initNode(node);
+    clock.recordEvent(new Event(EventType.LOCAL, node, Optional.empty()));
+
+    final ByteBuffer buffer = ByteBuffer.allocate(16);
+    codec.encode(clock, buffer);
+    buffer.flip();
+    buffer.limit(buffer.limit() - 1);
+    try {
+      codec.wrap(buffer);
+      fail("truncated clock should not be readable");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    final ByteBuffer badVersion = ByteBuffer.wrap(new byte[] {9, 0});
+    try {
+      codec.wrap(badVersion);
+      fail("unknown version should not be readable");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    final ByteBuffer unknownSlot = ByteBuffer.wrap(new byte[] {VectorClockCodec.VERSION, 1, 5, 1});
+    try {
+      codec.wrap(unknownSlot);
+      fail("slots missing from the dictionary should not be readable");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    // a 10 byte varint with bits above bit 63 would decode as 0 but consume all 10 bytes
+    final ByteBuffer overflow = ByteBuffer.wrap(new byte[] {VectorClockCodec.VERSION,
+        (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+        (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x02});
+    try {
+      codec.wrap(overflow);
+      fail("varints overflowing 64 bits should not be readable");
+    } catch (IllegalArgumentException expected) {
+      assertEquals(0, overflow.position());
+    }
+
+    clock.initNode(new Node("unknown"));
+    try {
+      codec.encode(clock, ByteBuffer.allocate(16));
+      fail("nodes missing from the dictionary should not be writable");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    clock.removeNode(new Node("unknown"));
+    final ByteBuffer tiny = ByteBuffer.allocate(2);
+    try {
+      codec.encode(clock, tiny);
+      fail("encoding should not fit");
+    } catch (BufferOverflowException expected) {
+      assertEquals(0, tiny.position());
+    }
+    assertTrue(codec.encodedSize(clock) > tiny.capacity());
+  }
+
+}
@@ -1,10 +1,20 @@
 package com.github.vectorclock;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -174,7 +184,7 @@ public class VectorClockTest {
     // sender clock :: 0,0,1
     // receiver clock :: 0,1,0
     // boom, conflict detected!
-    VectorClock senderClock = nodeThreeClock.deepCopy();
+    IVectorClock senderClock = nodeThreeClock.deepCopy();
     VectorClockTransition transition =
         nodeTwoClock.recordEvent(new Event(EventType.RECEIVE, nodeTwo, Optional.of(senderClock)));
     assertTrue(transition.isConcurrentEventConflictDetected());
@@ -208,6 +218,288 @@ public class VectorClockTest {
     assertEquals(EventOrdering.CONCURRENT, VectorClock.compareClocks(nodeOneClock, nodeTwoClock));
   }
 
+  @Test
+  public void testCompareClocksNodeSets() {
+    final Node nodeOne = new Node("1");
+    final Node nodeTwo = new Node("2");
+    final Node nodeThree = new Node("3");
+
+    final IVectorClock clockOne = new VectorClock();
+    clockOne.initNode(nodeOne);
+    clockOne.initNode(nodeTwo);
+    clockOne.initNode(nodeThree);
+
+    // 1,0,0,_ vs 0,1,_,0 with differing nodes, which count as 0 where missing
+    final IVectorClock clockTwo = new VectorClock();
+    clockTwo.initNode(nodeOne);
+    clockTwo.initNode(nodeTwo);
+    clockTwo.initNode(new Node("4"));
+    clockOne.recordEvent(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    clockTwo.recordEvent(new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+    assertEquals(EventOrdering.CONCURRENT, VectorClock.compareClocks(clockOne, clockTwo));
+    assertEquals(EventOrdering.CONCURRENT, VectorClock.compareClocks(clockTwo, clockOne));
+
+    // 1,0,0 vs 1,_,_ and _,1,_ of smaller clocks
+    final IVectorClock clockThree = new VectorClock();
+    clockThree.initNode(nodeOne);
+    clockThree.recordEvent(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(clockOne, clockThree));
+    final IVectorClock clockFour = new VectorClock();
+    clockFour.initNode(nodeTwo);
+    clockFour.recordEvent(new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(clockFour, clockTwo));
+    clockTwo.recordEvent(new Event(EventType.LOCAL, new Node("4"), Optional.empty()));
+    assertEquals(EventOrdering.HAPPENS_BEFORE, VectorClock.compareClocks(clockFour, clockTwo));
+    assertEquals(EventOrdering.HAPPENS_AFTER, VectorClock.compareClocks(clockTwo, clockFour));
+
+    // receiving adds the nodes the receiver had never seen
+    final IVectorClock clockFive = new VectorClock();
+    clockFive.initNode(nodeThree);
+    clockFive.recordEvent(new Event(EventType.RECEIVE, nodeThree, Optional.of(clockFour)));
+    assertEquals(2, clockFive.snapshot().size());
+    assertEquals(EventOrdering.HAPPENS_AFTER, VectorClock.compareClocks(clockFive, clockFour));
+
+    clockTwo.removeNode(new Node("4"));
+    clockTwo.initNode(nodeThree);
+    assertEquals(EventOrdering.CONCURRENT, VectorClock.compareClocks(clockOne, clockTwo));
+
+    // comparing clocks must leave both of them untouched
+    assertEquals(3, clockOne.snapshot().size());
+    assertEquals(3, clockTwo.snapshot().size());
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(clockOne, clockOne));
+  }
+
+  @Test
+  public void testSummarizedComparisons() {
+    final Random random = new Random(22L);
+    final Node[] nodes = new Node[150];
+    for (int iter = 0; iter < nodes.length; iter++) {
+      nodes[iter] = new Node(String.valueOf(iter));
+    }
+    final VectorClock[] clocks = new VectorClock[6];
+    for (int index = 0; index < clocks.length; index++) {
+      clocks[index] = new VectorClock();
+      for (final Node node : nodes) {
+        clocks[index].initNode(node);
+      }
+    }
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(clocks[0], clocks[1]));
+    for (int step = 0; step < 3000; step++) {
+      final int index = random.nextInt(clocks.length);
+      final Node node = nodes[random.nextInt(nodes.length)];
+      if (step == 2000) {
+        // a removal leaves the clock comparing by walk alone
+        clocks[index].removeNode(node);
+        clocks[index].initNode(node);
+      } else if (random.nextInt(3) == 0) {
+        final IVectorClock sender = clocks[random.nextInt(3)];
+        clocks[index].recordEvent(new Event(EventType.RECEIVE, node, Optional.of(sender)));
+      } else if (random.nextInt(10) == 0) {
+        clocks[index] = clocks[random.nextInt(clocks.length)].deepCopy();
+      } else {
+        clocks[index].recordEvent(new Event(EventType.LOCAL, node, Optional.empty()));
+      }
+      for (int other = 0; other < clocks.length; other++) {
+        assertEquals(ArrayVectorClockTest.scannedOrdering(clocks[index], clocks[other]),
+            VectorClock.compareClocks(clocks[index], clocks[other]));
+      }
+      long sum = 0L;
+      for (final LogicalTstamp tstamp : clocks[index].snapshot().values()) {
+        sum += tstamp.currentValue();
+      }
+      if (step < 2000) {
+        assertEquals(sum, clocks[index].sum());
+      }
+    }
+  }
+
+  @Test
+  public void testRecordEventsBatch() {
+    assertBatchMatchesSequentialRecording(new VectorClock(), new VectorClock());
+    final NodeRegistry registry = new NodeRegistry();
+    assertBatchMatchesSequentialRecording(new ArrayVectorClock(registry),
+        new ArrayVectorClock(registry));
+    assertBatchMatchesSequentialRecording(new PersistentVectorClock(registry),
+        new PersistentVectorClock(registry));
+    final ClockArena arena = new ClockArena(registry, 16);
+    assertBatchMatchesSequentialRecording(arena.allocate(), arena.allocate());
+  }
+
+  // record the same events one at a time on one clock and as a batch on another
+  private static void assertBatchMatchesSequentialRecording(final IVectorClock sequentialClock,
+      final IVectorClock batchClock) {
+    final Node nodeOne = new Node("1");
+    final Node nodeTwo = new Node("2");
+    final Node nodeThree = new Node("3");
+    for (final Node node : new Node[] {nodeOne, nodeTwo, nodeThree}) {
+      sequentialClock.initNode(node);
+      batchClock.initNode(node);
+    }
+    // 0,0,2 is concurrent with the clocks once they tick nodeOne, 0,0,0 never is
+    final IVectorClock concurrentClock = sequentialClock.deepCopy();
+    concurrentClock.recordEvent(new Event(EventType.SEND, nodeThree, Optional.empty()));
+    concurrentClock.recordEvent(new Event(EventType.SEND, nodeThree, Optional.empty()));
+    final IVectorClock behindClock = sequentialClock.deepCopy();
+
+    final List<Event> events = new ArrayList<>();
+    for (int iter = 0; iter < 5; iter++) {
+      events.add(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    }
+    events.add(new Event(EventType.SEND, nodeOne, Optional.empty()));
+    events.add(new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+    events.add(new Event(EventType.RECEIVE, nodeOne, Optional.of(concurrentClock)));
+    events.add(new Event(EventType.RECEIVE, nodeOne, Optional.of(behindClock)));
+    events.add(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+
+    final List<Integer> sequentialConflicts = new ArrayList<>();
+    for (int index = 0; index < events.size(); index++) {
+      if (sequentialClock.recordEvent(events.get(index)).isConcurrentEventConflictDetected()) {
+        sequentialConflicts.add(index);
+      }
+    }
+    final BatchTransition batch = batchClock.recordEvents(events);
+    assertEquals(events.size(), batch.getEventCount());
+    assertEquals(1, batch.getConflictCount());
+    assertEquals(sequentialConflicts.size(), batch.getConflictCount());
+    for (final int conflictIndex : batch.getConflictedEventIndexes()) {
+      assertTrue(sequentialConflicts.contains(conflictIndex));
+      assertTrue(batch.isConcurrentEventConflictDetected(conflictIndex));
+    }
+    assertEquals(EventOrdering.IDENTICAL, VectorClock.compareClocks(sequentialClock, batchClock));
+    assertEquals(8L, batchClock.snapshot().get(nodeOne).currentValue());
+    assertEquals(1L, batchClock.snapshot().get(nodeTwo).currentValue());
+
+    // an event of a node that is not in the clock fails the batch, the events before it stay
+    final List<Event> failing = new ArrayList<>();
+    failing.add(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    failing.add(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    failing.add(new Event(EventType.LOCAL, new Node("4"), Optional.empty()));
+    failing.add(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    try {
+      batchClock.recordEvents(failing);
+      fail("Expected an event of an uninitialized node to be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+    assertEquals(10L, batchClock.snapshot().get(nodeOne).currentValue());
+    assertFalse(batchClock.snapshot().containsKey(new Node("4")));
+  }
+
+  @Test
+  public void testClockMetrics() {
+    assertMetricsReported(metrics -> new VectorClock(RecordingPolicy.blocking(), metrics));
+    final NodeRegistry registry = new NodeRegistry();
+    assertMetricsReported(
+        metrics -> new ArrayVectorClock(registry, RecordingPolicy.blocking(), metrics));
+    assertMetricsReported(metrics -> new PersistentVectorClock(registry, metrics));
+  }
+
+  private static void assertMetricsReported(final Function<ClockMetrics, IVectorClock> factory) {
+    final Node nodeOne = new Node("1");
+    final Node nodeTwo = new Node("2");
+    final InMemoryClockMetrics metrics = new InMemoryClockMetrics();
+    final IVectorClock clock = factory.apply(metrics);
+    final IVectorClock otherClock = factory.apply(ClockMetrics.NOOP);
+    for (final Node node : new Node[] {nodeOne, nodeTwo}) {
+      clock.initNode(node);
+      otherClock.initNode(node);
+    }
+    clock.recordEvent(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    clock.recordEvent(new Event(EventType.SEND, nodeOne, Optional.empty()));
+    // 0,0 is behind and merged, 0,1 is concurrent with 3,0 and rejected
+    clock.recordEvent(new Event(EventType.RECEIVE, nodeOne, Optional.of(otherClock.deepCopy())));
+    otherClock.recordEvent(new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+    clock.recordEvent(new Event(EventType.RECEIVE, nodeOne, Optional.of(otherClock)));
+    final List<Event> events = new ArrayList<>();
+    events.add(new Event(EventType.LOCAL, nodeTwo, Optional.empty()));
+    events.add(new Event(EventType.RECEIVE, nodeOne, Optional.of(otherClock)));
+    clock.recordEvents(events);
+
+    assertEquals(2L, metrics.getEventsRecorded(EventType.LOCAL));
+    assertEquals(1L, metrics.getEventsRecorded(EventType.SEND));
+    assertEquals(2L, metrics.getEventsRecorded(EventType.RECEIVE));
+    assertEquals(1L, metrics.getConflicts());
+    assertEquals(2L, metrics.getMerges());
+    assertEquals(4L, metrics.getMergedEntries());
+    assertEquals(2L, metrics.getMaxMergeWidth());
+    assertEquals(3L, metrics.getComparisons());
+    assertTrue(metrics.getCompareLatencyPercentile(0.5) <= metrics.getCompareLatencyPercentile(1));
+    assertEquals(0L, metrics.getEventsDropped());
+    assertEquals(0L, metrics.getLockContentions());
+    // copies report to the same metrics
+    clock.deepCopy().recordEvent(new Event(EventType.SEND, nodeTwo, Optional.empty()));
+    assertEquals(2L, metrics.getEventsRecorded(EventType.SEND));
+
+    // a batch failing on an uninitialized node counts only the events recorded before it
+    final List<Event> failing = new ArrayList<>();
+    failing.add(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    failing.add(new Event(EventType.LOCAL, new Node("3"), Optional.empty()));
+    try {
+      clock.recordEvents(failing);
+      fail("Expected an event of an uninitialized node to be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+    assertEquals(3L, metrics.getEventsRecorded(EventType.LOCAL));
+  }
+
+  @Test
+  public void testPruning() throws Exception {
+    final Node nodeOne = new Node("1");
+    final Node nodeTwo = new Node("2");
+    final Node nodeThree = new Node("3");
+    final Node nodeFour = new Node("4");
+    final InMemoryClockMetrics metrics = new InMemoryClockMetrics();
+
+    // nodeOne was updated least recently and makes way for nodeFour
+    final VectorClock boundedClock =
+        new VectorClock(RecordingPolicy.blocking(), metrics, PruningPolicy.maxWidth(3));
+    for (final Node node : new Node[] {nodeOne, nodeTwo, nodeThree}) {
+      boundedClock.initNode(node);
+      boundedClock.recordEvent(new Event(EventType.LOCAL, node, Optional.empty()));
+    }
+    boundedClock.initNode(nodeFour);
+    assertEquals(Arrays.asList(nodeTwo, nodeThree, nodeFour),
+        new ArrayList<>(boundedClock.snapshot().keySet()));
+    assertEquals(1L, metrics.getPrunedEntries());
+    assertEquals(1L, metrics.getUnsafePrunes());
+
+    // nodeTwo goes quiet and is swept by the next event past its max age
+    final VectorClock agingClock = new VectorClock(RecordingPolicy.blocking(), metrics,
+        PruningPolicy.maxAge(100L, TimeUnit.MILLISECONDS));
+    agingClock.initNode(nodeOne);
+    agingClock.initNode(nodeTwo);
+    // nodeOne stays fresh by ticking, however long it takes for nodeTwo to expire
+    do {
+      Thread.sleep(10L);
+      agingClock.recordEvent(new Event(EventType.LOCAL, nodeOne, Optional.empty()));
+    } while (agingClock.snapshot().containsKey(nodeTwo));
+    assertEquals(Arrays.asList(nodeOne), new ArrayList<>(agingClock.snapshot().keySet()));
+    assertEquals(2L, metrics.getPrunedEntries());
+    // nodeTwo had seen nothing, dropping it cannot make anything look concurrent
+    assertEquals(1L, metrics.getUnsafePrunes());
+    assertEquals(0, agingClock.prune().getPrunedCount());
+
+    // nodeThree has left, it is collected once both live peers have observed its last event
+    final VectorClock clock = new VectorClock(RecordingPolicy.blocking(), metrics);
+    final VectorClock peerClock = new VectorClock();
+    for (final Node node : new Node[] {nodeOne, nodeTwo, nodeThree}) {
+      clock.initNode(node);
+      peerClock.initNode(node);
+    }
+    clock.recordEvent(new Event(EventType.SEND, nodeThree, Optional.empty()));
+    final Map<Node, IVectorClock> livePeers = new HashMap<>();
+    livePeers.put(nodeOne, clock.deepCopy());
+    livePeers.put(nodeTwo, peerClock);
+    assertEquals(0, clock.collectStable(livePeers).getPrunedCount());
+    peerClock.recordEvent(new Event(EventType.RECEIVE, nodeTwo, Optional.of(clock.deepCopy())));
+    final PruningReport report = clock.collectStable(livePeers);
+    assertEquals(1L, report.getPrunedEntries().get(nodeThree).currentValue());
+    // copies of the clock taken before still carry nodeThree
+    assertTrue(report.isFalseConcurrencyPossible());
+    assertEquals(3L, metrics.getPrunedEntries());
+    assertEquals(2L, metrics.getUnsafePrunes());
+    assertEquals(Arrays.asList(nodeOne, nodeTwo), new ArrayList<>(clock.snapshot().keySet()));
+  }
+
   @Test
   public void testTstampTickSafety() throws Exception {
     LogicalTstamp init = new LogicalTstamp();